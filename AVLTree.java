@@ -1,3 +1,14 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  *
  * AVLTree
@@ -12,16 +23,52 @@ public class AVLTree {
 	private IAVLNode min;
 	private IAVLNode max;
 	private int size;
-	private final IAVLNode EXT = new AVLNode(-1, null);
+	private boolean compact; // Nodes are CompactAVLNodes, which keep no min/max pointers
+	private AVLTreeMetrics metrics; // null unless enableMetrics was called
+	private Aggregator<Object> aggregator; // null unless setAggregator was called
+	private boolean rankBalanced; // Deletes follow the weak AVL rules, so ranks may be above heights. See AVLTree(boolean, boolean)
+	private final IAVLNode EXT = new AVLNode(); // Told apart by identity or rank, never by key, so every int is a valid key
+	private static final int UNION = 0; // Set operations, see combine
+	private static final int INTERSECT = 1;
+	private static final int DIFFERENCE = 2;
+	private static final Comparator<IAVLNode> BY_KEY = Comparator.comparingInt(IAVLNode::getKey); // The order streams report as SORTED
+	private static final int PARALLEL_THRESHOLD = 1 << 13; // Smallest sub-tree (or pair of sub-trees, in a set operation) whose sides a parallel operation forks
 
 	public AVLTree() { // Default constructor, will produce an empty tree.
 		this.root = null;
 		this.min = null;
 		this.max = null;
 		this.size = 0;
+		this.compact = false;
 		this.EXT.setHeight(-1);
 	}
 
+	/** Compact constructor
+	 *
+	 * @param compact whether the tree should store its items in CompactAVLNodes
+	 *
+	 * @post An empty tree. If compact, its nodes keep no min/max pointers: min() and max() stay O(1)
+	 * through the tree's own fields, at the cost of an O(logn) walk per update.
+	 */
+	public AVLTree(boolean compact) {
+		this();
+		this.compact = compact;
+	}
+
+	/** Rank-balanced constructor
+	 *
+	 * @param compact whether the tree should store its items in CompactAVLNodes
+	 * @param rankBalanced whether deletes should follow the weak AVL (WAVL) rules
+	 *
+	 * @post An empty tree. If rankBalanced, rank differences may be (2,2) anywhere but at a leaf. A delete then ends with
+	 * at most two rotations, and its demotions are O(1) amortized, where the AVL rules may demote and rotate all the way up.
+	 * Inserts are the same as in an AVL tree, so without deletes the tree is an AVL tree; with them its height stays under 2logn.
+	 */
+	public AVLTree(boolean compact, boolean rankBalanced) {
+		this(compact);
+		this.rankBalanced = rankBalanced;
+	}
+
 	/** New constructor
 	 *
 	 * @param newRoot newRoot
@@ -30,12 +77,281 @@ public class AVLTree {
 	 */
     public AVLTree(IAVLNode newRoot) { // Another Constructor
         this.root = newRoot;
-        this.min = newRoot.getMin();
-        this.max = newRoot.getMax();
-        this.size = newRoot.getSize();
 		root.setParent(null);
+		updateTreeFields();
     }
 
+	private AVLTree subtree(IAVLNode newRoot) { // A tree over newRoot, with the same node layout as this one. O(1), O(logn) if compact
+		AVLTree tree = new AVLTree(newRoot);
+		tree.compact = this.compact;
+		tree.rankBalanced = this.rankBalanced;
+		tree.aggregator = this.aggregator;
+		return tree;
+	}
+
+	/**
+	 * public boolean isRankBalanced()
+	 *
+	 * Returns true if and only if deletes follow the weak AVL rules, see AVLTree(boolean, boolean).
+	 */
+	public boolean isRankBalanced() { // O(1)
+		return this.rankBalanced;
+	}
+
+	/**
+	 * public static AVLTree fromSorted(int[] keys, String[] infos)
+	 *
+	 * Returns a perfectly balanced tree holding infos[j] under keys[j] for every j, built in O(n) without any rotation.
+	 *
+	 * precondition: keys is strictly increasing and as long as infos, else IllegalArgumentException.
+	 */
+	public static AVLTree fromSorted(int[] keys, String[] infos) { // O(n)
+		return fromSorted(keys, infos, false);
+	}
+
+	/**
+	 * public static AVLTree fromSorted(int[] keys, String[] infos, boolean compact)
+	 *
+	 * Same as fromSorted(keys, infos), with the node layout of AVLTree(compact).
+	 */
+	public static AVLTree fromSorted(int[] keys, String[] infos, boolean compact) { // O(n)
+		if (keys.length != infos.length) {
+			throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+		}
+		requireStrictlyIncreasing(keys);
+		AVLTree tree = new AVLTree(compact);
+		if (keys.length > 0) {
+			tree.root = tree.buildSorted(keys, infos, 0, keys.length - 1);
+			tree.root.setParent(null);
+		}
+		tree.updateTreeFields();
+		return tree;
+	}
+
+	AVLTree sortedCopy(int[] keys, String[] infos) { // fromSorted(keys, infos), with this tree's node layout and deletion rules. O(n)
+		AVLTree tree = fromSorted(keys, infos, this.compact);
+		tree.rankBalanced = this.rankBalanced;
+		return tree;
+	}
+
+	/**
+	 * public static AVLTree fromSorted(int[] keys, String[] infos, boolean compact, ForkJoinPool pool)
+	 *
+	 * Same as fromSorted(keys, infos, compact), building the two halves of every large enough range in parallel on pool.
+	 */
+	public static AVLTree fromSorted(int[] keys, String[] infos, boolean compact, ForkJoinPool pool) { // O(n) work, O(logn) span after the O(n) key check
+		if (pool == null) {
+			return fromSorted(keys, infos, compact);
+		}
+		if (keys.length != infos.length) {
+			throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+		}
+		requireStrictlyIncreasing(keys);
+		AVLTree tree = new AVLTree(compact);
+		if (keys.length > 0) {
+			tree.root = pool.invoke(ForkJoinTask.adapt(() -> tree.buildSortedParallel(keys, infos, 0, keys.length - 1)));
+			tree.root.setParent(null);
+		}
+		tree.updateTreeFields();
+		return tree;
+	}
+
+	/**
+	 * public static AVLTree fromUnsorted(int[] keys, String[] infos)
+	 *
+	 * Same as fromSorted, for keys in any order. Of equal keys, the first one's info is kept, as n calls to insert would.
+	 * The arrays are not modified.
+	 */
+	public static AVLTree fromUnsorted(int[] keys, String[] infos) { // O(nlogn)
+		return fromUnsorted(keys, infos, false);
+	}
+
+	/**
+	 * public static AVLTree fromUnsorted(int[] keys, String[] infos, boolean compact)
+	 *
+	 * Same as fromUnsorted(keys, infos), with the node layout of AVLTree(compact).
+	 */
+	public static AVLTree fromUnsorted(int[] keys, String[] infos, boolean compact) { // O(nlogn)
+		if (keys.length != infos.length) {
+			throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+		}
+		long[] order = new long[keys.length];
+		for (int j = 0; j < keys.length; j++) {
+			order[j] = ((long) keys[j] << 32) | j; // Sorts by key, then by index, so the first of equal keys comes first
+		}
+		Arrays.sort(order);
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedInfos = new String[keys.length];
+		int n = 0;
+		for (long entry : order) {
+			int key = (int) (entry >> 32);
+			if (n == 0 || sortedKeys[n - 1] != key) {
+				sortedKeys[n] = key;
+				sortedInfos[n] = infos[(int) entry];
+				n++;
+			}
+		}
+		if (n < keys.length) {
+			sortedKeys = Arrays.copyOf(sortedKeys, n);
+			sortedInfos = Arrays.copyOf(sortedInfos, n);
+		}
+		return fromSorted(sortedKeys, sortedInfos, compact);
+	}
+
+	private IAVLNode buildSorted(int[] keys, String[] infos, int lo, int hi) { // Builds keys[lo..hi] in order, with the middle key as root. Sides differ by at most one node, so ranks differ by at most one. O(hi - lo)
+		if (lo > hi) {
+			return EXT;
+		}
+		int mid = (lo + hi) >>> 1;
+		IAVLNode left = buildSorted(keys, infos, lo, mid - 1);
+		IAVLNode node = createNode(keys[mid], infos[mid]);
+		IAVLNode right = buildSorted(keys, infos, mid + 1, hi);
+		node.setLeft(left);
+		node.setRight(right);
+		if (left.isRealNode()) {
+			left.setParent(node);
+		}
+		if (right.isRealNode()) {
+			right.setParent(node);
+		}
+		updateFields(node);
+		return node;
+	}
+
+	private IAVLNode buildSortedParallel(int[] keys, String[] infos, int lo, int hi) { // Same as buildSorted, forking the left half of large ranges. Only reads this tree's EXT and compact flag. O(hi - lo)
+		if (hi - lo < PARALLEL_THRESHOLD) {
+			return buildSorted(keys, infos, lo, hi);
+		}
+		int mid = (lo + hi) >>> 1;
+		ForkJoinTask<IAVLNode> leftTask = ForkJoinTask.adapt(() -> buildSortedParallel(keys, infos, lo, mid - 1)).fork();
+		IAVLNode right = buildSortedParallel(keys, infos, mid + 1, hi);
+		IAVLNode node = createNode(keys[mid], infos[mid]);
+		hang(node, leftTask.join(), right);
+		updateFields(node);
+		return node;
+	}
+
+	/**
+	 * public AVLTreeMetrics enableMetrics()
+	 *
+	 * Starts counting rebalancing steps, search path lengths and operation latencies into this tree's metrics,
+	 * which it creates if it has none, and returns them. The halves of a split and the result of a join keep reporting to them.
+	 */
+	public AVLTreeMetrics enableMetrics() { // O(1)
+		return enableMetrics(this.metrics != null ? this.metrics : new AVLTreeMetrics());
+	}
+
+	/**
+	 * public AVLTreeMetrics enableMetrics(AVLTreeMetrics metrics)
+	 *
+	 * Same as enableMetrics(), into the given metrics, which other trees may share. Returns them.
+	 */
+	public AVLTreeMetrics enableMetrics(AVLTreeMetrics metrics) { // O(1)
+		this.metrics = metrics;
+		return metrics;
+	}
+
+	/**
+	 * public void disableMetrics()
+	 *
+	 * Stops counting. A tree without metrics pays a null check per operation and per rebalancing step.
+	 */
+	public void disableMetrics() { // O(1)
+		this.metrics = null;
+	}
+
+	/**
+	 * public AVLTreeMetrics getMetrics()
+	 *
+	 * Returns the metrics this tree counts into, or null if it counts nothing.
+	 */
+	public AVLTreeMetrics getMetrics() { // O(1)
+		return this.metrics;
+	}
+
+  /**
+   * public void setAggregator(Aggregator<?> aggregator)
+   *
+   * Makes every node keep aggregator's value over its sub-tree, so that aggregate(lo, hi) takes O(logn),
+   * or stops keeping any if aggregator is null. The values for the current items are computed at once,
+   * then every update recomputes the ones on its path. Split halves, join results, filter and mapValues keep the aggregator;
+   * a tree joined or combined into this one takes it too, which costs O(|t|) if t had another.
+   * Joining or combining compact nodes into an aggregated tree throws IllegalArgumentException.
+   *
+   * precondition: the tree is not compact and holds no node joined in from a compact one, else IllegalStateException.
+   * The values fill AVLNode's padding, CompactAVLNode has none.
+   */
+  @SuppressWarnings("unchecked")
+  public void setAggregator(Aggregator<?> aggregator) // O(n)
+  {
+	  if (aggregator != null && this.compact) {
+		  throw new IllegalStateException("Aggregates need the default node layout, this tree is compact");
+	  }
+	  if (aggregator != null && !empty() && !hasDefaultLayout(this.root)) {
+		  throw new IllegalStateException("Aggregates need the default node layout, this tree holds compact nodes");
+	  }
+	  this.aggregator = (Aggregator<Object>) aggregator;
+	  if (aggregator != null && !empty()) {
+		  aggregateAll(this.root);
+	  }
+  }
+
+  /**
+   * public Aggregator<?> getAggregator()
+   *
+   * Returns the aggregator the nodes keep values of, or null if they keep none.
+   */
+  public Aggregator<?> getAggregator() // O(1)
+  {
+	  return this.aggregator;
+  }
+
+  private Object aggregateOf(IAVLNode node) { // The kept value of node's sub-tree. Every node of an aggregated tree is an AVLNode, see hasDefaultLayout. O(1)
+	  return node.isRealNode() ? ((AVLNode) node).aggregate : aggregator.identity();
+  }
+
+  private void updateAggregate(IAVLNode node) { // Recomputes node's value from its children's. O(1)
+	  if (node.isRealNode()) {
+		  ((AVLNode) node).aggregate = aggregator.combine(aggregator.combine(aggregateOf(node.getLeft()), aggregator.of(node.getKey(), node.getValue())), aggregateOf(node.getRight()));
+	  }
+  }
+
+  private void aggregateAll(IAVLNode node) { // Computes the values of node's whole sub-tree, children first. O(size)
+	  if (!node.isRealNode()) {
+		  return;
+	  }
+	  aggregateAll(node.getLeft());
+	  aggregateAll(node.getRight());
+	  updateAggregate(node);
+  }
+
+  private static boolean hasDefaultLayout(IAVLNode node) { // Whether every node of node's sub-tree is an AVLNode, which has room for an aggregate. O(size)
+	  return !node.isRealNode() || (node instanceof AVLNode && hasDefaultLayout(node.getLeft()) && hasDefaultLayout(node.getRight()));
+  }
+
+  private void shareAggregator(AVLTree t) { // Gives t this tree's aggregator, before this tree takes t's nodes in. O(1), O(|t|) if t had another one
+	  if (t.aggregator != this.aggregator) {
+		  if (this.aggregator != null && (t.compact || (!t.empty() && !hasDefaultLayout(t.root)))) { // t may end up holding the result
+			  throw new IllegalArgumentException("Aggregates need the default node layout, t is compact");
+		  }
+		  t.aggregator = this.aggregator;
+		  if (this.aggregator != null && !t.empty()) {
+			  t.aggregateAll(t.root);
+		  }
+	  }
+  }
+
+  private void shareRankRules(AVLTree t) { // Makes both trees rank-balanced if either is: an AVL tree is a legal WAVL tree, not the other way around. O(1)
+	  this.rankBalanced |= t.rankBalanced;
+	  t.rankBalanced = this.rankBalanced;
+  }
+
+  private void refreshAggregates(IAVLNode node) { // Recomputes the values of node and its ancestors, bottom-up. O(logn)
+	  for (; node != null; node = node.getParent()) {
+		  updateAggregate(node);
+	  }
+  }
+
   /**
    * public boolean empty()
    *
@@ -53,6 +369,9 @@ public class AVLTree {
    * otherwise, returns null.
    */
   public String search(int k) { // Calls for Iterative function. O(1) (Inside function is O(logn)). O(logn) total.
+	  if (metrics != null) {
+		  return searchMeasured(k);
+	  }
 	  IAVLNode resultNode = generalSearch(k);
 	  if (resultNode == null || resultNode.getKey() != k) { // Means node not found
 		  return null;
@@ -62,6 +381,18 @@ public class AVLTree {
 	  }
   }
 
+	private String searchMeasured(int k) { // search, timed, and its path length counted afterwards by climbing back. O(logn)
+		long start = System.nanoTime();
+		IAVLNode resultNode = generalSearch(k);
+		long nanos = System.nanoTime() - start;
+		int pathLength = 0;
+		for (IAVLNode node = resultNode; node != null; node = node.getParent()) {
+			pathLength++;
+		}
+		metrics.searched(pathLength, nanos);
+		return resultNode != null && resultNode.getKey() == k ? resultNode.getValue() : null;
+	}
+
 	private IAVLNode generalSearch(int k) { // Returns parent of the desired node for insertion, or Node itself if it's in the tree. O(logn)
 		IAVLNode currNode = this.root;
 		if (empty()) { // Means tree is empty
@@ -100,10 +431,19 @@ public class AVLTree {
    * A promotion/rotation counts as one re-balance operation, double-rotation is counted as 2.
    * Returns -1 if an item with key k already exists in the tree.
    */
-   public int insert(int k, String i) { // Searching the location to insert the node and rebalancing the tree, including updating all fields of nodes in the path from root to the inserted node. O(logn)
-	   IAVLNode newNode = new AVLNode(k, i);
-	   IAVLNode newParent = generalSearch(k);
-	   if (newParent == null) { // Means tree is empty, and we need to initialize root
+   public int insert(int k, String i) { // O(logn)
+	   if (metrics == null) {
+		   return insertItem(k, i);
+	   }
+	   long start = System.nanoTime();
+	   int numOfMoves = insertItem(k, i);
+	   metrics.inserted(System.nanoTime() - start);
+	   return numOfMoves;
+   }
+
+   private int insertItem(int k, String i) { // One pass down that also updates sizes and min/max, then rebalancing up only as far as it goes. O(logn)
+	   IAVLNode newNode = createNode(k, i);
+	   if (empty()) { // Means tree is empty, and we need to initialize root
 		   this.root = newNode;
 		   root.setParent(null);
 		   root.setLeft(EXT); root.setRight(EXT);
@@ -111,14 +451,76 @@ public class AVLTree {
 		   updateTreeFields();
 		   return 0;
 	   }
-	   if (newParent.getKey() == k) { // There's already a node with key k in the tree
-		   return -1;
+	   IAVLNode newParent = null;
+	   IAVLNode node = this.root;
+	   boolean ownNodes = true; // Whether every node on the path took its new size on the way down
+	   while (node.isRealNode()) { // Counts the new node into every sub-tree on its path, assuming k is new
+		   if (node.getKey() == k) { // There's already a node with key k in the tree, take the counts back
+			   for (IAVLNode counted = node.getParent(); counted != null; counted = counted.getParent()) {
+				   addToSize(counted, -1);
+			   }
+			   return -1;
+		   }
+		   ownNodes &= addItem(node, newNode);
+		   newParent = node;
+		   node = k < node.getKey() ? node.getLeft() : node.getRight();
 	   }
+	   return linkNewLeaf(newParent, newNode, ownNodes);
+   }
+
+   private int linkNewLeaf(IAVLNode newParent, IAVLNode newNode, boolean ownNodes) { // Hangs newNode under newParent, whose ancestors already counted it unless !ownNodes, and rebalances. O(1) amortized, O(logn) if !ownNodes
 	   insertNode(newParent, newNode);
 	   int numOfMoves = 1; // Promoting inside insertNode therefore there's already one balancing operation
-	   numOfMoves += rebalanceInsert(newParent); // We already took care of newParent-newNode edge. now for the rest of the tree
-       updateTreeFields();
-	  return numOfMoves;
+	   if (!ownNodes) { // A node from elsewhere was joined in, its fields, aggregates included, can only be recomputed bottom-up
+		   numOfMoves += rebalanceInsert(newParent);
+		   updateTreeFields();
+		   return numOfMoves;
+	   }
+	   numOfMoves += rebalanceInsertedLeaf(newParent);
+	   if (aggregator != null) { // Sizes were counted on the way down, aggregates, which need not commute, are recomputed on the way up.
+		   refreshAggregates(newParent); // Rotated nodes off this path were recomputed by the rotation, from sub-trees the insert did not touch
+	   }
+	   this.size++;
+	   if (newNode.getKey() < this.min.getKey()) {
+		   this.min = newNode;
+	   }
+	   if (newNode.getKey() > this.max.getKey()) {
+		   this.max = newNode;
+	   }
+	   return numOfMoves;
+   }
+
+   private boolean addItem(IAVLNode node, IAVLNode item) { // Counts item, which will be put under node, into node's size and min/max. False if node is not one of ours and was left as it was. O(1)
+	   if (!addToSize(node, 1)) {
+		   return false;
+	   }
+	   if (!this.compact) {
+		   AVLNode avlNode = (AVLNode) node;
+		   if (item.getKey() < avlNode.min.getKey()) {
+			   avlNode.min = item;
+		   }
+		   if (item.getKey() > avlNode.max.getKey()) {
+			   avlNode.max = item;
+		   }
+	   }
+	   return true;
+   }
+
+   private boolean addToSize(IAVLNode node, int delta) { // False if node is not of this tree's node class, which can only recompute its size. O(1)
+	   if (this.compact ? !(node instanceof CompactAVLNode) : !(node instanceof AVLNode)) {
+		   return false;
+	   }
+	   if (this.compact) {
+		   ((CompactAVLNode) node).size += delta;
+	   }
+	   else {
+		   ((AVLNode) node).size += delta;
+	   }
+	   return true;
+   }
+
+   private IAVLNode createNode(int k, String i) { // O(1)
+	   return this.compact ? new CompactAVLNode(k, i) : new AVLNode(k, i);
    }
 
    public void insertNode(IAVLNode parent, IAVLNode node) { // Inserting node to parent. O(1)
@@ -135,80 +537,93 @@ public class AVLTree {
        updateFields(parent);
    }
 
-   private boolean isLegalRD(int[] rD) { // Checks if a given rank Difference is legal according to AVL definition. O(1)
-	   int[][] legalRD = {{1,1}, {1,2}, {2,1}};
-	   for(int[] possibleRD : legalRD) {
-		   if (rD[0] == possibleRD[0] && rD[1] == possibleRD[1]) {
-			   return true;
-		   }
-	   }
-	   return false;
+   private boolean isLegalRD(int leftRD, int rightRD) { // Checks if a given rank Difference is legal according to AVL definition, i.e. (1,1), (1,2) or (2,1), or (2,2) if rank-balanced. O(1)
+	   return (leftRD == 1 && rightRD == 1) || (leftRD == 1 && rightRD == 2) || (leftRD == 2 && rightRD == 1) || (this.rankBalanced && leftRD == 2 && rightRD == 2);
+   }
+
+   private static int leftRankDifference(IAVLNode node) { // Derived from the ranks on demand, so nothing is stored or allocated. 0 for an external leaf. O(1)
+	   return node.isRealNode() ? node.getHeight() - node.getLeft().getHeight() : 0;
+   }
+
+   private static int rightRankDifference(IAVLNode node) { // O(1)
+	   return node.isRealNode() ? node.getHeight() - node.getRight().getHeight() : 0;
+   }
+
+   private boolean isLegalWavlNode(IAVLNode node) { // Checks node's rank differences against the weak AVL rules: 1 or 2 each, and (1,1) at a leaf. O(1)
+	   int leftRD = leftRankDifference(node);
+	   int rightRD = rightRankDifference(node);
+	   return leftRD >= 1 && leftRD <= 2 && rightRD >= 1 && rightRD <= 2 && (node.getHeight() == 0 || !isLeaf(node));
    }
 
    private void updateFields(IAVLNode node) { // Updates all fields of the node. O(1)
 	   node.updateMin();
 	   node.updateMax();
 	   node.updateSize();
-	   node.setHeight(Math.max(node.getLeft().getHeight(), node.getRight().getHeight()) + 1); // Updates rank
-	   node.updateRankDifference(updateRankDifferenceInTree(node));
+	   if (!this.rankBalanced || !isLegalWavlNode(node)) { // A rank-balanced tree keeps legal ranks, which deletes leave above heights
+		   node.setHeight(Math.max(node.getLeft().getHeight(), node.getRight().getHeight()) + 1); // Updates rank. Rank differences are derived from it on demand
+	   }
+	   if (aggregator != null) {
+		   updateAggregate(node);
+	   }
    }
 
-   private void updateTreeFields() { // O(1)
+   private void updateTreeFields() { // O(1), O(logn) if compact
+	   if (empty()) {
+		   this.min = null;
+		   this.max = null;
+		   this.size = 0;
+		   return;
+	   }
 	   this.min = root.getMin();
        this.max = root.getMax();
        this.size = root.getSize();
    }
 
-	private int[] updateRankDifferenceInTree(IAVLNode node) { // O(1)
-	   int[] rankDifference = new int[2];
-	   if (node.getKey() != -1) { // Means node is not EXT
-		   rankDifference[0] = node.getHeight() - node.getLeft().getHeight();
-		   rankDifference[1] = node.getHeight() - node.getRight().getHeight();
-	   }
-	   return rankDifference;
-   }
-
    private int rebalanceInsert(IAVLNode node) { // Rebalance from this node and go up. O(logn)
 	   int numOfOperations = 0;
 	   updateFields(node);
 	   IAVLNode parent = node.getParent(); // Doing most operations in relation to parent, stating the child as input because it's more convenient that determining every time whether it's left child or right child.
        while (parent != null) {
-		   int[] parentRD = updateRankDifferenceInTree(parent);
-		   if (!isLegalRD(parentRD)) {
-			   int[] nodeRD = node.getRankDifference();
-			   if ((parentRD[0] == 0 && parentRD[1] == 1) || (parentRD[0] == 1 && parentRD[1] == 0)) { // Means parent's rD is either [0,1] or [1,0]
+		   int parentLeftRD = leftRankDifference(parent);
+		   int parentRightRD = rightRankDifference(parent);
+		   if (!isLegalRD(parentLeftRD, parentRightRD)) {
+			   int nodeLeftRD = leftRankDifference(node);
+			   int nodeRightRD = rightRankDifference(node);
+			   if ((parentLeftRD == 0 && parentRightRD == 1) || (parentLeftRD == 1 && parentRightRD == 0)) { // Means parent's rD is either [0,1] or [1,0]
 				   promote(parent);
 				   numOfOperations++;
-			   } else if ((parentRD[0] == 0 && parentRD[1] == 2) && (nodeRD[0] == 1 && nodeRD[1] == 2)) { // Parent is (0,2) and node is (1,2)
+			   } else if ((parentLeftRD == 0 && parentRightRD == 2) && (nodeLeftRD == 1 && nodeRightRD == 2)) { // Parent is (0,2) and node is (1,2)
 				   rotateRight(parent);
 				   demote(parent);
 				   numOfOperations += 2;
-			   } else if ((parentRD[0] == 2 && parentRD[1] == 0) && (nodeRD[0] == 2 && nodeRD[1] == 1)) { // Its symmetrical counterpart: Parent (2,0), node (2,1)
+			   } else if ((parentLeftRD == 2 && parentRightRD == 0) && (nodeLeftRD == 2 && nodeRightRD == 1)) { // Its symmetrical counterpart: Parent (2,0), node (2,1)
 				   rotateLeft(parent);
 				   demote(parent);
 				   numOfOperations += 2;
-			   } else if ((parentRD[0] == 0 && parentRD[1] == 2) && (nodeRD[0] == 2 && nodeRD[1] == 1)) { // Parent is (0,2) and node is (2,1)
+			   } else if ((parentLeftRD == 0 && parentRightRD == 2) && (nodeLeftRD == 2 && nodeRightRD == 1)) { // Parent is (0,2) and node is (2,1)
 				   promote(node.getRight());
 				   demote(node);
 				   rotateLeft(node);
 				   rotateRight(parent);
+				   countDoubleRotation();
 				   demote(parent);
 				   numOfOperations += 5;
-			   } else if ((parentRD[0] == 2 && parentRD[1] == 0) && (nodeRD[0] == 1 && nodeRD[1] == 2)) { // Its symmetrical counterpart:  Parent (2,0), node (1,2)
+			   } else if ((parentLeftRD == 2 && parentRightRD == 0) && (nodeLeftRD == 1 && nodeRightRD == 2)) { // Its symmetrical counterpart:  Parent (2,0), node (1,2)
 				   promote(node.getLeft());
 				   demote(node);
 				   rotateRight(node);
 				   rotateLeft(parent);
+				   countDoubleRotation();
 				   demote(parent);
 				   numOfOperations += 5;
 			   }
-			   else if (nodeRD[0] == 1 && nodeRD[1] == 1) { // Special case relevant only for joining trees. node is (1,1)
-				   if (parentRD[0] == 0 && parentRD[1] == 2) { // node is (1,1) left child to a (0,2) parent
+			   else if (nodeLeftRD == 1 && nodeRightRD == 1) { // Special case relevant only for joining trees. node is (1,1)
+				   if (parentLeftRD == 0 && parentRightRD == 2) { // node is (1,1) left child to a (0,2) parent
 					   rotateRight(parent);
 					   promote(node);
 					   numOfOperations += 2;
 				   }
-				   else if (parentRD[0] == 2 && parentRD[1] == 0) { // node is (1,1) right child to a (2,0) parent
+				   else if (parentLeftRD == 2 && parentRightRD == 0) { // node is (1,1) right child to a (2,0) parent
 					   rotateLeft(parent);
 					   promote(node);
 					   numOfOperations +=2;
@@ -222,7 +637,59 @@ public class AVLTree {
 	   return numOfOperations;
    }
 
+   private int rebalanceInsertedLeaf(IAVLNode node) { // rebalanceInsert's cases for a new leaf's parent, whose ancestors already have their sizes and min/max. Stops when the cascade does. O(1) amortized, O(logn)
+	   int numOfOperations = 0;
+	   IAVLNode parent = node.getParent();
+	   while (parent != null) {
+		   int parentLeftRD = leftRankDifference(parent);
+		   int parentRightRD = rightRankDifference(parent);
+		   if (isLegalRD(parentLeftRD, parentRightRD)) { // parent kept its rank, so nothing above it changes
+			   return numOfOperations;
+		   }
+		   if ((parentLeftRD == 0 && parentRightRD == 1) || (parentLeftRD == 1 && parentRightRD == 0)) { // The one case that goes on up
+			   promote(parent);
+			   numOfOperations++;
+			   node = parent;
+			   parent = parent.getParent();
+			   continue;
+		   }
+		   int nodeLeftRD = leftRankDifference(node);
+		   int nodeRightRD = rightRankDifference(node);
+		   if ((parentLeftRD == 0 && parentRightRD == 2) && (nodeLeftRD == 1 && nodeRightRD == 2)) { // Parent is (0,2) and node is (1,2)
+			   rotateRight(parent);
+			   demote(parent);
+			   numOfOperations += 2;
+		   } else if ((parentLeftRD == 2 && parentRightRD == 0) && (nodeLeftRD == 2 && nodeRightRD == 1)) { // Parent (2,0), node (2,1)
+			   rotateLeft(parent);
+			   demote(parent);
+			   numOfOperations += 2;
+		   } else if ((parentLeftRD == 0 && parentRightRD == 2) && (nodeLeftRD == 2 && nodeRightRD == 1)) { // Parent is (0,2) and node is (2,1)
+			   promote(node.getRight());
+			   demote(node);
+			   rotateLeft(node);
+			   rotateRight(parent);
+			   countDoubleRotation();
+			   demote(parent);
+			   numOfOperations += 5;
+		   } else if ((parentLeftRD == 2 && parentRightRD == 0) && (nodeLeftRD == 1 && nodeRightRD == 2)) { // Parent (2,0), node (1,2)
+			   promote(node.getLeft());
+			   demote(node);
+			   rotateRight(node);
+			   rotateLeft(parent);
+			   countDoubleRotation();
+			   demote(parent);
+			   numOfOperations += 5;
+		   }
+		   updateFields(parent); // The rotations already gave parent its rank, the demotion above is only counted. Recompute it from the children
+		   return numOfOperations; // A rotation restores the sub-tree's rank
+	   }
+	   return numOfOperations;
+   }
+
    private void rotateRight(IAVLNode parent) { // Mind that we rotate parent with its left child O(1)
+	   if (metrics != null) {
+		   metrics.rotated();
+	   }
 	   IAVLNode node = parent.getLeft();
 	   IAVLNode grandpa = parent.getParent();
 	   IAVLNode rightChild = node.getRight();
@@ -246,11 +713,20 @@ public class AVLTree {
 		   node.setRight(parent);
 	   }
 	   parent.setParent(node);
+	   int parentRank = parent.getHeight();
+	   int nodeRank = node.getHeight();
 	   updateFields(parent);
 	   updateFields(node);
+	   if (this.rankBalanced) { // The callers promote and demote explicitly, and a rank-balanced tree does not recompute legal ranks
+		   parent.setHeight(parentRank);
+		   node.setHeight(nodeRank);
+	   }
    }
 
    private void rotateLeft(IAVLNode parent) { // Mind that we rotate parent with its right child. O(1)
+	   if (metrics != null) {
+		   metrics.rotated();
+	   }
 	   IAVLNode node = parent.getRight();
 	   IAVLNode grandma = parent.getParent();
 	   IAVLNode leftChild = node.getLeft();
@@ -274,16 +750,34 @@ public class AVLTree {
 		   node.setLeft(parent);
 	   }
 	   parent.setParent(node);
+	   int parentRank = parent.getHeight();
+	   int nodeRank = node.getHeight();
 	   updateFields(parent);
 	   updateFields(node);
+	   if (this.rankBalanced) { // The callers promote and demote explicitly, and a rank-balanced tree does not recompute legal ranks
+		   parent.setHeight(parentRank);
+		   node.setHeight(nodeRank);
+	   }
    }
 
    private void promote(IAVLNode node) { // O(1)
 	   node.setHeight(node.getHeight() + 1);
+	   if (metrics != null) {
+		   metrics.promoted();
+	   }
    }
 
    private void demote(IAVLNode node) { // O(1)
 	   node.setHeight(node.getHeight() - 1);
+	   if (metrics != null) {
+		   metrics.demoted();
+	   }
+   }
+
+   private void countDoubleRotation() { // Called after the second of the two rotations. O(1)
+	   if (metrics != null) {
+		   metrics.rotatedTwice();
+	   }
    }
 
   /**
@@ -297,45 +791,151 @@ public class AVLTree {
    */
    public int delete(int k) // O(logn)
    {
+	   if (metrics == null) {
+		   return deleteItem(k);
+	   }
+	   long start = System.nanoTime();
+	   int numOfOps = deleteItem(k);
+	   metrics.deleted(System.nanoTime() - start);
+	   return numOfOps;
+   }
+
+   private int deleteItem(int k) { // O(logn)
 	   IAVLNode deletedNode = generalSearch(k);
-	   int numOfOps = 0;
 	   if (deletedNode == null || deletedNode.getKey() != k) {
 		   return -1;
 	   }
+	   return deleteNode(deletedNode);
+   }
+
+   private int deleteNode(IAVLNode deletedNode) { // Deletes a node of this tree and rebalances up to the root. O(logn)
+	   if (this.rankBalanced) {
+		   return deleteNodeWavl(deletedNode);
+	   }
+	   int numOfOps = 0;
+	   if (isBinary(deletedNode)) { // Node is binary
+		   binSuccessor(deletedNode); // Find its successor and replace it!
+		   // Node is now either unary or a leaf.
+		   // Bear in mind that current tree is not necessarily a BST nor AVL tree! But we'll fix it
+	   }
+	   if (isLeaf(deletedNode)) {
+		   IAVLNode parent = deletedNode.getParent();
+		   deleteALeaf(deletedNode);
+		   if (empty()) { // Means we just deleted the root and tree is now empty - no rebalance steps required
+			   updateTreeFields();
+			   return 0;
+		   }
+		   updateFields(parent);
+		   int parentLeftRD = leftRankDifference(parent);
+		   int parentRightRD = rightRankDifference(parent);
+		   if (parentLeftRD == 2 && parentRightRD == 2) { // Special case from other rebalance cases that parent became a leaf
+			   demote(parent);
+			   numOfOps++;
+		   }
+		   numOfOps += rebalanceDelete(parent);
+		   if (parent.getLeft().isRealNode()) { // To start rebalance from child, not from parent - might cover some edge cases
+			   numOfOps += Math.max(rebalanceDelete(parent.getLeft()) - 1, 0); // Less the step the first pass already counted, if this one met it again
+		   }
+		   else if (parent.getRight().isRealNode()) { // In case parent doesn't have a left child.
+			   numOfOps += Math.max(rebalanceDelete(parent.getRight()) - 1, 0);
+		   }
+	   }
+	   else if (isUnary(deletedNode)) {
+		   IAVLNode child = deletedNode.getLeft().isRealNode() ? deletedNode.getLeft() : deletedNode.getRight(); // Get the deleted unary node child, either one.
+		   deleteUnary(deletedNode);
+		   numOfOps += rebalanceDelete(child); // Start from child and go up
+	   }
+	   numOfOps += rebalanceRoot(); // The rebalancing recomputed every ancestor's fields on its way up, aggregates included
+	   updateFields(this.root);
+	   updateTreeFields();
+	   return numOfOps;
+   }
+
+   private int deleteNodeWavl(IAVLNode deletedNode) { // Deletes a node of this tree under the weak AVL rules, then recomputes sizes and min/max up to the root. O(logn)
+	   if (isBinary(deletedNode)) {
+		   binSuccessor(deletedNode); // Node is now either unary or a leaf, at its successor's place
+	   }
+	   IAVLNode parent = deletedNode.getParent();
+	   boolean left = parent != null && parent.getLeft() == deletedNode;
+	   int numOfOps = 0;
+	   if (isLeaf(deletedNode)) {
+		   deleteALeaf(deletedNode);
+	   }
 	   else {
-		   if (isBinary(deletedNode)) { // Node is binary
-			   binSuccessor(deletedNode); // Find its successor and replace it!
-			   // Node is now either unary or a leaf.
-			   // Bear in mind that current tree is not necessarily a BST nor AVL tree! But we'll fix it
-		   }
-		   if (isLeaf(deletedNode)) {
-			   IAVLNode parent = deletedNode.getParent();
-			   deleteALeaf(deletedNode);
-			   if (empty()) { // Means we just deleted the root and tree is now empty - no rebalance steps required
-				   return 0;
+		   deleteUnary(deletedNode);
+	   }
+	   if (parent != null) {
+		   numOfOps = rebalanceDeleteWavl(parent, left);
+	   }
+	   for (IAVLNode node = parent; node != null; node = node.getParent()) { // Every rank is legal again, so this only recomputes the rest, aggregates included
+		   updateFields(node);
+	   }
+	   updateTreeFields();
+	   return numOfOps;
+   }
+
+   private int rebalanceDeleteWavl(IAVLNode parent, boolean left) { // Restores the weak AVL rules after parent's left (or right) sub-tree lost one rank. Stops at the first rotation. O(1) amortized, O(logn)
+	   int numOfOps = 0;
+	   if (isLeaf(parent) && parent.getHeight() == 1) { // Parent became a (2,2) leaf
+		   demote(parent);
+		   numOfOps++;
+		   if (parent.getParent() == null) {
+			   return numOfOps;
+		   }
+		   left = parent.getParent().getLeft() == parent;
+		   parent = parent.getParent();
+	   }
+	   while ((left ? leftRankDifference(parent) : rightRankDifference(parent)) == 3) {
+		   IAVLNode sibling = left ? parent.getRight() : parent.getLeft();
+		   int siblingRD = left ? rightRankDifference(parent) : leftRankDifference(parent);
+		   if (siblingRD == 2 || (leftRankDifference(sibling) == 2 && rightRankDifference(sibling) == 2)) { // Parent is (3,2), or (3,1) with a (2,2) sibling: demotions move the problem up
+			   if (siblingRD == 1) {
+				   demote(sibling);
+				   numOfOps++;
 			   }
-			   updateFields(parent);
-			   int[] parentRD = parent.getRankDifference();
-			   if (parentRD[0] == 2 && parentRD[1] == 2) { // Special case from other rebalance cases that parent became a leaf
+			   demote(parent);
+			   numOfOps++;
+			   if (parent.getParent() == null) {
+				   return numOfOps;
+			   }
+			   left = parent.getParent().getLeft() == parent;
+			   parent = parent.getParent();
+			   continue;
+		   }
+		   int outerRD = left ? rightRankDifference(sibling) : leftRankDifference(sibling);
+		   if (outerRD == 1) { // The sibling's outer child is its higher one: a single rotation
+			   if (left) {
+				   rotateLeft(parent);
+			   }
+			   else {
+				   rotateRight(parent);
+			   }
+			   promote(sibling);
+			   demote(parent);
+			   numOfOps += 3;
+			   if (isLeaf(parent)) { // Parent would be a (2,2) leaf
 				   demote(parent);
 				   numOfOps++;
 			   }
-			   numOfOps += rebalanceDelete(parent);
-			   if (parent.getLeft().isRealNode()) { // To start rebalance from child, not from parent - might cover some edge cases
-				   numOfOps += rebalanceDelete(parent.getLeft()) - 1; 
+		   }
+		   else { // The inner child is: a double rotation, the inner child taking parent's place and rank
+			   IAVLNode inner = left ? sibling.getLeft() : sibling.getRight();
+			   if (left) {
+				   rotateRight(sibling);
+				   rotateLeft(parent);
 			   }
-			   else if (parent.getRight().isRealNode()) { // In case parent doesn't have a left child.
-				   numOfOps += rebalanceDelete(parent.getRight()) - 1;
+			   else {
+				   rotateLeft(sibling);
+				   rotateRight(parent);
 			   }
+			   countDoubleRotation();
+			   promote(inner); promote(inner); // Double promote
+			   demote(sibling);
+			   demote(parent); demote(parent); // Double demote
+			   numOfOps += 7;
 		   }
-		   else if (isUnary(deletedNode)) {
-			   IAVLNode child = deletedNode.getLeft().isRealNode() ? deletedNode.getLeft() : deletedNode.getRight(); // Get the deleted unary node child, either one.
-			   deleteUnary(deletedNode);
-			   numOfOps += rebalanceDelete(child); // Start from child and go up
-		   }
+		   return numOfOps; // A rotation keeps the sub-tree's rank
 	   }
-	   numOfOps += rebalanceRoot();
-	   updateFields(this.root);
 	   return numOfOps;
    }
 
@@ -364,6 +964,9 @@ public class AVLTree {
 	   }
 	   if (succs.isRealNode()) {
 		   switchNodes(node, succs);
+		   int rank = node.getHeight(); // Each takes the other's place, and rank
+		   node.setHeight(succs.getHeight());
+		   succs.setHeight(rank);
 	   }
 	   updateFields(node);
 	   updateFields(succs);
@@ -385,7 +988,7 @@ public class AVLTree {
 	   }
 	   succs.setParent(parent);
 	   if (parent != null) { // Means node is not the root!
-		   if (parent.getLeft().getKey() == node.getKey()) { // Node is parents left child
+		   if (parent.getLeft() == node) { // Node is parents left child
 			   parent.setLeft(succs); // Both ways
 		   } else { // Node is parents right child
 			   parent.setRight(succs);
@@ -395,7 +998,7 @@ public class AVLTree {
 		   this.root = succs;
 	   }
 	   /* Assignment differ for special cases: */
-	   if (nodeRight.getKey() == succs.getKey()) { // Node is succs parent
+	   if (nodeRight == succs) { // Node is succs parent
 		   succs.setRight(node);
 		   node.setParent(succs);
 	   }
@@ -411,8 +1014,8 @@ public class AVLTree {
 	private void deleteALeaf(IAVLNode node) { // Deletes a leaf from tree. O(1)
 	   IAVLNode parent = node.getParent();
 	   node.setParent(null);
-		if (node.getKey() != this.root.getKey()) { // Means deleting an inside leaf, Tree won't remain empty
-			if (node.getKey() == parent.getLeft().getKey()) { // node was a left child
+		if (node != this.root) { // Means deleting an inside leaf, Tree won't remain empty
+			if (node == parent.getLeft()) { // node was a left child
 				parent.setLeft(EXT);
 			} else { // node was a right child
 				parent.setRight(EXT);
@@ -441,11 +1044,11 @@ public class AVLTree {
    }
 
 	private void setParentChild(IAVLNode node, IAVLNode parent, IAVLNode child) { // Sets the parent's new child. O(1)
-		if (node.getKey() == root.getKey()) { // Means we're deleting the root
+		if (node == root) { // Means we're deleting the root
 			this.root = child;
 		}
 		else { // Not deleting the root
-			if (node.getKey() == parent.getLeft().getKey()) { // node was a left child
+			if (node == parent.getLeft()) { // node was a left child
 				parent.setLeft(child);
 			} else { // node was a right child
 				parent.setRight(child);
@@ -461,54 +1064,59 @@ public class AVLTree {
 	   int numOfOps = 0;
 	   while (parent != null) {
 		   updateFields(parent);
-		   int[] parentRD = parent.getRankDifference();
-		   if (parentRD[0] == 2 && parentRD[1] == 2) { // Parent is a (2,2) node
+		   int parentLeftRD = leftRankDifference(parent);
+		   int parentRightRD = rightRankDifference(parent);
+		   if (parentLeftRD == 2 && parentRightRD == 2) { // Parent is a (2,2) node
 			   demote(parent);
 			   numOfOps++;
 		   }
-		   else if (parentRD[0] == 3 && parentRD[1] == 1) { // Parent is a (3,1) node, 3 cases
+		   else if (parentLeftRD == 3 && parentRightRD == 1) { // Parent is a (3,1) node, 3 cases
 			   IAVLNode rightChild = parent.getRight(); // Get the right child, which wasn't in the deletion route
-			   int[] rightRD = rightChild.getRankDifference();
-			   if (rightRD[0] == 1 && rightRD[1] == 1) { // Right child is a (1,1) node
+			   int rightLeftRD = leftRankDifference(rightChild);
+			   int rightRightRD = rightRankDifference(rightChild);
+			   if (rightLeftRD == 1 && rightRightRD == 1) { // Right child is a (1,1) node
 				   rotateLeft(parent);
 				   demote(parent);
 				   promote(rightChild);
 				   numOfOps += 3;
 			   }
-			   else if (rightRD[0] == 1 && rightRD[1] == 2) { // Right child is a (1,2) node
+			   else if (rightLeftRD == 1 && rightRightRD == 2) { // Right child is a (1,2) node
 				   IAVLNode leftRightChild = rightChild.getLeft();
 				   rotateRight(rightChild);
 				   rotateLeft(parent);
+				   countDoubleRotation();
 				   promote(leftRightChild);
 				   demote(node);
 				   demote(parent); demote(parent); // Double demote, counts as 2 operations
 				   numOfOps += 6;
 			   }
-			   else if (rightRD[0] == 2 && rightRD[1] == 1) { // Right child is a (2,1) node
+			   else if (rightLeftRD == 2 && rightRightRD == 1) { // Right child is a (2,1) node
 				   rotateLeft(parent);
 				   demote(parent); demote(parent); // Double demote
 				   numOfOps += 3;
 			   }
 		   }
-		   else if (parentRD[0] == 1 && parentRD[1] == 3) { // Parent is a (3,1) node, all symmetrical cases to the above
+		   else if (parentLeftRD == 1 && parentRightRD == 3) { // Parent is a (3,1) node, all symmetrical cases to the above
 			   IAVLNode leftChild = parent.getLeft(); // Get the left child, which wasn't in the deletion route
-			   int[] leftRD = leftChild.getRankDifference();
-			   if (leftRD[0] == 1 && leftRD[1] == 1) { // Left child is a (1,1) node
+			   int leftLeftRD = leftRankDifference(leftChild);
+			   int leftRightRD = rightRankDifference(leftChild);
+			   if (leftLeftRD == 1 && leftRightRD == 1) { // Left child is a (1,1) node
 				   rotateRight(parent);
 				   demote(parent);
 				   promote(leftChild);
 				   numOfOps += 3;
 			   }
-			   else if (leftRD[0] == 2 && leftRD[1] == 1) { // Left child is a (2,1) node
+			   else if (leftLeftRD == 2 && leftRightRD == 1) { // Left child is a (2,1) node
 				   IAVLNode rightLeftChild = leftChild.getRight();
 				   rotateLeft(leftChild);
 				   rotateRight(parent);
+				   countDoubleRotation();
 				   promote(rightLeftChild);
 				   demote(node);
 				   demote(parent); demote(parent); // Double demote
 				   numOfOps += 6;
 			   }
-			   else if (leftRD[0] == 1 && leftRD[1] == 2) { // Left child is a (1,2) node
+			   else if (leftLeftRD == 1 && leftRightRD == 2) { // Left child is a (1,2) node
 				   rotateRight(parent);
 				   demote(parent); demote(parent); // Double demote
 				   numOfOps += 3;
@@ -523,17 +1131,18 @@ public class AVLTree {
    }
 
    private int rebalanceRoot() { // In special cases the root is not rebalanced. O(1)
-	   int[] rootRD = this.root.getRankDifference();
-	   if (!isLegalRD(rootRD)) { // Check if these operations are even necessary
-		   if (rootRD[0] == 2 && rootRD[1] == 2) { // Root is a (2,2) node
+	   int rootLeftRD = leftRankDifference(this.root);
+	   int rootRightRD = rightRankDifference(this.root);
+	   if (!isLegalRD(rootLeftRD, rootRightRD)) { // Check if these operations are even necessary
+		   if (rootLeftRD == 2 && rootRightRD == 2) { // Root is a (2,2) node
 			   demote(root);
 			   return 1;
 		   }
-		   else if (rootRD[0] == 1 && rootRD[1] == 3) { // Root is a (3,1) node. 3 cases.
+		   else if (rootLeftRD == 1 && rootRightRD == 3) { // Root is a (3,1) node. 3 cases.
 			   IAVLNode left = root.getLeft();
 			   return rebalanceDelete(left); // Calls for rebalanceDelete on left node to ensure rebalancing. Two iterations TOTAL
 		   }
-		   else if (rootRD[0] == 3 && rootRD[1] == 1) { // Symmetrical cases
+		   else if (rootLeftRD == 3 && rootRightRD == 1) { // Symmetrical cases
 			   IAVLNode right = root.getRight();
 			   return rebalanceDelete(right); // Same here, two iterations TOTAL.
 		   }
@@ -542,99 +1151,1087 @@ public class AVLTree {
    }
 
    /**
-    * public String min()
+    * public int insertAll(int[] keys, String[] infos)
     *
-    * Returns the info of the item with the smallest key in the tree,
-    * or null if the tree is empty.
+    * Inserts infos[j] with key keys[j] for every j whose key is not in the tree yet, keeping the existing info otherwise.
+    * Each sub-tree is rebuilt by joining its rebuilt children through its root, so only the parts the batch reaches are touched.
+    * Returns the total number of re-balancing operations of those joins, counted as in insert.
+    *
+    * precondition: keys is strictly increasing and as long as infos, else IllegalArgumentException.
     */
-   public String min() // O(1)
+   public int insertAll(int[] keys, String[] infos) // O(mlog(n/m + 1)) for m keys
    {
-	   return !empty() ? this.root.getMin().getValue() : null; // Returns min key node's info or null if tree is empty. O(1)
+	   if (keys.length != infos.length) {
+		   throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+	   }
+	   requireStrictlyIncreasing(keys);
+	   int[] cost = new int[]{0}; // This array will serve as a counter through the recursion.
+	   this.root = insertAllRec(this.root, keys, infos, 0, keys.length - 1, cost);
+	   if (this.root != null && this.root.isRealNode()) {
+		   this.root.setParent(null);
+	   }
+	   updateTreeFields();
+	   return cost[0];
+   }
+
+   private IAVLNode insertAllRec(IAVLNode node, int[] keys, String[] infos, int lo, int hi, int[] cost) { // Returns the detached root of node's sub-tree with keys[lo..hi] added. O(mlog(n/m + 1))
+	   if (lo > hi) { // Nothing to add here
+		   return node;
+	   }
+	   if (node == null || !node.isRealNode()) { // Nothing to merge with
+		   return buildSorted(keys, infos, lo, hi);
+	   }
+	   int mid = firstAtLeast(keys, lo, hi, node.getKey());
+	   boolean present = mid <= hi && keys[mid] == node.getKey();
+	   IAVLNode left = detach(node.getLeft());
+	   IAVLNode right = detach(node.getRight());
+	   left = insertAllRec(left, keys, infos, lo, mid - 1, cost);
+	   right = insertAllRec(right, keys, infos, present ? mid + 1 : mid, hi, cost);
+	   return joinNodes(left, node, right, cost);
    }
 
    /**
-    * public String max()
+    * public int deleteAll(int[] keys)
     *
-    * Returns the info of the item with the largest key in the tree,
+    * Deletes the items with keys in keys, skipping keys that are not in the tree.
+    * Each sub-tree is rebuilt by joining its rebuilt children, through its root unless that is deleted too,
+    * so only the parts the batch reaches are touched.
+    * Returns the total number of re-balancing operations of those joins, counted as in insert.
+    *
+    * precondition: keys is strictly increasing, else IllegalArgumentException.
+    */
+   public int deleteAll(int[] keys) // O(mlog(n/m + 1)) for m keys
+   {
+	   requireStrictlyIncreasing(keys);
+	   int[] cost = new int[]{0}; // This array will serve as a counter through the recursion.
+	   this.root = deleteAllRec(this.root, keys, 0, keys.length - 1, cost);
+	   if (this.root != null && this.root.isRealNode()) {
+		   this.root.setParent(null);
+	   }
+	   updateTreeFields();
+	   return cost[0];
+   }
+
+   private IAVLNode deleteAllRec(IAVLNode node, int[] keys, int lo, int hi, int[] cost) { // Returns the detached root of node's sub-tree without keys[lo..hi]. O(mlog(n/m + 1))
+	   if (lo > hi || node == null || !node.isRealNode()) { // Nothing to remove here
+		   return node;
+	   }
+	   int mid = firstAtLeast(keys, lo, hi, node.getKey());
+	   boolean present = mid <= hi && keys[mid] == node.getKey();
+	   IAVLNode left = detach(node.getLeft());
+	   IAVLNode right = detach(node.getRight());
+	   left = deleteAllRec(left, keys, lo, mid - 1, cost);
+	   right = deleteAllRec(right, keys, present ? mid + 1 : mid, hi, cost);
+	   return present ? join2(left, right, cost) : joinNodes(left, node, right, cost);
+   }
+
+   /**
+    * public void union(AVLTree t)
+    *
+    * Makes this tree hold the items of both trees. Where both have a key, this tree's info is kept.
+    * t's nodes move into this tree, and t is left empty.
+    */
+   public void union(AVLTree t) // O(mlog(n/m + 1)) for sizes m <= n
+   {
+	   combine(UNION, t, null);
+   }
+
+   /**
+    * public void union(AVLTree t, ForkJoinPool pool)
+    *
+    * Same as union(t), running the two sides of large sub-trees in parallel on pool.
+    */
+   public void union(AVLTree t, ForkJoinPool pool) // O(mlog(n/m + 1)) work, O(log^2 n) span
+   {
+	   combine(UNION, t, pool);
+   }
+
+   /**
+    * public void intersect(AVLTree t)
+    *
+    * Keeps only the items of this tree whose key is also in t, with this tree's info.
+    * t is left empty.
+    */
+   public void intersect(AVLTree t) // O(mlog(n/m + 1)) for sizes m <= n
+   {
+	   combine(INTERSECT, t, null);
+   }
+
+   /**
+    * public void intersect(AVLTree t, ForkJoinPool pool)
+    *
+    * Same as intersect(t), running the two sides of large sub-trees in parallel on pool.
+    */
+   public void intersect(AVLTree t, ForkJoinPool pool) // O(mlog(n/m + 1)) work, O(log^2 n) span
+   {
+	   combine(INTERSECT, t, pool);
+   }
+
+   /**
+    * public void difference(AVLTree t)
+    *
+    * Removes the items whose key is in t from this tree.
+    * t is left empty.
+    */
+   public void difference(AVLTree t) // O(mlog(n/m + 1)) for sizes m <= n
+   {
+	   combine(DIFFERENCE, t, null);
+   }
+
+   /**
+    * public void difference(AVLTree t, ForkJoinPool pool)
+    *
+    * Same as difference(t), running the two sides of large sub-trees in parallel on pool.
+    */
+   public void difference(AVLTree t, ForkJoinPool pool) // O(mlog(n/m + 1)) work, O(log^2 n) span
+   {
+	   combine(DIFFERENCE, t, pool);
+   }
+
+   private void combine(int op, AVLTree t, ForkJoinPool pool) { // O(mlog(n/m + 1))
+	   if (t == this) { // A set combined with itself
+		   if (op == DIFFERENCE) {
+			   this.root = null;
+			   updateTreeFields();
+		   }
+		   return;
+	   }
+	   if (t != null) {
+		   shareAggregator(t); // t's nodes are split, and some kept, by this tree's updates
+		   shareRankRules(t);
+	   }
+	   IAVLNode a = empty() ? EXT : this.root;
+	   IAVLNode b = t == null || t.empty() ? EXT : t.root;
+	   if (pool == null) {
+		   this.root = combineRec(op, a, b, false, new int[]{0});
+	   }
+	   else {
+		   this.root = pool.invoke(ForkJoinTask.adapt(() -> combineRec(op, a, b, true, new int[]{0})));
+	   }
+	   if (this.root.isRealNode()) {
+		   this.root.setParent(null);
+	   }
+	   updateTreeFields();
+	   if (t != null) {
+		   t.root = null;
+		   t.updateTreeFields();
+	   }
+   }
+
+   private IAVLNode combineRec(int op, IAVLNode a, IAVLNode b, boolean parallel, int[] cost) { // Splits b at a's root, combines the sides and joins them back, through a's root if it stays. O(mlog(n/m + 1))
+	   if (!a.isRealNode()) {
+		   return op == UNION ? b : a;
+	   }
+	   if (!b.isRealNode()) {
+		   return op == INTERSECT ? b : a;
+	   }
+	   boolean fork = parallel && a.getSize() + b.getSize() > PARALLEL_THRESHOLD;
+	   IAVLNode[] parts = splitAt(b, a.getKey(), cost);
+	   IAVLNode aLeft = detach(a.getLeft());
+	   IAVLNode aRight = detach(a.getRight());
+	   IAVLNode left;
+	   IAVLNode right;
+	   if (fork) { // The forked side gets its own tree, since rotations track the root through this.root
+		   ForkJoinTask<IAVLNode> leftTask = ForkJoinTask.adapt(() -> forkHelper().combineRec(op, aLeft, parts[0], true, new int[]{0})).fork();
+		   right = combineRec(op, aRight, parts[2], true, cost);
+		   left = leftTask.join();
+	   }
+	   else {
+		   left = combineRec(op, aLeft, parts[0], parallel, cost);
+		   right = combineRec(op, aRight, parts[2], parallel, cost);
+	   }
+	   boolean keep = op == UNION || (op == INTERSECT) == (parts[1] != null);
+	   return keep ? joinNodes(left, a, right, cost) : join2(left, right, cost);
+   }
+
+   private AVLTree forkHelper() { // An empty tree for a forked task to borrow the root of, counting into the same metrics. O(1)
+	   AVLTree tree = new AVLTree(compact, rankBalanced);
+	   tree.metrics = this.metrics;
+	   tree.aggregator = this.aggregator;
+	   return tree;
+   }
+
+   private IAVLNode[] splitAt(IAVLNode node, int k, int[] cost) { // Returns {the detached sub-tree of keys < k, the node with key k or null, the detached sub-tree of keys > k}. O(logn)
+	   if (!node.isRealNode()) {
+		   return new IAVLNode[]{node, null, node};
+	   }
+	   IAVLNode left = detach(node.getLeft());
+	   IAVLNode right = detach(node.getRight());
+	   if (k == node.getKey()) {
+		   return new IAVLNode[]{left, node, right};
+	   }
+	   if (k < node.getKey()) {
+		   IAVLNode[] parts = splitAt(left, k, cost);
+		   parts[2] = joinNodes(parts[2], node, right, cost);
+		   return parts;
+	   }
+	   IAVLNode[] parts = splitAt(right, k, cost);
+	   parts[0] = joinNodes(left, node, parts[0], cost);
+	   return parts;
+   }
+
+   private IAVLNode join2(IAVLNode left, IAVLNode right, int[] cost) { // Joins two detached sub-trees with no node between them, through the largest key on the left. O(logn)
+	   if (!left.isRealNode()) {
+		   return right;
+	   }
+	   IAVLNode[] split = splitLast(left, cost);
+	   return joinNodes(split[0], split[1], right, cost);
+   }
+
+   private IAVLNode[] splitLast(IAVLNode node, int[] cost) { // Returns {the detached sub-tree without its max, the max node}. O(logn)
+	   if (!node.getRight().isRealNode()) {
+		   return new IAVLNode[]{detach(node.getLeft()), node};
+	   }
+	   IAVLNode left = detach(node.getLeft());
+	   IAVLNode[] split = splitLast(detach(node.getRight()), cost);
+	   split[0] = joinNodes(left, node, split[0], cost);
+	   return split;
+   }
+
+   static void requireStrictlyIncreasing(int[] keys) { // O(n)
+	   for (int j = 1; j < keys.length; j++) {
+		   if (keys[j - 1] >= keys[j]) {
+			   throw new IllegalArgumentException("Keys are not strictly increasing at index " + j);
+		   }
+	   }
+   }
+
+   private static int firstAtLeast(int[] keys, int lo, int hi, int k) { // Index of the first of keys[lo..hi] that is >= k, or hi + 1. O(log(hi - lo))
+	   while (lo <= hi) {
+		   int mid = (lo + hi) >>> 1;
+		   if (keys[mid] < k) {
+			   lo = mid + 1;
+		   }
+		   else {
+			   hi = mid - 1;
+		   }
+	   }
+	   return lo;
+   }
+
+   private IAVLNode detach(IAVLNode node) { // Cuts node from its parent and returns it as a root. O(1)
+	   if (node.isRealNode()) {
+		   node.setParent(null);
+	   }
+	   return node;
+   }
+
+   private IAVLNode joinNodes(IAVLNode small, IAVLNode x, IAVLNode big, int[] cost) { // Joins two detached sub-trees through x, returns the new root. O(|rank(small) - rank(big)| + 1)
+	   x.setParent(null);
+	   IAVLNode top;
+	   if (small.getHeight() > big.getHeight() + 1) { // Walk down small's right spine to big's rank
+		   IAVLNode parent = null;
+		   IAVLNode joinPoint = small;
+		   while (joinPoint.getHeight() > big.getHeight() + 1) { // May end on an external leaf, whose parent is not kept, so it is tracked here
+			   parent = joinPoint;
+			   joinPoint = joinPoint.getRight();
+		   }
+		   hang(x, joinPoint, big);
+		   x.setParent(parent);
+		   parent.setRight(x);
+		   top = small;
+	   }
+	   else if (big.getHeight() > small.getHeight() + 1) { // Symmetrical: walk down big's left spine
+		   IAVLNode parent = null;
+		   IAVLNode joinPoint = big;
+		   while (joinPoint.getHeight() > small.getHeight() + 1) {
+			   parent = joinPoint;
+			   joinPoint = joinPoint.getLeft();
+		   }
+		   hang(x, small, joinPoint);
+		   x.setParent(parent);
+		   parent.setLeft(x);
+		   top = big;
+	   }
+	   else { // Ranks are close enough for x to be the root
+		   hang(x, small, big);
+		   updateFields(x);
+		   return x;
+	   }
+	   IAVLNode savedRoot = this.root; // The rotations track the root through this.root, borrow it for the duration of the join
+	   this.root = top;
+	   cost[0] += rebalanceInsert(x);
+	   top = this.root;
+	   this.root = savedRoot;
+	   return top;
+   }
+
+   private void hang(IAVLNode x, IAVLNode left, IAVLNode right) { // Makes left and right x's children, and gives x the rank above theirs. O(1)
+	   x.setLeft(left);
+	   x.setRight(right);
+	   x.setHeight(Math.max(left.getHeight(), right.getHeight()) + 1); // Whatever rank x had elsewhere, even a legal one, is not its rank here
+	   if (left.isRealNode()) {
+		   left.setParent(x);
+	   }
+	   if (right.isRealNode()) {
+		   right.setParent(x);
+	   }
+   }
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the tree,
     * or null if the tree is empty.
     */
-   public String max() // O(1)
+   public String min() // O(1)
+   {
+	   return !empty() ? this.min.getValue() : null; // Returns min key node's info or null if tree is empty. O(1)
+   }
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the tree,
+    * or null if the tree is empty.
+    */
+   public String max() // O(1)
+   {
+	   return !empty() ? this.max.getValue() : null; // Returns max key node's info or null if tree is empty. O(1)
+   }
+
+   IAVLNode minNode() // The node with the smallest key, or null if the tree is empty. O(1)
+   {
+	   return !empty() ? this.min : null;
+   }
+
+   IAVLNode maxNode() // The node with the largest key, or null if the tree is empty. O(1)
+   {
+	   return !empty() ? this.max : null;
+   }
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the tree,
+   * or an empty array if the tree is empty.
+   */
+  public int[] keysToArray() // This one is O(1), but it calls for a recursive function of O(n) and therefore O(n) total.
+  {
+	  if (empty()) { // If tree is empty - return an empty array just like they wanted
+		  return new int[]{};
+	  }
+	  int[] arrayOfKeys = new int[this.root.getSize()]; // Initializing array
+	  int[] index = new int[]{0}; // This array will serve as index.
+	  return keysToArrayRec(this.root, arrayOfKeys, index); // Calls for a recursive function
+  }
+
+  private int[] keysToArrayRec(IAVLNode node, int[] array, int[] index) { // Travels in order and adds to the array. O(n)
+	  if (node.isRealNode()) {
+		  keysToArrayRec(node.getLeft(), array, index);
+		  array[index[0]++] = node.getKey();
+		  keysToArrayRec(node.getRight(), array, index);
+	  }
+	  return array;
+  }
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the tree,
+   * sorted by their respective keys,
+   * or an empty array if the tree is empty.
+   */
+  public String[] infoToArray() // Same as keysToArray - O(n)
+  {
+	  if (empty()) { // If tree is empty - return an empty array just like they wanted
+		  return new String[]{};
+	  }
+	  String[] arrayOfInfo = new String[this.root.getSize()]; // Initializing array
+	  int[] index = new int[]{0}; // This array will serve as index.
+	  return infoToArrayRec(this.root, arrayOfInfo, index); // Calls for a recursive function
+  }
+
+  private String[] infoToArrayRec(IAVLNode node, String[] array, int[] index) { // Travels in order and adds to the array. O(n)
+	  if (node.isRealNode()) {
+		  infoToArrayRec(node.getLeft(), array, index);
+		  array[index[0]++] = node.getValue();
+		  infoToArrayRec(node.getRight(), array, index);
+	  }
+	  return array;
+  }
+
+  /**
+   * public int[] keysToArray(ForkJoinPool pool)
+   *
+   * Same as keysToArray(), filling the array in parallel on pool.
+   * Each sub-tree writes its keys from its own offset, known from the sizes to its left.
+   */
+  public int[] keysToArray(ForkJoinPool pool) // O(n) work, O(logn) span
+  {
+	  if (pool == null || size() < PARALLEL_THRESHOLD) {
+		  return keysToArray();
+	  }
+	  int[] array = new int[size()];
+	  pool.invoke(ForkJoinTask.adapt(() -> keysToArrayParallel(this.root, array, 0)));
+	  return array;
+  }
+
+  private void keysToArrayParallel(IAVLNode node, int[] array, int offset) { // Writes node's sub-tree in order from offset. O(n)
+	  if (node.getSize() < PARALLEL_THRESHOLD) {
+		  keysToArrayRec(node, array, new int[]{offset});
+		  return;
+	  }
+	  int index = offset + node.getLeft().getSize(); // node's own place, after its left sub-tree
+	  ForkJoinTask<?> leftTask = ForkJoinTask.adapt(() -> keysToArrayParallel(node.getLeft(), array, offset)).fork();
+	  array[index] = node.getKey();
+	  keysToArrayParallel(node.getRight(), array, index + 1);
+	  leftTask.join();
+  }
+
+  /**
+   * public String[] infoToArray(ForkJoinPool pool)
+   *
+   * Same as infoToArray(), filling the array in parallel on pool.
+   */
+  public String[] infoToArray(ForkJoinPool pool) // O(n) work, O(logn) span
+  {
+	  if (pool == null || size() < PARALLEL_THRESHOLD) {
+		  return infoToArray();
+	  }
+	  String[] array = new String[size()];
+	  pool.invoke(ForkJoinTask.adapt(() -> infoToArrayParallel(this.root, array, 0)));
+	  return array;
+  }
+
+  private void infoToArrayParallel(IAVLNode node, String[] array, int offset) { // Writes node's sub-tree in order from offset. O(n)
+	  if (node.getSize() < PARALLEL_THRESHOLD) {
+		  infoToArrayRec(node, array, new int[]{offset});
+		  return;
+	  }
+	  int index = offset + node.getLeft().getSize();
+	  ForkJoinTask<?> leftTask = ForkJoinTask.adapt(() -> infoToArrayParallel(node.getLeft(), array, offset)).fork();
+	  array[index] = node.getValue();
+	  infoToArrayParallel(node.getRight(), array, index + 1);
+	  leftTask.join();
+  }
+
+  /**
+   * public FrozenAVLTree freeze()
+   *
+   * Returns an immutable snapshot of the tree's items, laid out in a flat array for searches without pointer chasing.
+   * This tree is not modified, and later updates to it do not show in the snapshot.
+   */
+  public FrozenAVLTree freeze() // O(n)
+  {
+	  return new FrozenAVLTree(keysToArray(), infoToArray());
+  }
+
+   /**
+    * public AVLTree filter(ItemPredicate p)
+    *
+    * Returns a new tree, with the same node layout, holding the items of this tree for which p.test(key, info) is true.
+    * This tree is not modified.
+    */
+   public AVLTree filter(ItemPredicate p) // O(n)
+   {
+	   return filter(p, null);
+   }
+
+   /**
+    * public AVLTree filter(ItemPredicate p, ForkJoinPool pool)
+    *
+    * Same as filter(p), filtering the two sides of every large enough sub-tree in parallel on pool
+    * and joining the kept parts back. p is then called from several threads at once.
+    */
+   public AVLTree filter(ItemPredicate p, ForkJoinPool pool) // O(n) work, O(log^2 n) span
+   {
+	   AVLTree tree = new AVLTree(compact, rankBalanced);
+	   tree.aggregator = this.aggregator;
+	   if (!empty()) {
+		   IAVLNode root = pool == null ? tree.filterRec(this.root, p, false)
+				   : pool.invoke(ForkJoinTask.adapt(() -> tree.filterRec(this.root, p, true)));
+		   tree.root = root.isRealNode() ? root : null;
+	   }
+	   tree.updateTreeFields();
+	   return tree;
+   }
+
+   private IAVLNode filterRec(IAVLNode node, ItemPredicate p, boolean parallel) { // Returns a detached copy of node's kept items, built in this tree's layout. O(n)
+	   if (!node.isRealNode()) {
+		   return EXT;
+	   }
+	   IAVLNode left;
+	   IAVLNode right;
+	   if (parallel && node.getSize() >= PARALLEL_THRESHOLD) { // The forked side gets its own tree, since joins borrow this.root
+		   ForkJoinTask<IAVLNode> leftTask = ForkJoinTask.adapt(() -> forkHelper().filterRec(node.getLeft(), p, true)).fork();
+		   right = filterRec(node.getRight(), p, true);
+		   left = leftTask.join();
+	   }
+	   else {
+		   left = filterRec(node.getLeft(), p, false);
+		   right = filterRec(node.getRight(), p, false);
+	   }
+	   int[] cost = new int[]{0};
+	   if (p.test(node.getKey(), node.getValue())) {
+		   return joinNodes(left, createNode(node.getKey(), node.getValue()), right, cost);
+	   }
+	   return join2(left, right, cost);
+   }
+
+   /**
+    * public AVLTree mapValues(ItemFunction f)
+    *
+    * Returns a new tree, with the same keys, shape and node layout as this one, whose infos are f.apply(key, info).
+    * This tree is not modified.
+    */
+   public AVLTree mapValues(ItemFunction f) // O(n)
+   {
+	   return mapValues(f, null);
+   }
+
+   /**
+    * public AVLTree mapValues(ItemFunction f, ForkJoinPool pool)
+    *
+    * Same as mapValues(f), copying the two sides of every large enough sub-tree in parallel on pool.
+    * f is then called from several threads at once.
+    */
+   public AVLTree mapValues(ItemFunction f, ForkJoinPool pool) // O(n) work, O(logn) span
+   {
+	   AVLTree tree = new AVLTree(compact, rankBalanced);
+	   tree.aggregator = this.aggregator;
+	   if (!empty()) {
+		   tree.root = pool == null ? tree.mapValuesRec(this.root, f, false)
+				   : pool.invoke(ForkJoinTask.adapt(() -> tree.mapValuesRec(this.root, f, true)));
+		   tree.root.setParent(null);
+	   }
+	   tree.updateTreeFields();
+	   return tree;
+   }
+
+   private IAVLNode mapValuesRec(IAVLNode node, ItemFunction f, boolean parallel) { // Returns a detached copy of node's sub-tree with mapped infos. Only reads this tree's EXT and compact flag. O(n)
+	   if (!node.isRealNode()) {
+		   return EXT;
+	   }
+	   IAVLNode copy = createNode(node.getKey(), f.apply(node.getKey(), node.getValue()));
+	   if (parallel && node.getSize() >= PARALLEL_THRESHOLD) {
+		   ForkJoinTask<IAVLNode> leftTask = ForkJoinTask.adapt(() -> mapValuesRec(node.getLeft(), f, true)).fork();
+		   IAVLNode right = mapValuesRec(node.getRight(), f, true);
+		   hang(copy, leftTask.join(), right);
+	   }
+	   else {
+		   hang(copy, mapValuesRec(node.getLeft(), f, false), mapValuesRec(node.getRight(), f, false));
+	   }
+	   copy.setHeight(node.getHeight()); // Same shape, same ranks, which a rank-balanced tree's shape may need
+	   updateFields(copy);
+	   return copy;
+   }
+
+   /**
+    * public int size()
+    *
+    * Returns the number of nodes in the tree.
+    */
+   public int size() // O(1)
+   {
+       if (empty()) {
+           return 0;
+       }
+	   return this.root.getSize(); // Returns num of nodes in tree. O(1)
+   }
+   
+   /**
+    * public int getRoot()
+    *
+    * Returns the root AVL node, or null if the tree is empty
+    */
+   public IAVLNode getRoot() // O(1)
+   {
+	   return this.root; // Returns the root of the tree. O(1)
+   }
+
+   /**
+    * public IAVLNode select(int i)
+    *
+    * Returns the node with the i-th smallest key, counting from 0 like keysToArray()[i],
+    * or null if i is not between 0 and size() - 1.
+    */
+   public IAVLNode select(int i) // O(logn)
+   {
+	   if (i < 0 || i >= size()) {
+		   return null;
+	   }
+	   IAVLNode node = this.root;
+	   while (true) {
+		   int leftSize = node.getLeft().getSize();
+		   if (i == leftSize) {
+			   return node;
+		   }
+		   if (i < leftSize) {
+			   node = node.getLeft();
+		   }
+		   else { // Skip the left sub-tree and node itself
+			   i -= leftSize + 1;
+			   node = node.getRight();
+		   }
+	   }
+   }
+
+   /**
+    * public int rank(int k)
+    *
+    * Returns the number of keys in the tree smaller than k. k does not have to be in the tree.
+    */
+   public int rank(int k) // O(logn)
+   {
+	   int smaller = 0;
+	   IAVLNode node = this.root;
+	   while (node != null && node.isRealNode()) {
+		   if (k <= node.getKey()) {
+			   node = node.getLeft();
+		   }
+		   else { // node and its left sub-tree are all smaller than k
+			   smaller += node.getLeft().getSize() + 1;
+			   node = node.getRight();
+		   }
+	   }
+	   return smaller;
+   }
+
+   /**
+    * public int countRange(int lo, int hi)
+    *
+    * Returns the number of keys k in the tree with lo <= k <= hi, or 0 if lo > hi.
+    */
+   public int countRange(int lo, int hi) // O(logn)
+   {
+	   if (lo > hi) {
+		   return 0;
+	   }
+	   int upTo = hi == Integer.MAX_VALUE ? size() : rank(hi + 1); // Keys <= hi
+	   return upTo - rank(lo);
+   }
+
+   /**
+    * public <A> A aggregate()
+    *
+    * Returns the aggregator's value over all items, or its identity if the tree is empty.
+    *
+    * precondition: setAggregator was called, else IllegalStateException. A is the aggregator's value type.
+    */
+   @SuppressWarnings("unchecked")
+   public <A> A aggregate() // O(1)
+   {
+	   if (aggregator == null) {
+		   throw new IllegalStateException("No aggregator was set");
+	   }
+	   return (A) (empty() ? aggregator.identity() : aggregateOf(this.root));
+   }
+
+   /**
+    * public <A> A aggregate(int lo, int hi)
+    *
+    * Returns the aggregator's value over the items with lo <= key <= hi, combined in key order,
+    * or its identity if there are none. It combines the kept values of O(logn) sub-trees, and visits no item otherwise.
+    *
+    * precondition: setAggregator was called, else IllegalStateException. A is the aggregator's value type.
+    */
+   @SuppressWarnings("unchecked")
+   public <A> A aggregate(int lo, int hi) // O(logn)
+   {
+	   if (aggregator == null) {
+		   throw new IllegalStateException("No aggregator was set");
+	   }
+	   IAVLNode node = this.root;
+	   while (node != null && node.isRealNode()) { // Find the highest node in [lo, hi], where the range splits
+		   if (node.getKey() < lo) {
+			   node = node.getRight();
+		   }
+		   else if (node.getKey() > hi) {
+			   node = node.getLeft();
+		   }
+		   else {
+			   Object left = aggregateFrom(node.getLeft(), lo);
+			   Object right = aggregateTo(node.getRight(), hi);
+			   return (A) aggregator.combine(aggregator.combine(left, aggregator.of(node.getKey(), node.getValue())), right);
+		   }
+	   }
+	   return (A) aggregator.identity();
+   }
+
+   private Object aggregateFrom(IAVLNode node, int lo) { // The value over the keys >= lo under node: whole right sub-trees along the way down. O(logn)
+	   if (!node.isRealNode()) {
+		   return aggregator.identity();
+	   }
+	   if (node.getKey() < lo) {
+		   return aggregateFrom(node.getRight(), lo);
+	   }
+	   Object left = aggregateFrom(node.getLeft(), lo);
+	   return aggregator.combine(aggregator.combine(left, aggregator.of(node.getKey(), node.getValue())), aggregateOf(node.getRight()));
+   }
+
+   private Object aggregateTo(IAVLNode node, int hi) { // The value over the keys <= hi under node: whole left sub-trees along the way down. O(logn)
+	   if (!node.isRealNode()) {
+		   return aggregator.identity();
+	   }
+	   if (node.getKey() > hi) {
+		   return aggregateTo(node.getLeft(), hi);
+	   }
+	   Object right = aggregateTo(node.getRight(), hi);
+	   return aggregator.combine(aggregator.combine(aggregateOf(node.getLeft()), aggregator.of(node.getKey(), node.getValue())), right);
+   }
+
+   /**
+    * public IAVLNode floor(int k)
+    *
+    * Returns the node with the largest key <= k, or null if there is none.
+    */
+   public IAVLNode floor(int k) // O(logn)
+   {
+	   return highestBelow(k, true);
+   }
+
+   /**
+    * public IAVLNode lower(int k)
+    *
+    * Returns the node with the largest key < k, or null if there is none.
+    */
+   public IAVLNode lower(int k) // O(logn)
+   {
+	   return highestBelow(k, false);
+   }
+
+   /**
+    * public IAVLNode ceiling(int k)
+    *
+    * Returns the node with the smallest key >= k, or null if there is none.
+    */
+   public IAVLNode ceiling(int k) // O(logn)
+   {
+	   return lowestAbove(k, true);
+   }
+
+   /**
+    * public IAVLNode higher(int k)
+    *
+    * Returns the node with the smallest key > k, or null if there is none.
+    */
+   public IAVLNode higher(int k) // O(logn)
+   {
+	   return lowestAbove(k, false);
+   }
+
+   private IAVLNode highestBelow(int k, boolean inclusive) { // O(logn)
+	   IAVLNode best = null;
+	   IAVLNode node = this.root;
+	   while (node != null && node.isRealNode()) {
+		   if (node.getKey() < k || (inclusive && node.getKey() == k)) { // A candidate, look for a larger one on the right
+			   best = node;
+			   node = node.getRight();
+		   }
+		   else {
+			   node = node.getLeft();
+		   }
+	   }
+	   return best;
+   }
+
+   private IAVLNode lowestAbove(int k, boolean inclusive) { // O(logn)
+	   IAVLNode best = null;
+	   IAVLNode node = this.root;
+	   while (node != null && node.isRealNode()) {
+		   if (node.getKey() > k || (inclusive && node.getKey() == k)) { // A candidate, look for a smaller one on the left
+			   best = node;
+			   node = node.getLeft();
+		   }
+		   else {
+			   node = node.getRight();
+		   }
+	   }
+	   return best;
+   }
+
+   /**
+    * public Iterator<IAVLNode> range(int lo, int hi)
+    *
+    * Returns an iterator over the nodes with lo <= key <= hi, in increasing key order.
+    * It seeks the first node in O(logn) and then follows successors through parent pointers,
+    * in O(1) amortized per node and O(1) extra memory. The tree must not be modified while it is in use.
+    */
+   public Iterator<IAVLNode> range(int lo, int hi) // O(logn)
+   {
+	   IAVLNode first = lo <= hi ? ceiling(lo) : null;
+	   return new Iterator<IAVLNode>() {
+		   private IAVLNode next = first != null && first.getKey() <= hi ? first : null;
+
+		   public boolean hasNext() {
+			   return next != null;
+		   }
+
+		   public IAVLNode next() { // O(1) amortized
+			   if (next == null) {
+				   throw new NoSuchElementException();
+			   }
+			   IAVLNode node = next;
+			   IAVLNode after = successor(node);
+			   next = after != null && after.getKey() <= hi ? after : null;
+			   return node;
+		   }
+	   };
+   }
+
+   private IAVLNode successor(IAVLNode node) { // Returns the node with the next key, or null if node has the largest. O(1) amortized over a walk
+	   if (node.getRight().isRealNode()) {
+		   node = node.getRight();
+		   while (node.getLeft().isRealNode()) {
+			   node = node.getLeft();
+		   }
+		   return node;
+	   }
+	   IAVLNode parent = node.getParent();
+	   while (parent != null && parent.getRight() == node) { // Climb while coming from the right
+		   node = parent;
+		   parent = node.getParent();
+	   }
+	   return parent;
+   }
+
+   /**
+    * public Stream<IAVLNode> stream()
+    *
+    * Returns a sequential stream of the nodes in increasing key order, reported as SIZED, SUBSIZED, SORTED, DISTINCT and ORDERED.
+    * The tree must not be modified while it is in use.
+    */
+   public Stream<IAVLNode> stream() // O(1)
+   {
+	   return StreamSupport.stream(new NodeSpliterator(0, size(), null), false);
+   }
+
+   /**
+    * public Stream<IAVLNode> parallelStream()
+    *
+    * Same as stream(), as a parallel stream. It splits by rank ranges, which the sub-tree sizes make exact,
+    * so each half seeks its first node in O(logn) and nothing is copied up front.
+    */
+   public Stream<IAVLNode> parallelStream() // O(1)
    {
-	   return !empty() ? this.root.getMax().getValue() : null; // Returns max key node's info or null if tree is empty. O(1)
+	   return StreamSupport.stream(new NodeSpliterator(0, size(), null), true);
    }
 
-  /**
-   * public int[] keysToArray()
-   *
-   * Returns a sorted array which contains all keys in the tree,
-   * or an empty array if the tree is empty.
-   */
-  public int[] keysToArray() // This one is O(1), but it calls for a recursive function of O(n) and therefore O(n) total.
-  {
-	  if (empty()) { // If tree is empty - return an empty array just like they wanted
-		  return new int[]{};
-	  }
-	  int[] arrayOfKeys = new int[this.root.getSize()]; // Initializing array
-	  int[] index = new int[]{0}; // This array will serve as index.
-	  return keysToArrayRec(this.root, arrayOfKeys, index); // Calls for a recursive function
-  }
+   /**
+    * private class NodeSpliterator
+    *
+    * Covers the nodes of ranks lo..hi-1. The node of rank lo is found with select on the first advance
+    * (unless the split that made this spliterator already had it), the rest by successor.
+    */
+   private class NodeSpliterator implements Spliterator<IAVLNode> {
+	   private int lo;
+	   private final int hi;
+	   private IAVLNode next; // The node of rank lo, or null if not found yet
+
+	   NodeSpliterator(int lo, int hi, IAVLNode next) {
+		   this.lo = lo;
+		   this.hi = hi;
+		   this.next = next;
+	   }
 
-  private int[] keysToArrayRec(IAVLNode node, int[] array, int[] index) { // Travels in order and adds to the array. O(n)
-	  if (node.isRealNode()) {
-		  keysToArrayRec(node.getLeft(), array, index);
-		  array[index[0]++] = node.getKey();
-		  keysToArrayRec(node.getRight(), array, index);
-	  }
-	  return array;
-  }
+	   public boolean tryAdvance(Consumer<? super IAVLNode> action) { // O(1) amortized, O(logn) the first time
+		   if (lo >= hi) {
+			   return false;
+		   }
+		   IAVLNode node = next != null ? next : select(lo);
+		   lo++;
+		   next = lo < hi ? successor(node) : null;
+		   action.accept(node);
+		   return true;
+	   }
 
-  /**
-   * public String[] infoToArray()
-   *
-   * Returns an array which contains all info in the tree,
-   * sorted by their respective keys,
-   * or an empty array if the tree is empty.
-   */
-  public String[] infoToArray() // Same as keysToArray - O(n)
-  {
-	  if (empty()) { // If tree is empty - return an empty array just like they wanted
-		  return new String[]{};
-	  }
-	  String[] arrayOfInfo = new String[this.root.getSize()]; // Initializing array
-	  int[] index = new int[]{0}; // This array will serve as index.
-	  return infoToArrayRec(this.root, arrayOfInfo, index); // Calls for a recursive function
-  }
+	   public void forEachRemaining(Consumer<? super IAVLNode> action) { // O(logn + remaining)
+		   if (lo >= hi) {
+			   return;
+		   }
+		   IAVLNode node = next != null ? next : select(lo);
+		   int remaining = hi - lo;
+		   lo = hi;
+		   next = null;
+		   for (int j = 0; j < remaining; j++) {
+			   action.accept(node);
+			   if (j + 1 < remaining) {
+				   node = successor(node);
+			   }
+		   }
+	   }
 
-  private String[] infoToArrayRec(IAVLNode node, String[] array, int[] index) { // Travels in order and adds to the array. O(n)
-	  if (node.isRealNode()) {
-		  infoToArrayRec(node.getLeft(), array, index);
-		  array[index[0]++] = node.getValue();
-		  infoToArrayRec(node.getRight(), array, index);
-	  }
-	  return array;
-  }
+	   public Spliterator<IAVLNode> trySplit() { // Hands off the lower half of the ranks, keeping the upper one. O(1)
+		   int mid = (lo + hi) >>> 1;
+		   if (mid <= lo) {
+			   return null;
+		   }
+		   Spliterator<IAVLNode> prefix = new NodeSpliterator(lo, mid, next);
+		   lo = mid;
+		   next = null;
+		   return prefix;
+	   }
+
+	   public long estimateSize() { // Exact. O(1)
+		   return hi - lo;
+	   }
+
+	   public int characteristics() {
+		   return SIZED | SUBSIZED | SORTED | DISTINCT | ORDERED | NONNULL;
+	   }
+
+	   public Comparator<? super IAVLNode> getComparator() {
+		   return BY_KEY;
+	   }
+   }
 
    /**
-    * public int size()
+    * public Finger finger()
     *
-    * Returns the number of nodes in the tree.
+    * Returns a finger on this tree, resting on the root. A finger searches, inserts and deletes starting from the node
+    * it rests on, and moves to the node each operation ends at, so that runs of nearby keys do not start from the root.
     */
-   public int size() // O(1)
+   public Finger finger() // O(1)
    {
-       if (empty()) {
-           return 0;
-       }
-	   return this.root.getSize(); // Returns num of nodes in tree. O(1)
+	   return new Finger();
    }
-   
+
    /**
-    * public int getRoot()
+    * public class Finger
     *
-    * Returns the root AVL node, or null if the tree is empty
+    * A position in the tree. Each operation climbs from the current node through parent pointers only until
+    * the sub-tree it reached must hold k, then descends: O(log d) for d keys away in the usual case, never worse than O(logn).
+    * Keys whose paths meet high up (say, either side of the root) still climb that far, since nodes keep no level links.
+    * Only search is O(log d) as a whole. insert and delete are O(logn), since every ancestor's size counts the change,
+    * walked through parent pointers without comparisons.
+    * A finger stays valid across other updates of the tree, but not across split or join.
     */
-   public IAVLNode getRoot() // O(1)
-   {
-	   return this.root; // Returns the root of the tree. O(1)
+   public class Finger {
+	   private IAVLNode node; // null until the tree has a node
+
+	   private Finger() {
+		   this.node = empty() ? null : root;
+	   }
+
+	   /**
+	    * public IAVLNode getNode()
+	    *
+	    * Returns the node the finger rests on, or null if the tree is empty.
+	    */
+	   public IAVLNode getNode() { // O(1)
+		   return start();
+	   }
+
+	   /**
+	    * public String search(int k)
+	    *
+	    * Same as AVLTree.search, from the finger. Moves the finger to the node with key k,
+	    * or to the last node the search visited if there is none.
+	    */
+	   public String search(int k) { // O(log d)
+		   IAVLNode from = start();
+		   if (from == null) {
+			   return null;
+		   }
+		   node = locate(from, k);
+		   return node.getKey() == k ? node.getValue() : null;
+	   }
+
+	   /**
+	    * public int insert(int k, String i)
+	    *
+	    * Same as AVLTree.insert, from the finger. Moves the finger to the node with key k.
+	    */
+	   public int insert(int k, String i) { // O(logn): O(log d) to find the place, then a size update in every ancestor
+		   IAVLNode from = start();
+		   if (from == null) {
+			   int numOfMoves = AVLTree.this.insert(k, i);
+			   node = root;
+			   return numOfMoves;
+		   }
+		   IAVLNode newParent = locate(from, k);
+		   if (newParent.getKey() == k) {
+			   node = newParent;
+			   return -1;
+		   }
+		   IAVLNode newNode = createNode(k, i);
+		   boolean ownNodes = true;
+		   for (IAVLNode ancestor = newParent.getParent(); ancestor != null; ancestor = ancestor.getParent()) { // newParent itself is updated as it takes newNode
+			   ownNodes &= addItem(ancestor, newNode);
+		   }
+		   node = newNode;
+		   return linkNewLeaf(newParent, newNode, ownNodes);
+	   }
+
+	   /**
+	    * public int delete(int k)
+	    *
+	    * Same as AVLTree.delete, from the finger. Moves the finger to the deleted key's successor,
+	    * or to its predecessor if it was the largest.
+	    */
+	   public int delete(int k) { // O(logn): O(log d) to find the node, then a size update in every ancestor and the rebalancing
+		   IAVLNode from = start();
+		   if (from == null) {
+			   return -1;
+		   }
+		   IAVLNode found = locate(from, k);
+		   if (found.getKey() != k) {
+			   node = found;
+			   return -1;
+		   }
+		   IAVLNode next = successor(found); // Node objects keep their items through a delete, so a neighbor stays a valid resting place
+		   node = next != null ? next : predecessor(found);
+		   return deleteNode(found);
+	   }
+
+	   private IAVLNode start() { // The node to start from: the finger's, unless it was deleted meanwhile. O(1)
+		   if (empty()) {
+			   return null;
+		   }
+		   if (node == null || (node != root && node.getParent() == null)) { // Detached by a delete that did not go through this finger
+			   node = root;
+		   }
+		   return node;
+	   }
+   }
+
+   private IAVLNode locate(IAVLNode from, int k) { // Returns the node with key k, or the last node on the way to where it would be, starting at from. O(log d)
+	   if (k > this.max.getKey()) { // Past either end, where climbing the outer spine would take O(logn)
+		   return this.max;
+	   }
+	   if (k < this.min.getKey()) {
+		   return this.min;
+	   }
+	   IAVLNode top = from;
+	   while (top.getParent() != null) { // Climb to the lowest ancestor whose sub-tree must hold k
+		   IAVLNode parent = top.getParent();
+		   if (k == top.getKey()) {
+			   break;
+		   }
+		   boolean fromLeft = parent.getLeft() == top;
+		   if (k > top.getKey() ? fromLeft && k < parent.getKey() : !fromLeft && k > parent.getKey()) { // k is between top and the bound parent sets on that side
+			   break;
+		   }
+		   top = parent;
+	   }
+	   IAVLNode node = top;
+	   while (true) {
+		   if (k == node.getKey()) {
+			   return node;
+		   }
+		   IAVLNode child = k < node.getKey() ? node.getLeft() : node.getRight();
+		   if (!child.isRealNode()) {
+			   return node;
+		   }
+		   node = child;
+	   }
+   }
+
+   private IAVLNode predecessor(IAVLNode node) { // Returns the node with the previous key, or null if node has the smallest. O(1) amortized over a walk
+	   if (node.getLeft().isRealNode()) {
+		   node = node.getLeft();
+		   while (node.getRight().isRealNode()) {
+			   node = node.getRight();
+		   }
+		   return node;
+	   }
+	   IAVLNode parent = node.getParent();
+	   while (parent != null && parent.getLeft() == node) { // Climb while coming from the left
+		   node = parent;
+		   parent = node.getParent();
+	   }
+	   return parent;
    }
 
    /**
@@ -648,31 +2245,40 @@ public class AVLTree {
     */   
    public AVLTree[] split(int x) // O(logn)
    {
+	   long start = metrics != null ? System.nanoTime() : 0;
+	   int cost = 0;
 	   IAVLNode xNode = generalSearch(x);
 	   if (xNode == null) { // x wasn't found. Shouldn't reach here, was made just to calm IntelliJ down :)
 		   return null;
 	   }
 	   IAVLNode parent = xNode.getParent();
-	   AVLTree Tsmall = new AVLTree(xNode.getLeft()); // Tsmall initialized to be xNode's left sub-tree
-	   AVLTree Tbig = new AVLTree(xNode.getRight()); // Tbig initialized to be xNode's right sub-tree
+	   AVLTree Tsmall = subtree(xNode.getLeft()); // Tsmall initialized to be xNode's left sub-tree
+	   AVLTree Tbig = subtree(xNode.getRight()); // Tbig initialized to be xNode's right sub-tree
 	   while (parent != null) {
 		   IAVLNode gramps = parent.getParent();
 		   if (parent.getKey() < x) { // x was a right child
 			   parent.setRight(EXT); // replace with virtual node to update fields
 			   updateFields(parent);
-			   AVLTree jointTree = new AVLTree(parent.getLeft()); // Get the parents left sub-tree
-			   Tsmall.join(parent, jointTree); // Join to the smaller keys tree
+			   AVLTree jointTree = subtree(parent.getLeft()); // Get the parents left sub-tree
+			   cost += Tsmall.join(parent, jointTree); // Join to the smaller keys tree
 			   Tsmall.root = Tsmall.root.getHeight() > jointTree.root.getHeight() ? Tsmall.root : jointTree.root; // Assigns Tsmall to be the bigger (by rank) tree of both
 		   }
 		   else { // x was a left child
 			   parent.setLeft(EXT); // replace with virtual node to update fields
 			   updateFields(parent);
-			   AVLTree jointTree = new AVLTree(parent.getRight()); // Get the parents right sub-tree
-			   Tbig.join(parent, jointTree); // Join to the bigger keys tree
+			   AVLTree jointTree = subtree(parent.getRight()); // Get the parents right sub-tree
+			   cost += Tbig.join(parent, jointTree); // Join to the bigger keys tree
 			   Tbig.root = Tbig.root.getHeight() >= jointTree.root.getHeight() ? Tbig.root : jointTree.root; // Assigns Tbig to be the bigger (by rank) tree of both
 		   }
 		   parent = gramps; // go UP
 	   }
+	   Tsmall.updateTreeFields(); // The joins above may have left the result in jointTree, whose root we took
+	   Tbig.updateTreeFields();
+	   if (metrics != null) { // Both halves keep reporting, the joins above did not
+		   metrics.splitDone(cost, System.nanoTime() - start);
+		   Tsmall.metrics = metrics;
+		   Tbig.metrics = metrics;
+	   }
 	   return new AVLTree[]{Tsmall, Tbig};
    }
    
@@ -685,11 +2291,51 @@ public class AVLTree {
 	* precondition: keys(t) < x < keys() or keys(t) > x > keys(). t/tree might be empty (rank = -1).
     * postcondition: none
     */   
-   public int join(IAVLNode x, AVLTree t) // Joins a given AVL tree t and a node x to this tree. O(|rank(this) - rank(t)| + 1)
+   public int join(IAVLNode x, AVLTree t) // O(|rank(this) - rank(t)| + 1)
+   {
+	   if (metrics == null) {
+		   return joinTrees(x, t);
+	   }
+	   long start = System.nanoTime();
+	   int cost = joinTrees(x, t);
+	   metrics.joined(cost, System.nanoTime() - start);
+	   if (t != null && t.metrics == null) { // The result may be held by t
+		   t.metrics = metrics;
+	   }
+	   return cost;
+   }
+
+   /**
+    * public AVLTree joined(AVLTree t)
+    *
+    * Returns the tree that holds the result of this.join(x, t), called right after it.
+    * join builds the result in the taller of the two trees, and leaves the other one with its old fields,
+    * so the holder is the one that grew past the other's size.
+    */
+   public AVLTree joined(AVLTree t) // O(1)
    {
+	   return t != null && t.size() > this.size() ? t : this;
+   }
+
+   private int joinTrees(IAVLNode x, AVLTree t) { // Joins t and x to this tree, leaving the result's aggregates up to date. O(|rank(this) - rank(t)| + 1), O(|t|) if t has another aggregator
 	   if (t == null) {
 		   t = new AVLTree(); // Make t an empty tree
 	   }
+	   if (aggregator != null && !(x instanceof AVLNode)) {
+		   throw new IllegalArgumentException("Aggregates need the default node layout, x is compact");
+	   }
+	   shareAggregator(t); // The result keeps this tree's aggregator, wherever it ends up
+	   shareRankRules(t);
+	   int cost = joinRanked(x, t);
+	   if (aggregator != null) { // The sub-trees that took x in are the ones on its way up
+		   for (IAVLNode node = x; node != null; node = node.getParent()) {
+			   updateAggregate(node);
+		   }
+	   }
+	   return cost;
+   }
+
+   private int joinRanked(IAVLNode x, AVLTree t) { // Joins a given AVL tree t and a node x to this tree. O(|rank(this) - rank(t)| + 1)
 	   x.setParent(null);
 	   x.setLeft(EXT); x.setRight(EXT);
 	   updateFields(x);
@@ -715,7 +2361,7 @@ public class AVLTree {
 		   return t.root.getHeight() + 2;
 	   } // Both trees aren't empty
 	   if (t.root.getHeight() > this.root.getHeight()) { // Always join small tree (by rank) to big tree (by rank)
-		   if (t.min.getKey() > this.max.getKey()) {
+		   if (t.root.getKey() > this.root.getKey()) {
 			   return t.joinRight(this, x);
 		   }
 		   else {
@@ -741,7 +2387,7 @@ public class AVLTree {
 	   }
 	   if (joinPoint.getHeight() <= smallRank) {
 		   x.setRight(joinPoint);
-		   if (joinPoint.getParent() != null && joinPoint.getParent().getKey() != x.getKey()) { // Might cover special cases in split
+		   if (joinPoint.getParent() != null && joinPoint.getParent() != x) { // Might cover special cases in split
 			   x.setParent(joinPoint.getParent());
 			   joinPoint.getParent().setLeft(x);
 		   }
@@ -773,7 +2419,7 @@ public class AVLTree {
 	   }
 	   if (joinPoint.getHeight() <= smallRank) {
 		   x.setLeft(joinPoint);
-		   if (joinPoint.getParent() != null && joinPoint.getParent().getKey() != x.getKey()) { // Might cover special cases in split
+		   if (joinPoint.getParent() != null && joinPoint.getParent() != x) { // Might cover special cases in split
 			   x.setParent(joinPoint.getParent());
 			   joinPoint.getParent().setRight(x);
 		   }
@@ -796,6 +2442,81 @@ public class AVLTree {
 	   return (bigRank - smallRank + 1);
    }
 
+	/**
+	 * public interface ItemPredicate
+	 *
+	 * A test on an item, see filter.
+	 */
+	public interface ItemPredicate {
+		public boolean test(int key, String info);
+	}
+
+	/**
+	 * public interface Aggregator<A>
+	 *
+	 * A monoid over items that nodes can keep the value of for their sub-trees, see setAggregator.
+	 * combine must be associative, with identity() on either side leaving a value as it was. It need not commute:
+	 * values are always combined in key order.
+	 */
+	public interface Aggregator<A> {
+		public A identity();
+
+		public A of(int key, String info);
+
+		public A combine(A left, A right);
+
+		/**
+		 * public static Aggregator<Long> keySum()
+		 *
+		 * The sum of the keys, as a long so it cannot overflow.
+		 */
+		public static Aggregator<Long> keySum() {
+			return new Aggregator<Long>() {
+				public Long identity() {
+					return 0L;
+				}
+
+				public Long of(int key, String info) {
+					return (long) key;
+				}
+
+				public Long combine(Long left, Long right) {
+					return left + right;
+				}
+			};
+		}
+
+		/**
+		 * public static Aggregator<Integer> count(ItemPredicate p)
+		 *
+		 * The number of items p accepts.
+		 */
+		public static Aggregator<Integer> count(ItemPredicate p) {
+			return new Aggregator<Integer>() {
+				public Integer identity() {
+					return 0;
+				}
+
+				public Integer of(int key, String info) {
+					return p.test(key, info) ? 1 : 0;
+				}
+
+				public Integer combine(Integer left, Integer right) {
+					return left + right;
+				}
+			};
+		}
+	}
+
+	/**
+	 * public interface ItemFunction
+	 *
+	 * A new info for an item, see mapValues.
+	 */
+	public interface ItemFunction {
+		public String apply(int key, String info);
+	}
+
 	/** 
 	 * public interface IAVLNode
 	 * ! Do not delete or modify this - otherwise all tests will fail !
@@ -837,28 +2558,36 @@ public class AVLTree {
 	  private IAVLNode left;
 	  private IAVLNode right;
 	  private IAVLNode parent; // Gender fluid
-	  private int[] rankDifference;
 	  private int size;
 	  private IAVLNode min;
 	  private IAVLNode max;
+	  private Object aggregate; // The tree's Aggregator over this sub-tree, if it has one. Fits in what was padding
 
 
-	   public AVLNode(int key, String info) {
+	   public AVLNode(int key, String info) { // A real node, a leaf until it is linked. Any int is a valid key
 		   this.key = key;
 		   this.info = info;
-		   this.rank = -1;
+		   this.rank = 0;
 		   this.left = null;
 		   this.right = null;
 		   this.parent = null;
-		   this.rankDifference = new int[2];
-		   this.size = key > -1 ? 1 : 0;
+		   this.size = 1;
+		   this.min = this;
+		   this.max = this;
+	   }
+
+	   private AVLNode() { // An external leaf, with rank -1 and size 0
+		   this.key = -1;
+		   this.info = null;
+		   this.rank = -1;
+		   this.size = 0;
 		   this.min = this;
 		   this.max = this;
 	   }
 
 
 		public int getKey() { // Returns node's key or -1 if node is an external leaf. O(1)
-			return Math.max(this.key, -1);
+			return isRealNode() ? this.key : -1;
 		}
 
 
@@ -912,12 +2641,11 @@ public class AVLTree {
 	    }
 
 
-		public void updateRankDifference(int[] insertedRankDifference) { // Calculates rank differences between the node and its sub-trees. O(1)
-		   this.rankDifference = insertedRankDifference;
+		public void updateRankDifference(int[] insertedRankDifference) { // Rank differences are derived from the ranks on demand, so there is nothing to store. O(1)
 		}
 
-		public int[] getRankDifference() { // Gets rank difference of node. O(1)
-		   return rankDifference;
+		public int[] getRankDifference() { // Rank differences between the node and its sub-trees, {0, 0} for an external leaf. Allocates; the tree itself never calls it. O(1)
+		   return isRealNode() ? new int[]{this.rank - this.left.getHeight(), this.rank - this.right.getHeight()} : new int[2];
 		}
 
 		public void updateSize() { // Recalculates the size of the sub-tree with node as its root. O(1)
@@ -946,4 +2674,126 @@ public class AVLTree {
 
   }
 
+   /**
+    * public static class CompactAVLNode
+    *
+    * The node of a compact tree. Keeps only what balancing and order statistics need:
+    * key, info, rank, size and the three links - no min/max pointers, and no reference to the enclosing tree.
+    * getMin() and getMax() walk down the sub-tree instead, which the tree only does once per update.
+    */
+  public static class CompactAVLNode implements IAVLNode {
+	  private int key;
+	  private String info;
+	  private int rank;
+	  private IAVLNode left;
+	  private IAVLNode right;
+	  private IAVLNode parent;
+	  private int size;
+
+
+	   public CompactAVLNode(int key, String info) { // A real node, a leaf until it is linked. Any int is a valid key
+		   this.key = key;
+		   this.info = info;
+		   this.rank = 0;
+		   this.left = null;
+		   this.right = null;
+		   this.parent = null;
+		   this.size = 1;
+	   }
+
+
+		public int getKey() { // Returns node's key or -1 if node is an external leaf. O(1)
+			return isRealNode() ? this.key : -1;
+		}
+
+
+		public String getValue() { // Returns node's info or null if node is an external leaf. O(1)
+			return isRealNode() ? info : null;
+		}
+
+
+		public void setLeft(IAVLNode node) { // O(1)
+		   this.left = node;
+		}
+
+
+		public IAVLNode getLeft() { // O(1)
+			return this.left;
+		}
+
+
+		public void setRight(IAVLNode node) { // O(1)
+		   this.right = node;
+		}
+
+
+		public IAVLNode getRight() { // O(1)
+			return this.right;
+		}
+
+
+		public void setParent(IAVLNode node) { // O(1)
+		   this.parent = node;
+		}
+
+
+		public IAVLNode getParent() { // O(1)
+			return this.parent;
+		}
+
+
+		public boolean isRealNode() { // O(1)
+			return (this.getHeight() != -1);
+		}
+
+
+	    public void setHeight(int height) { // O(1)
+		  rank = height;
+	    }
+
+
+	    public int getHeight() { // O(1)
+	      return this.rank;
+	    }
+
+
+		public void updateRankDifference(int[] insertedRankDifference) { // Nothing to store. O(1)
+		}
+
+		public int[] getRankDifference() { // O(1)
+		   return isRealNode() ? new int[]{this.rank - this.left.getHeight(), this.rank - this.right.getHeight()} : new int[2];
+		}
+
+		public void updateSize() { // O(1)
+		   this.size = this.left.getSize() + this.right.getSize() + 1;
+		}
+
+		public int getSize() { // O(1)
+		   return this.size;
+		}
+
+		public void updateMin() { // Nothing is cached. O(1)
+		}
+
+		public IAVLNode getMin() { // Walks to the leftmost node of this sub-tree. O(logn)
+		   IAVLNode node = this;
+		   while (node.getLeft().isRealNode()) {
+			   node = node.getLeft();
+		   }
+		   return node;
+		}
+
+		public void updateMax() { // Nothing is cached. O(1)
+		}
+
+		public IAVLNode getMax() { // Walks to the rightmost node of this sub-tree. O(logn)
+		   IAVLNode node = this;
+		   while (node.getRight().isRealNode()) {
+			   node = node.getRight();
+		   }
+		   return node;
+		}
+
+  }
+
 }
\ No newline at end of file
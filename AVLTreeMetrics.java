@@ -0,0 +1,140 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *
+ * AVLTreeMetrics
+ *
+ * Cumulative rebalancing counters, search path lengths and per-operation latency histograms of an AVLTree,
+ * see AVLTree.enableMetrics. A tree without metrics only pays a null check per rebalancing step.
+ * Recording is thread-safe, so concurrent readers of one tree, or several trees, may share one.
+ *
+ */
+
+public class AVLTreeMetrics implements AVLTreeMetricsMBean {
+	private final LongAdder promotions = new LongAdder();
+	private final LongAdder demotions = new LongAdder();
+	private final LongAdder rotations = new LongAdder(); // Single ones, and both halves of each double one
+	private final LongAdder doubleRotations = new LongAdder();
+	private final LongAdder joins = new LongAdder();
+	private final LongAdder joinCost = new LongAdder();
+	private final LongAdder splits = new LongAdder();
+	private final LongAdder splitCost = new LongAdder();
+	private final LatencyHistogram searchPath = new LatencyHistogram();
+	private final LatencyHistogram search = new LatencyHistogram();
+	private final LatencyHistogram insert = new LatencyHistogram();
+	private final LatencyHistogram delete = new LatencyHistogram();
+	private final LatencyHistogram split = new LatencyHistogram();
+	private final LatencyHistogram join = new LatencyHistogram();
+
+	void promoted() { // O(1)
+		promotions.increment();
+	}
+
+	void demoted() { // O(1)
+		demotions.increment();
+	}
+
+	void rotated() { // O(1)
+		rotations.increment();
+	}
+
+	void rotatedTwice() { // Called along with the two rotated() of a double rotation. O(1)
+		doubleRotations.increment();
+	}
+
+	void searched(int pathLength, long nanos) { // O(1)
+		searchPath.record(pathLength);
+		search.record(nanos);
+	}
+
+	void inserted(long nanos) { // O(1)
+		insert.record(nanos);
+	}
+
+	void deleted(long nanos) { // O(1)
+		delete.record(nanos);
+	}
+
+	void joined(int cost, long nanos) { // O(1)
+		joins.increment();
+		joinCost.add(cost);
+		join.record(nanos);
+	}
+
+	void splitDone(int cost, long nanos) { // O(1)
+		splits.increment();
+		splitCost.add(cost);
+		split.record(nanos);
+	}
+
+	/**
+	 * public ObjectName register(String name)
+	 *
+	 * Registers these metrics with the platform MBean server as AVLTree:type=Metrics,name=name, and returns that name.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("AVLTree:type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * public LatencyHistogram getSearchPathHistogram() (and the other histogram getters)
+	 *
+	 * The underlying histograms, for percentiles JMX does not export.
+	 */
+	public LatencyHistogram getSearchPathHistogram() { return searchPath; }
+	public LatencyHistogram getSearchHistogram() { return search; }
+	public LatencyHistogram getInsertHistogram() { return insert; }
+	public LatencyHistogram getDeleteHistogram() { return delete; }
+	public LatencyHistogram getSplitHistogram() { return split; }
+	public LatencyHistogram getJoinHistogram() { return join; }
+
+	public long getPromotions() { return promotions.sum(); }
+	public long getDemotions() { return demotions.sum(); }
+	public long getSingleRotations() { return rotations.sum() - 2 * doubleRotations.sum(); }
+	public long getDoubleRotations() { return doubleRotations.sum(); }
+	public long getJoins() { return joins.sum(); }
+	public long getJoinCost() { return joinCost.sum(); }
+	public long getSplits() { return splits.sum(); }
+	public long getSplitCost() { return splitCost.sum(); }
+
+	public double getSearchPathMean() { return searchPath.getMean(); }
+	public long getSearchPathP99() { return searchPath.getPercentile(99); }
+	public long getSearchPathMax() { return searchPath.getMax(); }
+
+	public long getSearchCount() { return search.getCount(); }
+	public long getSearchP50Nanos() { return search.getPercentile(50); }
+	public long getSearchP99Nanos() { return search.getPercentile(99); }
+	public long getSearchMaxNanos() { return search.getMax(); }
+
+	public long getInsertCount() { return insert.getCount(); }
+	public long getInsertP50Nanos() { return insert.getPercentile(50); }
+	public long getInsertP99Nanos() { return insert.getPercentile(99); }
+	public long getInsertMaxNanos() { return insert.getMax(); }
+
+	public long getDeleteCount() { return delete.getCount(); }
+	public long getDeleteP50Nanos() { return delete.getPercentile(50); }
+	public long getDeleteP99Nanos() { return delete.getPercentile(99); }
+	public long getDeleteMaxNanos() { return delete.getMax(); }
+
+	public long getSplitP50Nanos() { return split.getPercentile(50); }
+	public long getSplitP99Nanos() { return split.getPercentile(99); }
+	public long getSplitMaxNanos() { return split.getMax(); }
+
+	public long getJoinP50Nanos() { return join.getPercentile(50); }
+	public long getJoinP99Nanos() { return join.getPercentile(99); }
+	public long getJoinMaxNanos() { return join.getMax(); }
+
+	public void reset() {
+		for (LongAdder counter : new LongAdder[]{promotions, demotions, rotations, doubleRotations, joins, joinCost, splits, splitCost}) {
+			counter.reset();
+		}
+		for (LatencyHistogram histogram : new LatencyHistogram[]{searchPath, search, insert, delete, split, join}) {
+			histogram.reset();
+		}
+	}
+}
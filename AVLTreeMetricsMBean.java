@@ -0,0 +1,47 @@
+/**
+ *
+ * AVLTreeMetricsMBean
+ *
+ * The JMX view of an AVLTreeMetrics. Latencies are in nanoseconds; percentiles come from a LatencyHistogram.
+ *
+ */
+
+public interface AVLTreeMetricsMBean {
+	public long getPromotions();
+	public long getDemotions();
+	public long getSingleRotations();
+	public long getDoubleRotations();
+	public long getJoins();
+	public long getJoinCost(); // Sum of the values join returned
+	public long getSplits();
+	public long getSplitCost(); // Sum of the costs of the joins inside each split
+
+	public double getSearchPathMean(); // Nodes visited per search, the found node or the last one included
+	public long getSearchPathP99();
+	public long getSearchPathMax();
+
+	public long getSearchCount();
+	public long getSearchP50Nanos();
+	public long getSearchP99Nanos();
+	public long getSearchMaxNanos();
+
+	public long getInsertCount();
+	public long getInsertP50Nanos();
+	public long getInsertP99Nanos();
+	public long getInsertMaxNanos();
+
+	public long getDeleteCount();
+	public long getDeleteP50Nanos();
+	public long getDeleteP99Nanos();
+	public long getDeleteMaxNanos();
+
+	public long getSplitP50Nanos();
+	public long getSplitP99Nanos();
+	public long getSplitMaxNanos();
+
+	public long getJoinP50Nanos();
+	public long getJoinP99Nanos();
+	public long getJoinMaxNanos();
+
+	public void reset(); // Zeroes every counter and histogram
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * AVLTreeSnapshot
+ *
+ * Saves an AVLTree to a file in a compact binary format, and loads it back in O(n).
+ * The file is written by one in-order walk of the tree: a header with the number of items,
+ * then for every item the gap from the previous key as an unsigned varint and its info as a varint length and UTF-8 bytes,
+ * then a CRC32 of the items. Since the keys come out sorted, loading rebuilds the tree with fromSorted instead of n inserts.
+ *
+ */
+
+public final class AVLTreeSnapshot {
+	private static final int MAGIC = 0x41564c53; // "AVLS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 12;
+	private static final int BUFFER_BYTES = 1 << 16;
+	private static final int MAX_ITEM_HEADER = 10; // Two varints of at most 5 bytes each
+
+	private AVLTreeSnapshot() {
+	}
+
+	/**
+	 * public static void write(AVLTree tree, Path path)
+	 *
+	 * Writes the items of tree to path, replacing anything that was there. tree must not be modified meanwhile.
+	 */
+	public static void write(AVLTree tree, Path path) throws IOException { // O(n)
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(tree.size());
+			flush(channel, buffer, null);
+			CRC32 crc = new CRC32();
+			int previous = Integer.MIN_VALUE; // The first key is stored as its gap from the smallest int
+			Iterator<AVLTree.IAVLNode> items = tree.range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+			while (items.hasNext()) {
+				AVLTree.IAVLNode node = items.next();
+				String info = node.getValue();
+				byte[] bytes = info != null ? info.getBytes(StandardCharsets.UTF_8) : null;
+				if (buffer.remaining() < MAX_ITEM_HEADER) {
+					flush(channel, buffer, crc);
+				}
+				putVarint(buffer, node.getKey() - previous); // Read as unsigned, the gap always fits
+				putVarint(buffer, bytes != null ? bytes.length + 1 : 0); // 0 stands for a null info
+				previous = node.getKey();
+				if (bytes == null) {
+					continue;
+				}
+				if (bytes.length > buffer.remaining()) {
+					flush(channel, buffer, crc);
+				}
+				if (bytes.length > buffer.remaining()) { // Larger than the whole buffer, write it as is
+					writeFully(channel, ByteBuffer.wrap(bytes), crc);
+				}
+				else {
+					buffer.put(bytes);
+				}
+			}
+			flush(channel, buffer, crc);
+			buffer.putInt((int) crc.getValue());
+			flush(channel, buffer, null);
+		}
+	}
+
+	/**
+	 * public static AVLTree read(Path path)
+	 *
+	 * Returns a tree with the items written to path by write.
+	 *
+	 * @throws IOException if path cannot be read, or is not a snapshot file, or is truncated or corrupt.
+	 */
+	public static AVLTree read(Path path) throws IOException { // O(n)
+		return read(path, false);
+	}
+
+	/**
+	 * public static AVLTree read(Path path, boolean compact)
+	 *
+	 * Same as read(path), with the node layout of AVLTree(compact).
+	 */
+	public static AVLTree read(Path path, boolean compact) throws IOException { // O(n)
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			fill(channel, buffer, HEADER_BYTES, path, null);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(path + " is not an AVL tree snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + " has unsupported snapshot version " + version);
+			}
+			int n = buffer.getInt();
+			buffer.compact().flip(); // The items' checksum starts here
+			long fileBytes = channel.size();
+			if (n < 0 || n > fileBytes) { // Every item takes at least a byte
+				throw new IOException(path + " is corrupt");
+			}
+			CRC32 crc = new CRC32();
+			int[] keys = new int[n];
+			String[] infos = new String[n];
+			int key = Integer.MIN_VALUE;
+			for (int j = 0; j < n; j++) {
+				fill(channel, buffer, MAX_ITEM_HEADER, null, crc); // Fewer bytes are left only near the end of the file
+				key += getVarint(buffer, path);
+				keys[j] = key;
+				int length = getVarint(buffer, path) - 1;
+				if (length < -1 || length > fileBytes) {
+					throw new IOException(path + " is corrupt");
+				}
+				if (length < 0) {
+					continue;
+				}
+				if (length <= buffer.capacity()) {
+					fill(channel, buffer, length, path, crc);
+					infos[j] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+					buffer.position(buffer.position() + length);
+				}
+				else { // Larger than the whole buffer, read it on its own
+					ByteBuffer large = ByteBuffer.allocate(length);
+					int buffered = buffer.remaining();
+					crc.update(buffer.array(), 0, buffer.limit());
+					large.put(buffer);
+					buffer.clear().flip();
+					while (large.hasRemaining()) {
+						if (channel.read(large) < 0) {
+							throw new IOException(path + " is truncated");
+						}
+					}
+					crc.update(large.array(), buffered, length - buffered);
+					infos[j] = new String(large.array(), StandardCharsets.UTF_8);
+				}
+			}
+			crc.update(buffer.array(), 0, buffer.position()); // Then the checksum, which is not part of it
+			buffer.compact().flip();
+			fill(channel, buffer, 4, path, null);
+			if (buffer.getInt() != (int) crc.getValue() || buffer.hasRemaining() || channel.position() < fileBytes) { // Nothing may follow the checksum
+				throw new IOException(path + " is corrupt");
+			}
+			try {
+				return AVLTree.fromSorted(keys, infos, compact);
+			} catch (IllegalArgumentException e) { // Gaps that wrapped around
+				throw new IOException(path + " is corrupt", e);
+			}
+		}
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) { // 7 bits a byte, low bits first, the top bit set on all but the last. O(1)
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer buffer, Path path) throws IOException { // O(1)
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				throw new IOException(path + " is truncated");
+			}
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException(path + " is corrupt");
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException { // Writes out what was put into buffer and clears it. O(buffered bytes)
+		buffer.flip();
+		writeFully(channel, buffer, crc);
+		buffer.clear();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer bytes, CRC32 crc) throws IOException { // O(bytes)
+		if (crc != null) {
+			crc.update(bytes.array(), bytes.position(), bytes.remaining());
+		}
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	private static void fill(FileChannel channel, ByteBuffer buffer, int needed, Path path, CRC32 crc) throws IOException { // Buffers at least needed bytes, adding the consumed ones to crc. A file that ends first throws, unless path is null. O(buffer size)
+		if (buffer.remaining() >= needed) {
+			return;
+		}
+		if (crc != null) {
+			crc.update(buffer.array(), 0, buffer.position());
+		}
+		buffer.compact();
+		while (buffer.position() < needed) {
+			if (channel.read(buffer) < 0) {
+				if (path != null) {
+					throw new IOException(path + " is truncated");
+				}
+				break;
+			}
+		}
+		buffer.flip();
+	}
+}
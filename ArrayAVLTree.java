@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+/**
+ *
+ * ArrayAVLTree
+ *
+ * The same AVL tree as AVLTree, with distinct integer keys and info,
+ * but with its nodes kept as int indices into parallel arrays of a Pool instead of node objects.
+ * Index 0 is the external leaf EXT. Freed indices go on a free list and are reused by later inserts.
+ * Trees made by split share their Pool, so joining them back moves no data. The algorithms are IndexedAVLTree's.
+ *
+ */
+
+public class ArrayAVLTree extends IndexedAVLTree<ArrayAVLTree.Pool> {
+	private static final int INITIAL_CAPACITY = 16;
+
+	public ArrayAVLTree() { // Default constructor, will produce an empty tree with its own pool.
+		this(new Pool(INITIAL_CAPACITY), EXT);
+	}
+
+	/** Sized constructor
+	 *
+	 * @param capacity number of nodes to allocate room for up front
+	 *
+	 * @post An empty tree whose pool will not grow before holding capacity nodes.
+	 */
+	public ArrayAVLTree(int capacity) {
+		this(new Pool(capacity), EXT);
+	}
+
+	private ArrayAVLTree(Pool pool, int root) { // A tree over a detached sub-tree of pool. O(logn)
+		super(pool, root);
+	}
+
+	/**
+	 * public ArrayAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * Both trees share this tree's pool, which is left empty.
+	 *
+	 * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
+	 * postcondition: none
+	 */
+	public ArrayAVLTree[] split(int x) { // O(logn)
+		int[] roots = splitRoots(x);
+		if (roots == null) { // x wasn't found
+			return null;
+		}
+		return new ArrayAVLTree[]{new ArrayAVLTree(store, roots[0]), new ArrayAVLTree(store, roots[1])};
+	}
+
+	/**
+	 * public int join(AVLTree.IAVLNode x, ArrayAVLTree t)
+	 *
+	 * joins t and x with the tree. t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * Only x's key and info are used. If t does not share this tree's pool, its items are copied over first, in O(|t|).
+	 *
+	 * precondition: keys(t) < x < keys() or keys(t) > x > keys(). t/tree might be empty (rank = -1).
+	 * postcondition: none
+	 */
+	public int join(AVLTree.IAVLNode x, ArrayAVLTree t) { // O(|rank(this) - rank(t)| + 1)
+		return joinTree(x, t);
+	}
+
+	/**
+	 * static class Pool
+	 *
+	 * The parallel arrays holding the nodes of one or more trees.
+	 * Index 0 is EXT: rank -1, size 0, and its links are never written.
+	 * Free indices are chained through their left links.
+	 */
+	static final class Pool implements IndexedAVLTree.NodeStore {
+		private int[] keys;
+		private String[] infos;
+		private int[] left;
+		private int[] right;
+		private int[] parent;
+		private byte[] rank;
+		private int[] size;
+		private int used; // Indices below used have been handed out at least once
+		private int freeHead; // First free index, EXT if none
+
+		Pool(int capacity) {
+			capacity = Math.max(capacity, 1) + 1; // Room for EXT
+			this.keys = new int[capacity];
+			this.infos = new String[capacity];
+			this.left = new int[capacity];
+			this.right = new int[capacity];
+			this.parent = new int[capacity];
+			this.rank = new byte[capacity];
+			this.size = new int[capacity];
+			this.rank[EXT] = -1;
+			this.used = 1;
+			this.freeHead = EXT;
+		}
+
+		public int key(int node) {
+			return keys[node];
+		}
+
+		public String info(int node) {
+			return infos[node];
+		}
+
+		public int left(int node) {
+			return left[node];
+		}
+
+		public int right(int node) {
+			return right[node];
+		}
+
+		public int parent(int node) {
+			return parent[node];
+		}
+
+		public int size(int node) {
+			return size[node];
+		}
+
+		public int rank(int node) {
+			return rank[node];
+		}
+
+		public void setLeft(int node, int left) {
+			this.left[node] = left;
+		}
+
+		public void setRight(int node, int right) {
+			this.right[node] = right;
+		}
+
+		public void setParent(int node, int parent) {
+			this.parent[node] = parent;
+		}
+
+		public void setSize(int node, int size) {
+			this.size[node] = size;
+		}
+
+		public void setRank(int node, int rank) {
+			this.rank[node] = (byte) rank;
+		}
+
+		public void modify() { // Arrays need no marking. O(1)
+		}
+
+		public int allocate(int key, String info) { // Returns a detached leaf. O(1) amortized
+			int node;
+			if (freeHead != EXT) {
+				node = freeHead;
+				freeHead = left[node];
+			} else {
+				if (used == keys.length) {
+					grow();
+				}
+				node = used++;
+			}
+			keys[node] = key;
+			infos[node] = info;
+			left[node] = EXT;
+			right[node] = EXT;
+			parent[node] = EXT;
+			rank[node] = 0;
+			size[node] = 1;
+			return node;
+		}
+
+		public void free(int node) { // O(1)
+			infos[node] = null; // Let the info be collected
+			left[node] = freeHead;
+			freeHead = node;
+		}
+
+		private void grow() { // O(n), amortized O(1) per allocation
+			int capacity = keys.length + (keys.length >> 1) + 1;
+			keys = Arrays.copyOf(keys, capacity);
+			infos = Arrays.copyOf(infos, capacity);
+			left = Arrays.copyOf(left, capacity);
+			right = Arrays.copyOf(right, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			rank = Arrays.copyOf(rank, capacity);
+			size = Arrays.copyOf(size, capacity);
+		}
+	}
+}
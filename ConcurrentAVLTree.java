@@ -0,0 +1,555 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * A thread-safe AVLTree, striped by key: every key hashes to one of a fixed number of stripes, each an AVLTree
+ * behind its own StampedLock. A writer locks only the stripe of its key, so writers to different stripes run in parallel.
+ * Hashing, not key ranges, picks the stripe, so runs of adjacent keys are spread over all stripes.
+ *
+ * Readers do not lock at all. A read walks the stripes it needs under optimistic StampedLock stamps and validates them
+ * at every step, so it stops as soon as a writer starts, and retries once under the read locks if one did.
+ * A read of several stripes takes all their stamps before it starts and validates all of them, so it sees one moment of the tree.
+ * Ordered reads merge the stripes: min and max compare the stripes' ends, range and the array walks merge their items.
+ *
+ * Within a stripe there are no per-node locks: every insert and delete updates the sub-tree sizes
+ * (and the cached min/max pointers) of all the nodes up to the stripe's root, so two writers in one tree would meet there anyway.
+ *
+ */
+
+public class ConcurrentAVLTree {
+	static final int DEFAULT_STRIPES = 16;
+
+	private final Stripe[] stripes;
+
+	public ConcurrentAVLTree() { // Default constructor, will produce an empty tree with DEFAULT_STRIPES stripes.
+		this(DEFAULT_STRIPES);
+	}
+
+	/** Striped constructor
+	 *
+	 * @param stripes the number of stripes, at least 1, else IllegalArgumentException
+	 *
+	 * @post An empty tree with that many stripes, each one an AVLTree(). Up to that many writers run at once.
+	 */
+	public ConcurrentAVLTree(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("Got " + stripes + " stripes");
+		}
+		this.stripes = new Stripe[stripes];
+		for (int j = 0; j < stripes; j++) {
+			this.stripes[j] = new Stripe(new AVLTree());
+		}
+	}
+
+	/** Wrapping constructor
+	 *
+	 * @param tree the items to share between threads. It is copied, not changed, into trees with its node layout.
+	 *
+	 * @post A thread-safe tree holding tree's items, with DEFAULT_STRIPES stripes.
+	 */
+	public ConcurrentAVLTree(AVLTree tree) { // O(n)
+		this(tree, DEFAULT_STRIPES);
+	}
+
+	/** Wrapping constructor
+	 *
+	 * @param stripes the number of stripes, at least 1, else IllegalArgumentException
+	 */
+	public ConcurrentAVLTree(AVLTree tree, int stripes) { // O(n + stripes)
+		this(stripes);
+		int[][] keys = new int[stripes][];
+		String[][] infos = new String[stripes][];
+		int[] counts = new int[stripes];
+		for (int j = 0; j < stripes; j++) {
+			keys[j] = new int[tree.size() / stripes + 1];
+			infos[j] = new String[keys[j].length];
+		}
+		partition(tree.getRoot(), keys, infos, counts);
+		for (int j = 0; j < stripes; j++) { // Each stripe's keys came in order, so it is built without a search
+			this.stripes[j] = new Stripe(tree.sortedCopy(Arrays.copyOf(keys[j], counts[j]), Arrays.copyOf(infos[j], counts[j])));
+		}
+	}
+
+	private void partition(AVLTree.IAVLNode node, int[][] keys, String[][] infos, int[] counts) { // Appends node's sub-tree in order to its stripes' arrays, growing them as needed. O(size of node's sub-tree) amortized
+		if (node == null || !node.isRealNode()) {
+			return;
+		}
+		partition(node.getLeft(), keys, infos, counts);
+		int j = stripeIndex(node.getKey());
+		if (counts[j] == keys[j].length) {
+			keys[j] = Arrays.copyOf(keys[j], counts[j] + (counts[j] >> 1) + 1);
+			infos[j] = Arrays.copyOf(infos[j], keys[j].length);
+		}
+		keys[j][counts[j]] = node.getKey();
+		infos[j][counts[j]++] = node.getValue();
+		partition(node.getRight(), keys, infos, counts);
+	}
+
+	private int stripeIndex(int k) { // O(1)
+		int mixed = k * 0x9e3779b9; // Fibonacci hashing: the top bits depend on all of k's bits
+		return (int) (((mixed & 0xffffffffL) * this.stripes.length) >>> 32);
+	}
+
+	/**
+	 * public int stripeCount()
+	 *
+	 * Returns the number of stripes, fixed at construction.
+	 */
+	public int stripeCount() { // O(1)
+		return this.stripes.length;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * Returns the info of an item with key k if it exists in the tree.
+	 * otherwise, returns null. Lock-free unless a writer of k's stripe interferes.
+	 */
+	public String search(int k) { // O(log(n/stripes))
+		Stripe stripe = this.stripes[stripeIndex(k)];
+		long stamp = stripe.lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				String info = searchOptimistic(stripe, k, stamp);
+				if (stripe.lock.validate(stamp)) {
+					return info;
+				}
+			} catch (NullPointerException e) { // Followed a link a writer was changing to a null one, retry under the lock
+			}
+		}
+		stamp = stripe.lock.readLock();
+		try {
+			return stripe.tree.search(k);
+		} finally {
+			stripe.lock.unlockRead(stamp);
+		}
+	}
+
+	private static String searchOptimistic(Stripe stripe, int k, long stamp) { // The result is only meaningful if stamp is still valid afterwards. O(log(n/stripes))
+		AVLTree.IAVLNode node = stripe.tree.getRoot();
+		while (node != null && node.isRealNode() && stripe.lock.validate(stamp)) { // Validating every step keeps a racing rotation from trapping us in a cycle
+			int key = node.getKey();
+			if (k == key) {
+				return node.getValue();
+			}
+			node = k < key ? node.getLeft() : node.getRight();
+		}
+		return null;
+	}
+
+	private long[] tryOptimisticReadAll() { // One stamp per stripe, or null if a writer holds any of them. O(stripes)
+		long[] stamps = new long[this.stripes.length];
+		for (int j = 0; j < stamps.length; j++) {
+			stamps[j] = this.stripes[j].lock.tryOptimisticRead();
+			if (stamps[j] == 0) {
+				return null;
+			}
+		}
+		return stamps;
+	}
+
+	private boolean validateAll(long[] stamps) { // O(stripes)
+		for (int j = 0; j < stamps.length; j++) {
+			if (!this.stripes[j].lock.validate(stamps[j])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long[] readLockAll() { // In stripe order, like every thread that locks several. O(stripes)
+		long[] stamps = new long[this.stripes.length];
+		for (int j = 0; j < stamps.length; j++) {
+			stamps[j] = this.stripes[j].lock.readLock();
+		}
+		return stamps;
+	}
+
+	private void unlockReadAll(long[] stamps) { // O(stripes)
+		for (int j = stamps.length - 1; j >= 0; j--) {
+			this.stripes[j].lock.unlockRead(stamps[j]);
+		}
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty. Lock-free unless a writer interferes.
+	 */
+	public String min() { // O(stripes)
+		long[] stamps = tryOptimisticReadAll();
+		if (stamps != null) {
+			try {
+				String info = end(true);
+				if (validateAll(stamps)) {
+					return info;
+				}
+			} catch (NullPointerException e) { // Read a min pointer a writer was changing, retry under the locks
+			}
+		}
+		stamps = readLockAll();
+		try {
+			return end(true);
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty. Lock-free unless a writer interferes.
+	 */
+	public String max() { // O(stripes)
+		long[] stamps = tryOptimisticReadAll();
+		if (stamps != null) {
+			try {
+				String info = end(false);
+				if (validateAll(stamps)) {
+					return info;
+				}
+			} catch (NullPointerException e) { // Read a max pointer a writer was changing, retry under the locks
+			}
+		}
+		stamps = readLockAll();
+		try {
+			return end(false);
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	private String end(boolean min) { // The info of the smallest or largest of the stripes' smallest or largest items. O(stripes)
+		AVLTree.IAVLNode best = null;
+		for (Stripe stripe : this.stripes) {
+			AVLTree.IAVLNode node = min ? stripe.tree.minNode() : stripe.tree.maxNode();
+			if (node != null && (best == null || (min ? node.getKey() < best.getKey() : node.getKey() > best.getKey()))) {
+				best = node;
+			}
+		}
+		return best != null ? best.getValue() : null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree. Lock-free unless a writer interferes.
+	 */
+	public int size() { // O(stripes)
+		long[] stamps = tryOptimisticReadAll();
+		if (stamps != null) {
+			int size = sizeOfStripes();
+			if (validateAll(stamps)) {
+				return size;
+			}
+		}
+		stamps = readLockAll();
+		try {
+			return sizeOfStripes();
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	private int sizeOfStripes() { // O(stripes)
+		int size = 0;
+		for (Stripe stripe : this.stripes) {
+			size += stripe.tree.size();
+		}
+		return size;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(stripes)
+		return size() == 0;
+	}
+
+	/**
+	 * public int range(int lo, int hi, int[] keys, String[] infos)
+	 *
+	 * Copies the items with lo <= key <= hi, in increasing key order, into keys and infos,
+	 * stopping when either array is full, and returns how many were copied. Either array may be null.
+	 * The items come from one consistent state of the tree. Lock-free unless a writer interferes.
+	 */
+	public int range(int lo, int hi, int[] keys, String[] infos) { // O(stripes * log(n/stripes) + copied * log stripes)
+		int limit = Math.min(keys != null ? keys.length : Integer.MAX_VALUE, infos != null ? infos.length : Integer.MAX_VALUE);
+		long[] stamps = tryOptimisticReadAll();
+		if (stamps != null) {
+			try {
+				int copied = rangeOptimistic(lo, hi, keys, infos, limit, stamps);
+				if (validateAll(stamps)) {
+					return copied;
+				}
+			} catch (NullPointerException e) { // Followed a link a writer was changing to a null one, retry under the locks
+			}
+		}
+		stamps = readLockAll();
+		try {
+			return rangeOptimistic(lo, hi, keys, infos, limit, stamps); // Validation never fails under the read locks
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	private int rangeOptimistic(int lo, int hi, int[] keys, String[] infos, int limit, long[] stamps) { // Merges the stripes' items in [lo, hi]. The result is only meaningful if stamps are still valid afterwards. O(stripes * log(n/stripes) + copied * log stripes)
+		if (lo > hi) {
+			return 0;
+		}
+		AVLTree.IAVLNode[] next = new AVLTree.IAVLNode[this.stripes.length]; // Each stripe's next item to copy, or null
+		for (int j = 0; j < next.length; j++) { // Seek the smallest key >= lo
+			Stripe stripe = this.stripes[j];
+			AVLTree.IAVLNode node = stripe.tree.getRoot();
+			while (node != null && node.isRealNode() && stripe.lock.validate(stamps[j])) {
+				if (node.getKey() >= lo) {
+					next[j] = node;
+					node = node.getLeft();
+				} else {
+					node = node.getRight();
+				}
+			}
+		}
+		int[] heap = new int[next.length]; // The stripes with a next item <= hi, a min-heap by that item's key
+		int count = 0;
+		for (int j = 0; j < next.length; j++) {
+			if (next[j] != null && next[j].getKey() <= hi) {
+				heap[count++] = j;
+			}
+		}
+		for (int j = count / 2 - 1; j >= 0; j--) {
+			siftDown(heap, count, next, j);
+		}
+		int copied = 0;
+		while (copied < limit && count > 0) {
+			int smallest = heap[0];
+			if (keys != null) {
+				keys[copied] = next[smallest].getKey();
+			}
+			if (infos != null) {
+				infos[copied] = next[smallest].getValue();
+			}
+			copied++;
+			next[smallest] = successor(this.stripes[smallest], next[smallest], stamps[smallest]);
+			if (!this.stripes[smallest].lock.validate(stamps[smallest])) {
+				break;
+			}
+			if (next[smallest] == null || next[smallest].getKey() > hi) { // This stripe is done
+				heap[0] = heap[--count];
+			}
+			siftDown(heap, count, next, 0);
+		}
+		return copied;
+	}
+
+	private static void siftDown(int[] heap, int count, AVLTree.IAVLNode[] next, int j) { // Moves heap[j] down to its place. O(log stripes)
+		while (2 * j + 1 < count) {
+			int child = 2 * j + 1;
+			if (child + 1 < count && next[heap[child + 1]].getKey() < next[heap[child]].getKey()) {
+				child++;
+			}
+			if (next[heap[j]].getKey() <= next[heap[child]].getKey()) {
+				return;
+			}
+			int swap = heap[j];
+			heap[j] = heap[child];
+			heap[child] = swap;
+			j = child;
+		}
+	}
+
+	private static AVLTree.IAVLNode successor(Stripe stripe, AVLTree.IAVLNode node, long stamp) { // Returns the node with the next key in stripe, or null if there is none or stamp went invalid. O(1) amortized over a walk
+		if (node.getRight().isRealNode()) {
+			node = node.getRight();
+			while (node.getLeft().isRealNode() && stripe.lock.validate(stamp)) {
+				node = node.getLeft();
+			}
+			return node;
+		}
+		AVLTree.IAVLNode parent = node.getParent();
+		while (parent != null && parent.getRight() == node && stripe.lock.validate(stamp)) { // Climb while coming from the right
+			node = parent;
+			parent = node.getParent();
+		}
+		return parent;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty. Holds every read lock, which keeps writers out for O(nlog(stripes)).
+	 */
+	public int[] keysToArray() { // O(nlog(stripes))
+		long[] stamps = readLockAll();
+		try {
+			int[] array = new int[sizeOfStripes()];
+			rangeOptimistic(Integer.MIN_VALUE, Integer.MAX_VALUE, array, null, array.length, stamps);
+			return array;
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty. Holds every read lock, which keeps writers out for O(nlog(stripes)).
+	 */
+	public String[] infoToArray() { // O(nlog(stripes))
+		long[] stamps = readLockAll();
+		try {
+			String[] array = new String[sizeOfStripes()];
+			rangeOptimistic(Integer.MIN_VALUE, Integer.MAX_VALUE, null, array, array.length, stamps);
+			return array;
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * Same as AVLTree.insert, under the write lock of k's stripe.
+	 */
+	public int insert(int k, String i) { // O(log(n/stripes))
+		Stripe stripe = this.stripes[stripeIndex(k)];
+		long stamp = stripe.lock.writeLock();
+		try {
+			return stripe.tree.insert(k, i);
+		} finally {
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * Same as AVLTree.delete, under the write lock of k's stripe.
+	 */
+	public int delete(int k) { // O(log(n/stripes))
+		Stripe stripe = this.stripes[stripeIndex(k)];
+		long stamp = stripe.lock.writeLock();
+		try {
+			return stripe.tree.delete(k);
+		} finally {
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public int insertAll(int[] keys, String[] infos)
+	 *
+	 * Same as AVLTree.insertAll, under the write locks of the stripes the keys fall in,
+	 * all held until the whole batch is in, so readers see the whole batch or none of it.
+	 */
+	public int insertAll(int[] keys, String[] infos) { // O(m + stripes + mlog(n/m + 1))
+		if (keys.length != infos.length) {
+			throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+		}
+		AVLTree.requireStrictlyIncreasing(keys); // Before anything changes, the stripes' parts would each pass alone
+		int[][] parts = partition(keys);
+		String[][] infoParts = new String[parts.length][];
+		int[] filled = new int[parts.length];
+		for (int j = 0; j < parts.length; j++) {
+			infoParts[j] = new String[parts[j].length];
+		}
+		for (int j = 0; j < keys.length; j++) {
+			int stripe = stripeIndex(keys[j]);
+			infoParts[stripe][filled[stripe]++] = infos[j];
+		}
+		long[] stamps = writeLockAll(parts);
+		try {
+			int cost = 0;
+			for (int j = 0; j < parts.length; j++) {
+				if (parts[j].length > 0) {
+					cost += this.stripes[j].tree.insertAll(parts[j], infoParts[j]);
+				}
+			}
+			return cost;
+		} finally {
+			unlockWriteAll(stamps);
+		}
+	}
+
+	/**
+	 * public int deleteAll(int[] keys)
+	 *
+	 * Same as AVLTree.deleteAll, under the write locks of the stripes the keys fall in,
+	 * all held until the whole batch is out, so readers see the whole batch or none of it.
+	 */
+	public int deleteAll(int[] keys) { // O(m + stripes + mlog(n/m + 1))
+		AVLTree.requireStrictlyIncreasing(keys);
+		int[][] parts = partition(keys);
+		long[] stamps = writeLockAll(parts);
+		try {
+			int cost = 0;
+			for (int j = 0; j < parts.length; j++) {
+				if (parts[j].length > 0) {
+					cost += this.stripes[j].tree.deleteAll(parts[j]);
+				}
+			}
+			return cost;
+		} finally {
+			unlockWriteAll(stamps);
+		}
+	}
+
+	private int[][] partition(int[] keys) { // Each stripe's keys, in the order they come in keys. O(m + stripes)
+		int[] counts = new int[this.stripes.length];
+		for (int k : keys) {
+			counts[stripeIndex(k)]++;
+		}
+		int[][] parts = new int[this.stripes.length][];
+		for (int j = 0; j < parts.length; j++) {
+			parts[j] = new int[counts[j]];
+			counts[j] = 0;
+		}
+		for (int k : keys) {
+			int stripe = stripeIndex(k);
+			parts[stripe][counts[stripe]++] = k;
+		}
+		return parts;
+	}
+
+	private long[] writeLockAll(int[][] parts) { // Write-locks, in stripe order, the stripes with a non-empty part. O(stripes)
+		long[] stamps = new long[this.stripes.length];
+		for (int j = 0; j < stamps.length; j++) {
+			if (parts[j].length > 0) {
+				stamps[j] = this.stripes[j].lock.writeLock();
+			}
+		}
+		return stamps;
+	}
+
+	private void unlockWriteAll(long[] stamps) { // O(stripes)
+		for (int j = stamps.length - 1; j >= 0; j--) {
+			if (stamps[j] != 0) {
+				this.stripes[j].lock.unlockWrite(stamps[j]);
+			}
+		}
+	}
+
+	/**
+	 * private static class Stripe
+	 *
+	 * The items whose keys hash to one stripe, and the lock that guards them.
+	 */
+	private static final class Stripe {
+		private final AVLTree tree;
+		private final StampedLock lock = new StampedLock();
+
+		Stripe(AVLTree tree) {
+			this.tree = tree;
+		}
+	}
+}
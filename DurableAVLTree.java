@@ -0,0 +1,597 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * A thread-safe AVLTree whose changes survive a crash. Every insert, delete, join and split is appended to a write-ahead log
+ * in a directory, and returns once its record is on disk. Writers that arrive while the log is being forced
+ * queue their records up, and the next force makes all of them durable at once (group commit), so n concurrent writers
+ * pay for far fewer than n forces. checkpoint() saves the tree as an AVLTreeSnapshot and starts an empty log;
+ * opening the directory loads the latest snapshot and replays the log on top of it.
+ *
+ * The directory holds snapshot-g and log-g for one generation g. A checkpoint writes snapshot-(g+1) under a temporary name,
+ * renames it into place and only then starts log-(g+1), so a crash at any point leaves one complete generation to recover.
+ *
+ */
+
+public class DurableAVLTree implements Closeable {
+	private static final int MAGIC = 0x41564c57; // "AVLW"
+	private static final int VERSION = 1;
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final byte JOIN = 3;
+	private static final byte SPLIT = 4;
+
+	private final Path directory;
+	private final boolean compact;
+	private AVLTree tree;
+	private long generation;
+	private FileChannel log;
+	private long logEnd; // Where the last record handed to the log ends
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16); // Records not yet handed to a force, guarded by this
+	private ByteBuffer spare = ByteBuffer.allocate(1 << 16); // Swapped with pending by the thread that forces
+	private long appended; // Sequence number of the last record put into pending
+	private long durable; // Sequence number of the last record known to be on disk
+	private boolean forcing; // Whether some thread is writing and forcing a batch
+	private int recordStart; // Where in pending the record being put starts
+	private IOException failure; // Set once a write or force fails: what is on disk is then unknown
+	private final CRC32 crc = new CRC32();
+
+	/** Directory constructor
+	 *
+	 * @param directory where the snapshot and the log are kept. It is created if it does not exist.
+	 *
+	 * @post The tree saved in directory, with the logged changes since its last checkpoint replayed.
+	 * @throws IOException if the files cannot be read or written, or the snapshot is corrupt.
+	 */
+	public DurableAVLTree(Path directory) throws IOException {
+		this(directory, false);
+	}
+
+	/** Directory constructor
+	 *
+	 * @param compact the node layout of AVLTree(compact) for the tree in memory
+	 */
+	public DurableAVLTree(Path directory, boolean compact) throws IOException {
+		this.directory = directory;
+		this.compact = compact;
+		Files.createDirectories(directory);
+		this.generation = latestGeneration();
+		Path snapshot = file("snapshot", this.generation);
+		this.tree = Files.exists(snapshot) ? AVLTreeSnapshot.read(snapshot, compact) : new AVLTree(compact);
+		Path logFile = file("log", this.generation);
+		if (Files.exists(logFile)) {
+			this.log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long end = replay(logFile);
+			if (end < this.log.size()) { // A record torn by the crash, it was never acknowledged
+				this.log.truncate(end);
+				this.log.force(false);
+			}
+			this.log.position(end);
+			this.logEnd = end;
+		}
+		else {
+			this.log = createLog(logFile);
+			this.logEnd = 8;
+		}
+		deleteOtherGenerations();
+	}
+
+	private long latestGeneration() throws IOException { // The newest generation with a complete snapshot, or 0. O(files)
+		long latest = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "snapshot-*")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (!name.endsWith(".tmp")) {
+					latest = Math.max(latest, Long.parseLong(name.substring("snapshot-".length())));
+				}
+			}
+		}
+		return latest;
+	}
+
+	private void deleteOtherGenerations() throws IOException { // Leftovers of a checkpoint that finished or died. O(files)
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "{snapshot,log}-*")) {
+			for (Path file : files) {
+				if (!file.equals(file("snapshot", this.generation)) && !file.equals(file("log", this.generation))) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	private Path file(String kind, long generation) {
+		return this.directory.resolve(kind + "-" + generation);
+	}
+
+	private static FileChannel createLog(Path path) throws IOException { // An empty log, on disk before it is used
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		channel.force(true);
+		forceDirectory(path.getParent());
+		return channel;
+	}
+
+	private static void forceDirectory(Path directory) { // Makes a new or renamed file's name durable, where the platform allows it
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) { // Directories cannot be opened on some platforms
+		}
+	}
+
+	private long replay(Path path) throws IOException { // Applies the log's complete records to the tree, returns where they end. O(log size + records * logn)
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.log), 1 << 16));
+		if (this.log.size() < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException(path + " is not an AVL tree log");
+		}
+		long end = 8;
+		long size = this.log.size();
+		byte[] body = new byte[64];
+		while (true) {
+			int length;
+			int checksum;
+			try {
+				length = in.readInt();
+				checksum = in.readInt();
+				if (length < 5 || length > size - end) {
+					return end;
+				}
+				if (length > body.length) {
+					body = new byte[Math.max(length, 2 * body.length)];
+				}
+				in.readFully(body, 0, length);
+			} catch (EOFException e) {
+				return end;
+			}
+			this.crc.reset();
+			this.crc.update(body, 0, length);
+			if ((int) this.crc.getValue() != checksum) {
+				return end;
+			}
+			apply(ByteBuffer.wrap(body, 0, length));
+			end += 8 + length;
+		}
+	}
+
+	private void apply(ByteBuffer record) { // Redoes one logged change. O(logn), O(|t|) for a join
+		byte type = record.get();
+		int k = record.getInt();
+		if (type == INSERT) {
+			this.tree.insert(k, getString(record));
+		}
+		else if (type == DELETE) {
+			this.tree.delete(k);
+		}
+		else if (type == JOIN) {
+			String i = getString(record);
+			int[] keys = new int[record.getInt()];
+			String[] infos = new String[keys.length];
+			for (int j = 0; j < keys.length; j++) {
+				keys[j] = record.getInt();
+				infos[j] = getString(record);
+			}
+			joinTree(k, i, AVLTree.fromSorted(keys, infos, this.compact));
+		}
+		else if (type == SPLIT) {
+			this.tree = this.tree.split(k)[0];
+		}
+	}
+
+	/**
+	 * public synchronized String search(int k)
+	 *
+	 * Returns the info of an item with key k if it exists in the tree.
+	 * otherwise, returns null. Sees changes that are applied but possibly not durable yet.
+	 */
+	public synchronized String search(int k) { // O(logn)
+		return this.tree.search(k);
+	}
+
+	/**
+	 * public synchronized String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public synchronized String min() { // O(1)
+		return this.tree.min();
+	}
+
+	/**
+	 * public synchronized String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public synchronized String max() { // O(1)
+		return this.tree.max();
+	}
+
+	/**
+	 * public synchronized int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public synchronized int size() { // O(1)
+		return this.tree.size();
+	}
+
+	/**
+	 * public synchronized boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public synchronized boolean empty() { // O(1)
+		return this.tree.empty();
+	}
+
+	/**
+	 * public synchronized int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public synchronized int[] keysToArray() { // O(n)
+		return this.tree.keysToArray();
+	}
+
+	/**
+	 * public synchronized String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public synchronized String[] infoToArray() { // O(n)
+		return this.tree.infoToArray();
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * Same as AVLTree.insert, returning once the insertion is durable. Nothing is logged if k is already in the tree.
+	 *
+	 * @throws IOException if the log could not be written, now or by an earlier change. The insertion may then be lost on a crash.
+	 */
+	public int insert(int k, String i) throws IOException { // O(logn) plus a share of a force
+		long sequence;
+		int result;
+		synchronized (this) {
+			checkLog();
+			result = this.tree.insert(k, i);
+			if (result == -1) { // k was already there
+				return result;
+			}
+			byte[] bytes = utf8(i);
+			ByteBuffer record = startRecord(INSERT, k, 4 + bytes.length);
+			putString(record, bytes, i);
+			sequence = endRecord(record);
+		}
+		commit(sequence);
+		return result;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * Same as AVLTree.delete, returning once the deletion is durable. Nothing is logged if k is not in the tree.
+	 *
+	 * @throws IOException if the log could not be written, now or by an earlier change. The deletion may then be lost on a crash.
+	 */
+	public int delete(int k) throws IOException { // O(logn) plus a share of a force
+		long sequence;
+		int result;
+		synchronized (this) {
+			checkLog();
+			result = this.tree.delete(k);
+			if (result == -1) { // k was not there
+				return result;
+			}
+			sequence = endRecord(startRecord(DELETE, k, 0));
+		}
+		commit(sequence);
+		return result;
+	}
+
+	/**
+	 * public int join(int k, String i, AVLTree t)
+	 *
+	 * Joins t and a new item with key k and info i into this tree, as AVLTree.join does, and returns the cost join returned.
+	 * t's items are logged along with k, so this takes O(|t|). t must not be used afterwards.
+	 *
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(), else IllegalArgumentException. t might be empty or null.
+	 * @throws IOException if the log could not be written, now or by an earlier change. The join may then be lost on a crash.
+	 */
+	public int join(int k, String i, AVLTree t) throws IOException { // O(|t| + logn) plus a share of a force
+		if (t == null) {
+			t = new AVLTree(this.compact);
+		}
+		long sequence;
+		int result;
+		synchronized (this) {
+			checkLog();
+			if (!separated(t, k, this.tree) && !separated(this.tree, k, t)) {
+				throw new IllegalArgumentException("Key " + k + " does not separate the two trees");
+			}
+			int[] keys = t.keysToArray();
+			String[] infos = t.infoToArray();
+			byte[][] infoBytes = new byte[infos.length][];
+			int bytes = 4 + utf8(i).length + 4;
+			for (int j = 0; j < infos.length; j++) {
+				infoBytes[j] = utf8(infos[j]);
+				bytes += 8 + infoBytes[j].length;
+			}
+			ByteBuffer record = startRecord(JOIN, k, bytes);
+			putString(record, utf8(i), i);
+			record.putInt(keys.length);
+			for (int j = 0; j < keys.length; j++) {
+				record.putInt(keys[j]);
+				putString(record, infoBytes[j], infos[j]);
+			}
+			sequence = endRecord(record);
+			result = joinTree(k, i, t);
+		}
+		commit(sequence);
+		return result;
+	}
+
+	private static boolean separated(AVLTree small, int k, AVLTree big) { // Whether keys(small) < k < keys(big). O(logn)
+		return (small.empty() || small.select(small.size() - 1).getKey() < k) && (big.empty() || big.select(0).getKey() > k);
+	}
+
+	private int joinTree(int k, String i, AVLTree t) { // O(|rank(this) - rank(t)| + 1)
+		AVLTree.IAVLNode x = this.compact ? new AVLTree.CompactAVLNode(k, i) : this.tree.new AVLNode(k, i);
+		int cost = this.tree.join(x, t);
+		this.tree = this.tree.joined(t);
+		return cost;
+	}
+
+	/**
+	 * public AVLTree split(int x)
+	 *
+	 * Splits the tree as AVLTree.split does, keeping the keys < x in this tree and returning the keys > x as a plain AVLTree,
+	 * once the split is durable. The item with key x goes to neither.
+	 *
+	 * precondition: search(x) != null, else IllegalArgumentException.
+	 * @throws IOException if the log could not be written, now or by an earlier change. The split may then be lost on a crash.
+	 */
+	public AVLTree split(int x) throws IOException { // O(logn) plus a share of a force
+		long sequence;
+		AVLTree[] parts;
+		synchronized (this) {
+			checkLog();
+			if (!this.tree.range(x, x).hasNext()) {
+				throw new IllegalArgumentException("Key " + x + " is not in the tree");
+			}
+			sequence = endRecord(startRecord(SPLIT, x, 0));
+			parts = this.tree.split(x);
+			this.tree = parts[0];
+		}
+		commit(sequence);
+		return parts[1];
+	}
+
+	private void checkLog() throws IOException { // Called holding this
+		if (this.log == null) {
+			throw new IOException("The tree is closed");
+		}
+		if (this.failure != null) {
+			throw new IOException("The log failed, later changes are not durable", this.failure);
+		}
+	}
+
+	private ByteBuffer startRecord(byte type, int k, int bodyBytes) { // Makes room for a record in pending and puts its type and key after the header. Called holding this
+		int length = 8 + 5 + bodyBytes;
+		if (this.pending.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * this.pending.capacity(), this.pending.position() + length));
+			this.pending.flip();
+			grown.put(this.pending);
+			this.pending = grown;
+		}
+		this.recordStart = this.pending.position();
+		this.pending.position(this.recordStart + 8);
+		return this.pending.put(type).putInt(k);
+	}
+
+	private long endRecord(ByteBuffer record) { // Fills in the header of the record startRecord began, returns its sequence number. Called holding this
+		int body = this.recordStart + 8;
+		int length = record.position() - body;
+		this.crc.reset();
+		this.crc.update(record.array(), body, length);
+		record.putInt(this.recordStart, length);
+		record.putInt(this.recordStart + 4, (int) this.crc.getValue());
+		return ++this.appended;
+	}
+
+	private static byte[] utf8(String info) {
+		return info != null ? info.getBytes(StandardCharsets.UTF_8) : new byte[0];
+	}
+
+	private static void putString(ByteBuffer record, byte[] bytes, String info) { // The UTF-8 length, -1 for null, then the bytes
+		record.putInt(info != null ? bytes.length : -1);
+		record.put(bytes);
+	}
+
+	private static String getString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String info = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return info;
+	}
+
+	private void commit(long sequence) throws IOException { // Returns once the record numbered sequence is on disk, forcing it and all records before it if no other thread is. O(batch)
+		ByteBuffer batch;
+		long last;
+		synchronized (this) {
+			boolean interrupted = false;
+			while (this.durable < sequence && this.forcing && this.failure == null) { // Another thread forces a batch, ours may be in it or in the next one
+				try {
+					wait();
+				} catch (InterruptedException e) { // Keep waiting, the change is already applied and must be acknowledged only once durable
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.durable >= sequence) {
+				return;
+			}
+			checkLog();
+			this.forcing = true;
+			batch = this.pending; // Everything queued so far goes into this force
+			this.pending = this.spare;
+			this.spare = batch;
+			last = this.appended;
+		}
+		IOException error = null;
+		try {
+			batch.flip();
+			writeBatch(batch);
+		} catch (IOException e) {
+			error = e;
+		}
+		synchronized (this) {
+			batch.clear();
+			this.forcing = false;
+			if (error == null) {
+				this.durable = Math.max(this.durable, last);
+			}
+			else {
+				this.failure = error;
+			}
+			notifyAll();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private void writeBatch(ByteBuffer batch) throws IOException { // Appends batch to the log and forces it. Called by the one thread forcing, or holding this with none. O(batch)
+		boolean interrupted = false;
+		try {
+			while (true) {
+				interrupted |= Thread.interrupted(); // Channel I/O by an interrupted thread closes the channel, so the interrupt is held back until the batch is down
+				try {
+					if (!this.log.isOpen()) { // Interrupted midway in the last round: cut off what it wrote and write the batch again
+						this.log = FileChannel.open(file("log", this.generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+						this.log.truncate(this.logEnd);
+						this.log.position(this.logEnd);
+					}
+					batch.rewind();
+					while (batch.hasRemaining()) {
+						this.log.write(batch);
+					}
+					this.log.force(false);
+					this.logEnd += batch.limit();
+					return;
+				} catch (ClosedByInterruptException e) {
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void awaitForcing() { // Returns once no thread forces a batch. Called holding this
+		boolean interrupted = false;
+		while (this.forcing) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * public synchronized void checkpoint()
+	 *
+	 * Saves the tree as a new snapshot and starts a new, empty log, so the next recovery replays nothing.
+	 * Writers wait for it, readers too, for O(n).
+	 *
+	 * @throws IOException if the snapshot could not be saved. The previous snapshot and log then stay in use.
+	 */
+	public synchronized void checkpoint() throws IOException { // O(n)
+		checkLog();
+		awaitForcing();
+		boolean interrupted = Thread.interrupted(); // As in writeBatch, an interrupt would close the channels midway
+		try {
+			long next = this.generation + 1;
+			Path snapshot = file("snapshot", next);
+			Path temporary = this.directory.resolve(snapshot.getFileName() + ".tmp");
+			AVLTreeSnapshot.write(this.tree, temporary);
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+			forceDirectory(this.directory);
+			FileChannel newLog = createLog(file("log", next)); // From here on, recovery starts from the new snapshot
+			FileChannel oldLog = this.log;
+			this.log = newLog;
+			this.logEnd = 8;
+			this.generation = next;
+			this.pending.clear(); // Queued records are in the snapshot
+			this.durable = this.appended;
+			notifyAll();
+			oldLog.close();
+			deleteOtherGenerations();
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * public synchronized void close()
+	 *
+	 * Forces the records still queued and closes the log. Further changes throw IOException; reads still work.
+	 */
+	public synchronized void close() throws IOException {
+		if (this.log == null) {
+			return;
+		}
+		awaitForcing();
+		try {
+			if (this.failure == null) {
+				this.pending.flip();
+				writeBatch(this.pending);
+				this.pending.clear();
+				this.durable = this.appended;
+				notifyAll();
+			}
+		} finally {
+			this.log.close();
+			this.log = null;
+		}
+	}
+}
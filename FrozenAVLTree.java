@@ -0,0 +1,167 @@
+/**
+ *
+ * FrozenAVLTree
+ *
+ * An immutable snapshot of an AVLTree, made by AVLTree.freeze(), for data that is only read after it is loaded.
+ * The keys sit in one flat int[] in Eytzinger order: the root in slot 1, and the children of slot i in slots 2i and 2i + 1.
+ * A search is then a loop of index arithmetic with no pointers to chase. Its compare picks the next slot without a branch.
+ * The top levels, which every search visits, share a few cache lines, and the 16 slots four levels below slot i are adjacent.
+ * Items are handed out as their slots, like ArrayAVLTree's nodes, with 0 for none.
+ *
+ */
+
+public final class FrozenAVLTree {
+	static final int NONE = 0;
+
+	private final int[] keys; // keys[0] is unused, so that slot i's children are 2i and 2i + 1
+	private final String[] infos; // Parallel to keys
+	private final int size;
+
+	FrozenAVLTree(int[] sortedKeys, String[] sortedInfos) { // O(n)
+		this.size = sortedKeys.length;
+		this.keys = new int[this.size + 1];
+		this.infos = new String[this.size + 1];
+		fill(sortedKeys, sortedInfos, 0, 1);
+	}
+
+	private int fill(int[] sortedKeys, String[] sortedInfos, int next, int slot) { // Fills slot's sub-tree in order from sortedKeys[next], returns the next index. O(size of the sub-tree)
+		if (slot > this.size) {
+			return next;
+		}
+		next = fill(sortedKeys, sortedInfos, next, 2 * slot);
+		this.keys[slot] = sortedKeys[next];
+		this.infos[slot] = sortedInfos[next];
+		return fill(sortedKeys, sortedInfos, next + 1, 2 * slot + 1);
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(1)
+		return this.size == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 */
+	public int size() { // O(1)
+		return this.size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * Returns the info of the item with key k if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	public String search(int k) { // O(logn)
+		int slot = ceiling(k);
+		return slot != NONE && this.keys[slot] == k ? this.infos[slot] : null;
+	}
+
+	/**
+	 * public int ceiling(int k)
+	 *
+	 * Returns the slot of the item with the smallest key >= k, or 0 if there is none.
+	 */
+	public int ceiling(int k) { // O(logn)
+		int[] keys = this.keys;
+		int n = this.size;
+		int slot = 1;
+		while (slot <= n) { // Right on keys < k, left otherwise, always the full depth
+			slot = 2 * slot + (keys[slot] < k ? 1 : 0);
+		}
+		return slot >>> (Integer.numberOfTrailingZeros(~slot) + 1); // Undoes the right turns after the last left one, and that one: its slot is the answer
+	}
+
+	/**
+	 * public int floor(int k)
+	 *
+	 * Returns the slot of the item with the largest key <= k, or 0 if there is none.
+	 */
+	public int floor(int k) { // O(logn)
+		int[] keys = this.keys;
+		int n = this.size;
+		int slot = 1;
+		while (slot <= n) { // Right on keys <= k, left otherwise
+			slot = 2 * slot + (keys[slot] <= k ? 1 : 0);
+		}
+		return slot >>> (Integer.numberOfTrailingZeros(slot) + 1); // Symmetrically, back to the last right turn
+	}
+
+	/**
+	 * public int getKey(int slot)
+	 *
+	 * Returns the key of the item in slot, a slot given by floor or ceiling.
+	 *
+	 * precondition: 1 <= slot <= size(), else IllegalArgumentException.
+	 */
+	public int getKey(int slot) { // O(1)
+		return this.keys[checkSlot(slot)];
+	}
+
+	/**
+	 * public String getInfo(int slot)
+	 *
+	 * Returns the info of the item in slot, a slot given by floor or ceiling.
+	 *
+	 * precondition: 1 <= slot <= size(), else IllegalArgumentException.
+	 */
+	public String getInfo(int slot) { // O(1)
+		return this.infos[checkSlot(slot)];
+	}
+
+	private int checkSlot(int slot) { // O(1)
+		if (slot < 1 || slot > this.size) {
+			throw new IllegalArgumentException("Slot " + slot + " is not in 1.." + this.size);
+		}
+		return slot;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() { // O(n)
+		int[] array = new int[this.size];
+		keysToArrayRec(1, array, 0);
+		return array;
+	}
+
+	private int keysToArrayRec(int slot, int[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (slot > this.size) {
+			return index;
+		}
+		index = keysToArrayRec(2 * slot, array, index);
+		array[index++] = this.keys[slot];
+		return keysToArrayRec(2 * slot + 1, array, index);
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() { // O(n)
+		String[] array = new String[this.size];
+		infoToArrayRec(1, array, 0);
+		return array;
+	}
+
+	private int infoToArrayRec(int slot, String[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (slot > this.size) {
+			return index;
+		}
+		index = infoToArrayRec(2 * slot, array, index);
+		array[index++] = this.infos[slot];
+		return infoToArrayRec(2 * slot + 1, array, index);
+	}
+}
@@ -0,0 +1,685 @@
+/**
+ *
+ * IndexedAVLTree
+ *
+ * The engine shared by ArrayAVLTree and MappedAVLTree: an AVL tree with distinct integer keys and info and parent links,
+ * whose nodes are int indices into a NodeStore, with index 0 as the external leaf EXT.
+ * ArrayAVLTree keeps its nodes in parallel arrays, MappedAVLTree in memory-mapped files.
+ * The algorithms here only go through the store's getters and setters, so they are written once for both.
+ *
+ */
+
+abstract class IndexedAVLTree<S extends IndexedAVLTree.NodeStore> {
+	static final int EXT = 0;
+
+	final S store;
+	int root;
+	private int min;
+	private int max;
+
+	IndexedAVLTree(S store, int root) { // A tree over a detached sub-tree of store. O(logn)
+		this.store = store;
+		this.root = root;
+		updateTreeFields();
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(1)
+		return this.root == EXT;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * Returns the info of an item with key k if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	public String search(int k) { // O(logn)
+		int node = find(k);
+		return node != EXT ? store.info(node) : null;
+	}
+
+	private int find(int k) { // Returns the node with key k, or EXT if there is none. O(logn)
+		int node = this.root;
+		while (node != EXT) {
+			int key = store.key(node);
+			if (k == key) {
+				return node;
+			}
+			node = k < key ? store.left(node) : store.right(node);
+		}
+		return EXT;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * Inserts an item with key k and info i to the AVL tree.
+	 * Returns the number of re-balancing operations (promotions, demotions and rotations, each counted as one),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) { // O(logn)
+		int parent = EXT;
+		int node = this.root;
+		while (node != EXT) { // Look for the parent of the new leaf
+			int key = store.key(node);
+			if (k == key) {
+				return -1;
+			}
+			parent = node;
+			node = k < key ? store.left(node) : store.right(node);
+		}
+		store.modify();
+		int leaf = store.allocate(k, i);
+		if (parent == EXT) {
+			this.root = leaf;
+			this.min = leaf;
+			this.max = leaf;
+			return 0;
+		}
+		if (k < store.key(parent)) {
+			store.setLeft(parent, leaf);
+		} else {
+			store.setRight(parent, leaf);
+		}
+		store.setParent(leaf, parent);
+		for (int p = parent; p != EXT; p = store.parent(p)) { // The new leaf is in all of these sub-trees
+			store.setSize(p, store.size(p) + 1);
+		}
+		if (k < store.key(this.min)) {
+			this.min = leaf;
+		}
+		if (k > store.key(this.max)) {
+			this.max = leaf;
+		}
+		return rebalanceInsert(leaf);
+	}
+
+	private int rebalanceInsert(int node) { // Rebalances from node, whose rank just went up, towards the root. O(logn)
+		int numOfOps = 0;
+		int parent = store.parent(node);
+		while (parent != EXT && store.rank(parent) == store.rank(node)) { // parent is a (0,x) node
+			boolean isLeft = store.left(parent) == node;
+			int sibling = isLeft ? store.right(parent) : store.left(parent);
+			if (store.rank(parent) - store.rank(sibling) == 1) { // (0,1): promote and go up
+				store.setRank(parent, store.rank(parent) + 1);
+				numOfOps++;
+				node = parent;
+				parent = store.parent(node);
+				continue;
+			}
+			// (0,2): rotate. Which rotation depends on node's own rank differences
+			int outer = isLeft ? store.left(node) : store.right(node);
+			int inner = isLeft ? store.right(node) : store.left(node);
+			int outerRD = store.rank(node) - store.rank(outer);
+			int innerRD = store.rank(node) - store.rank(inner);
+			if (outerRD == 1 && innerRD == 2) { // Single rotation, the sub-tree gets its old rank back
+				rotateUp(node);
+				store.setRank(parent, store.rank(parent) - 1);
+				return numOfOps + 2;
+			} else if (outerRD == 2 && innerRD == 1) { // Double rotation through inner
+				rotateUp(inner);
+				rotateUp(inner);
+				store.setRank(inner, store.rank(inner) + 1);
+				store.setRank(node, store.rank(node) - 1);
+				store.setRank(parent, store.rank(parent) - 1);
+				return numOfOps + 5;
+			} else { // (1,1), only possible after join: single rotation, and the sub-tree grew
+				rotateUp(node);
+				store.setRank(node, store.rank(node) + 1);
+				numOfOps += 2;
+				parent = store.parent(node);
+			}
+		}
+		return numOfOps;
+	}
+
+	private void rotateUp(int node) { // Rotates node above its parent, keeping sizes. Ranks are up to the caller. O(1)
+		int parent = store.parent(node);
+		int grandparent = store.parent(parent);
+		if (store.left(parent) == node) { // Right rotation
+			int middle = store.right(node);
+			store.setLeft(parent, middle);
+			if (middle != EXT) {
+				store.setParent(middle, parent);
+			}
+			store.setRight(node, parent);
+		} else { // Left rotation
+			int middle = store.left(node);
+			store.setRight(parent, middle);
+			if (middle != EXT) {
+				store.setParent(middle, parent);
+			}
+			store.setLeft(node, parent);
+		}
+		store.setParent(parent, node);
+		store.setParent(node, grandparent);
+		if (grandparent == EXT) {
+			if (this.root == parent) {
+				this.root = node;
+			}
+		} else if (store.left(grandparent) == parent) {
+			store.setLeft(grandparent, node);
+		} else {
+			store.setRight(grandparent, node);
+		}
+		updateSize(parent);
+		updateSize(node);
+	}
+
+	private void updateSize(int node) { // O(1)
+		store.setSize(node, store.size(store.left(node)) + store.size(store.right(node)) + 1);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * Deletes an item with key k from the binary tree, if it is there.
+	 * Returns the number of re-balancing operations (promotions, demotions and rotations, each counted as one),
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) { // O(logn)
+		int node = find(k);
+		if (node == EXT) {
+			return -1;
+		}
+		store.modify();
+		if (store.left(node) != EXT && store.right(node) != EXT) { // Binary: trade places with the successor, which leaves node with at most one child
+			swapWithSuccessor(node, leftmost(store.right(node)));
+		}
+		int child = store.left(node) != EXT ? store.left(node) : store.right(node);
+		int parent = store.parent(node);
+		if (parent == EXT) {
+			this.root = child;
+		} else if (store.left(parent) == node) {
+			store.setLeft(parent, child);
+		} else {
+			store.setRight(parent, child);
+		}
+		if (child != EXT) {
+			store.setParent(child, parent);
+		}
+		for (int p = parent; p != EXT; p = store.parent(p)) {
+			store.setSize(p, store.size(p) - 1);
+		}
+		boolean wasMin = this.min == node;
+		boolean wasMax = this.max == node;
+		store.free(node);
+		int numOfOps = rebalanceDelete(child, parent);
+		if (wasMin) {
+			this.min = this.root != EXT ? leftmost(this.root) : EXT;
+		}
+		if (wasMax) {
+			this.max = this.root != EXT ? rightmost(this.root) : EXT;
+		}
+		return numOfOps;
+	}
+
+	private void swapWithSuccessor(int node, int successor) { // Moves successor into binary node's place and node into successor's, with the ranks and sizes of the places. Items stay in their records. O(1)
+		int parent = store.parent(node);
+		int right = store.right(node);
+		int successorParent = store.parent(successor);
+		int successorRight = store.right(successor);
+		int rank = store.rank(node);
+		store.setRank(node, store.rank(successor));
+		store.setRank(successor, rank);
+		int size = store.size(node);
+		store.setSize(node, store.size(successor));
+		store.setSize(successor, size);
+		if (parent == EXT) {
+			this.root = successor;
+		} else if (store.left(parent) == node) {
+			store.setLeft(parent, successor);
+		} else {
+			store.setRight(parent, successor);
+		}
+		store.setParent(successor, parent);
+		store.setLeft(successor, store.left(node));
+		store.setParent(store.left(node), successor);
+		store.setLeft(node, EXT);
+		store.setRight(node, successorRight);
+		if (successorRight != EXT) {
+			store.setParent(successorRight, node);
+		}
+		if (right == successor) {
+			store.setRight(successor, node);
+			store.setParent(node, successor);
+		} else {
+			store.setRight(successor, right);
+			store.setParent(right, successor);
+			store.setLeft(successorParent, node);
+			store.setParent(node, successorParent);
+		}
+	}
+
+	private int rebalanceDelete(int node, int parent) { // Rebalances from node, whose rank just went down, towards the root. node may be EXT. O(logn)
+		int numOfOps = 0;
+		while (parent != EXT) {
+			boolean isLeft = store.left(parent) == node;
+			int sibling = isLeft ? store.right(parent) : store.left(parent);
+			int nodeRD = store.rank(parent) - store.rank(node);
+			int siblingRD = store.rank(parent) - store.rank(sibling);
+			if (nodeRD == 2 && siblingRD == 2) { // (2,2): demote and go up
+				store.setRank(parent, store.rank(parent) - 1);
+				numOfOps++;
+			} else if (nodeRD == 3) { // (3,1): rotate the sibling up
+				int outer = isLeft ? store.right(sibling) : store.left(sibling);
+				int inner = isLeft ? store.left(sibling) : store.right(sibling);
+				int outerRD = store.rank(sibling) - store.rank(outer);
+				int innerRD = store.rank(sibling) - store.rank(inner);
+				if (outerRD == 1 && innerRD == 1) { // The sub-tree keeps its rank, done
+					rotateUp(sibling);
+					store.setRank(parent, store.rank(parent) - 1);
+					store.setRank(sibling, store.rank(sibling) + 1);
+					return numOfOps + 3;
+				} else if (outerRD == 1) { // (1,2): single rotation, the sub-tree lost a rank
+					rotateUp(sibling);
+					store.setRank(parent, store.rank(parent) - 2);
+					numOfOps += 3;
+					parent = sibling;
+				} else { // (2,1): double rotation through inner, the sub-tree lost a rank
+					rotateUp(inner);
+					rotateUp(inner);
+					store.setRank(parent, store.rank(parent) - 2);
+					store.setRank(sibling, store.rank(sibling) - 1);
+					store.setRank(inner, store.rank(inner) + 1);
+					numOfOps += 6;
+					parent = inner;
+				}
+			} else { // Legal again
+				return numOfOps;
+			}
+			node = parent;
+			parent = store.parent(node);
+		}
+		return numOfOps;
+	}
+
+	private int leftmost(int node) { // O(logn)
+		while (store.left(node) != EXT) {
+			node = store.left(node);
+		}
+		return node;
+	}
+
+	private int rightmost(int node) { // O(logn)
+		while (store.right(node) != EXT) {
+			node = store.right(node);
+		}
+		return node;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public String min() { // O(1)
+		return !empty() ? store.info(this.min) : null;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public String max() { // O(1)
+		return !empty() ? store.info(this.max) : null;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() { // O(n)
+		int[] array = new int[size()];
+		inOrder(array, null);
+		return array;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() { // O(n)
+		String[] array = new String[size()];
+		inOrder(null, array);
+		return array;
+	}
+
+	private void inOrder(int[] keysOut, String[] infosOut) { // In-order walk with an explicit stack, which reads less per node than following parent links. O(n)
+		int[] stack = new int[store.rank(this.root) + 2]; // A path is never longer than the root's rank
+		int depth = 0;
+		int index = 0;
+		int node = this.root;
+		while (node != EXT || depth > 0) {
+			while (node != EXT) {
+				stack[depth++] = node;
+				node = store.left(node);
+			}
+			node = stack[--depth];
+			if (keysOut != null) {
+				keysOut[index] = store.key(node);
+			} else {
+				infosOut[index] = store.info(node);
+			}
+			index++;
+			node = store.right(node);
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() { // O(1)
+		return store.size(this.root);
+	}
+
+	/**
+	 * public AVLTree.IAVLNode getRoot()
+	 *
+	 * Returns a read-only view of the root node, or null if the tree is empty.
+	 */
+	public AVLTree.IAVLNode getRoot() { // O(1)
+		return !empty() ? new NodeView(this.root) : null;
+	}
+
+	final int[] splitRoots(int x) { // Splits the tree around x, leaving it empty. Returns the roots {keys < x, keys > x}, or null if x is not in the tree. O(logn)
+		int node = find(x);
+		if (node == EXT) {
+			return null;
+		}
+		store.modify();
+		int small = detach(store.left(node));
+		int big = detach(store.right(node));
+		int child = node;
+		int parent = store.parent(node);
+		store.free(node);
+		while (parent != EXT) {
+			int grandparent = store.parent(parent);
+			boolean fromRight = store.right(parent) == child;
+			child = parent;
+			if (fromRight) { // parent and its left sub-tree are smaller than x
+				int sub = detach(store.left(parent));
+				small = joinNodes(sub, parent, small);
+			} else {
+				int sub = detach(store.right(parent));
+				big = joinNodes(big, parent, sub);
+			}
+			parent = grandparent;
+		}
+		this.root = EXT;
+		this.min = EXT;
+		this.max = EXT;
+		return new int[]{small, big};
+	}
+
+	private int detach(int node) { // Cuts node from its parent and returns it as a root. O(1)
+		if (node != EXT) {
+			store.setParent(node, EXT);
+		}
+		return node;
+	}
+
+	final int joinTree(AVLTree.IAVLNode x, IndexedAVLTree<?> t) { // Joins t and x into this tree and empties t. t may be null. Returns |rank(this) - rank(t)| + 1. O(|rank(this) - rank(t)| + 1), or O(|t|) if t is in another store
+		store.modify();
+		int other = EXT;
+		if (t != null) {
+			other = t.store == this.store ? t.root : copyFrom(t);
+		}
+		int complexity = Math.abs(store.rank(this.root) - store.rank(other)) + 1;
+		int middle = store.allocate(x.getKey(), x.getValue());
+		boolean otherIsSmaller = other != EXT ? store.key(other) < x.getKey() : this.root == EXT || store.key(this.root) > x.getKey();
+		this.root = otherIsSmaller ? joinNodes(other, middle, this.root) : joinNodes(this.root, middle, other);
+		updateTreeFields();
+		if (t != null) {
+			t.root = EXT;
+			t.min = EXT;
+			t.max = EXT;
+		}
+		return complexity;
+	}
+
+	private int copyFrom(IndexedAVLTree<?> t) { // Copies t's items into this store as a detached balanced sub-tree. O(|t|)
+		int[] keys = t.keysToArray();
+		String[] infos = t.infoToArray();
+		return buildBalanced(keys, infos, 0, keys.length - 1, EXT);
+	}
+
+	private int buildBalanced(int[] keys, String[] infos, int lo, int hi, int parent) { // O(hi - lo)
+		if (lo > hi) {
+			return EXT;
+		}
+		int mid = (lo + hi) >>> 1;
+		int node = store.allocate(keys[mid], infos[mid]);
+		int l = buildBalanced(keys, infos, lo, mid - 1, node);
+		int r = buildBalanced(keys, infos, mid + 1, hi, node);
+		store.setLeft(node, l);
+		store.setRight(node, r);
+		store.setParent(node, parent);
+		store.setRank(node, Math.max(store.rank(l), store.rank(r)) + 1);
+		updateSize(node);
+		return node;
+	}
+
+	private int joinNodes(int small, int middle, int big) { // Joins two detached sub-trees through the detached node middle, returns the new root. O(|rank(small) - rank(big)| + 1)
+		int savedRoot = this.root;
+		int top;
+		if (store.rank(small) > store.rank(big) + 1) { // Walk down small's right spine to big's rank
+			int parent = EXT;
+			int node = small;
+			while (store.rank(node) > store.rank(big) + 1) { // May end on EXT, whose parent link is never set, so parent is tracked here
+				parent = node;
+				node = store.right(node);
+			}
+			store.setLeft(middle, node);
+			store.setRight(middle, big);
+			store.setRank(middle, store.rank(node) + 1);
+			attach(middle, node, big, parent, false);
+			top = small;
+		} else if (store.rank(big) > store.rank(small) + 1) { // Symmetrical: walk down big's left spine
+			int parent = EXT;
+			int node = big;
+			while (store.rank(node) > store.rank(small) + 1) { // May end on EXT, whose parent link is never set, so parent is tracked here
+				parent = node;
+				node = store.left(node);
+			}
+			store.setLeft(middle, small);
+			store.setRight(middle, node);
+			store.setRank(middle, store.rank(node) + 1);
+			attach(middle, small, node, parent, true);
+			top = big;
+		} else { // Ranks are close enough for middle to be the root
+			store.setLeft(middle, small);
+			store.setRight(middle, big);
+			store.setRank(middle, Math.max(store.rank(small), store.rank(big)) + 1);
+			attach(middle, small, big, EXT, false);
+			return middle;
+		}
+		this.root = top; // rotateUp tracks the root through this.root, borrow it for the duration of the join
+		rebalanceInsert(middle);
+		top = this.root;
+		this.root = savedRoot;
+		return top;
+	}
+
+	private void attach(int middle, int l, int r, int parent, boolean asLeft) { // Hangs middle over l and r, below parent, and fixes sizes up the spine. O(depth)
+		if (l != EXT) {
+			store.setParent(l, middle);
+		}
+		if (r != EXT) {
+			store.setParent(r, middle);
+		}
+		store.setParent(middle, parent);
+		updateSize(middle);
+		if (parent != EXT) {
+			if (asLeft) {
+				store.setLeft(parent, middle);
+			} else {
+				store.setRight(parent, middle);
+			}
+			for (int p = parent; p != EXT; p = store.parent(p)) {
+				updateSize(p);
+			}
+		}
+	}
+
+	private void updateTreeFields() { // O(logn)
+		this.min = this.root != EXT ? leftmost(this.root) : EXT;
+		this.max = this.root != EXT ? rightmost(this.root) : EXT;
+	}
+
+	/**
+	 * interface NodeStore
+	 *
+	 * Where the nodes of one or more trees live. Node 0 is EXT: rank -1, size 0, and its links are never written.
+	 * Getters and setters are O(1); info may decode a String.
+	 * An item stays in the node allocate gave it until that node is freed; MappedAVLTree's crash recovery relies on it.
+	 */
+	interface NodeStore {
+		int key(int node);
+
+		String info(int node);
+
+		int left(int node);
+
+		int right(int node);
+
+		int parent(int node);
+
+		int size(int node);
+
+		int rank(int node);
+
+		void setLeft(int node, int left);
+
+		void setRight(int node, int right);
+
+		void setParent(int node, int parent);
+
+		void setSize(int node, int size);
+
+		void setRank(int node, int rank);
+
+		int allocate(int key, String info); // Returns a detached leaf
+
+		void free(int node);
+
+		void modify(); // Called before the first change of every update
+	}
+
+	/**
+	 * public class NodeView
+	 *
+	 * A read-only IAVLNode over one node of this tree's store, for code written against AVLTree nodes.
+	 * Views are created on demand and are only valid until the tree is next modified.
+	 */
+	public class NodeView implements AVLTree.IAVLNode {
+		private final int node;
+
+		NodeView(int node) {
+			this.node = node;
+		}
+
+		public int getKey() { // -1 for EXT. O(1)
+			return node != EXT ? store.key(node) : -1;
+		}
+
+		public String getValue() { // O(1), or O(|info|) where the store decodes it
+			return node != EXT ? store.info(node) : null;
+		}
+
+		public void setLeft(AVLTree.IAVLNode node) {
+			throw readOnly();
+		}
+
+		public AVLTree.IAVLNode getLeft() { // null for EXT. O(1)
+			return node != EXT ? new NodeView(store.left(node)) : null;
+		}
+
+		public void setRight(AVLTree.IAVLNode node) {
+			throw readOnly();
+		}
+
+		public AVLTree.IAVLNode getRight() { // null for EXT. O(1)
+			return node != EXT ? new NodeView(store.right(node)) : null;
+		}
+
+		public void setParent(AVLTree.IAVLNode node) {
+			throw readOnly();
+		}
+
+		public AVLTree.IAVLNode getParent() { // null for the root. O(1)
+			return node != EXT && store.parent(node) != EXT ? new NodeView(store.parent(node)) : null;
+		}
+
+		public boolean isRealNode() { // O(1)
+			return node != EXT;
+		}
+
+		public void setHeight(int height) {
+			throw readOnly();
+		}
+
+		public int getHeight() { // O(1)
+			return store.rank(node);
+		}
+
+		public void updateRankDifference(int[] insertedRankDifference) { // Rank differences are derived from the ranks. O(1)
+		}
+
+		public int[] getRankDifference() { // O(1)
+			return node != EXT ? new int[]{store.rank(node) - store.rank(store.left(node)), store.rank(node) - store.rank(store.right(node))} : new int[2];
+		}
+
+		public void updateSize() { // Sizes are always up to date. O(1)
+		}
+
+		public int getSize() { // O(1)
+			return store.size(node);
+		}
+
+		public void updateMin() { // Nothing is cached. O(1)
+		}
+
+		public AVLTree.IAVLNode getMin() { // O(logn)
+			return node != EXT ? new NodeView(leftmost(node)) : this;
+		}
+
+		public void updateMax() { // Nothing is cached. O(1)
+		}
+
+		public AVLTree.IAVLNode getMax() { // O(logn)
+			return node != EXT ? new NodeView(rightmost(node)) : this;
+		}
+
+		public boolean equals(Object o) { // Views of the same node are the same node
+			return o instanceof IndexedAVLTree.NodeView && ((IndexedAVLTree<?>.NodeView) o).node == node && ((IndexedAVLTree<?>.NodeView) o).owner() == owner();
+		}
+
+		public int hashCode() {
+			return node;
+		}
+
+		private IndexedAVLTree<S> owner() {
+			return IndexedAVLTree.this;
+		}
+
+		private UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException(owner().getClass().getSimpleName() + " nodes are read-only");
+		}
+	}
+}
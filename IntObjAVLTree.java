@@ -0,0 +1,174 @@
+/**
+ *
+ * IntObjAVLTree
+ *
+ * An AVL tree with distinct int keys, kept unboxed, and values of any type V.
+ * Any int is a valid key: the external leaf is a single sentinel node told apart by identity.
+ * Nodes keep no parent pointers; updates walk down recursively and fix ranks and sizes on the way back up, in RecursiveAVLTree.
+ *
+ */
+
+public class IntObjAVLTree<V> extends RecursiveAVLTree<IntObjAVLTree.Node> {
+	private static final Node EXT = new Node(0, null, -1, 0);
+
+	public IntObjAVLTree() { // Default constructor, will produce an empty tree.
+		super(EXT, EXT);
+	}
+
+	/**
+	 * public V search(int k)
+	 *
+	 * Returns the value of an item with key k if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V search(int k) { // O(logn)
+		Node node = this.root;
+		while (node != EXT) {
+			if (k == node.key) {
+				return (V) node.info;
+			}
+			node = k < node.key ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, V v)
+	 *
+	 * Inserts an item with key k and value v to the tree.
+	 * Returns the number of re-balancing operations (rank changes, and rotations, a double rotation counting as 2),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, V v) { // O(logn)
+		this.found = false;
+		this.rebalances = 0;
+		this.root = insert(this.root, k, v);
+		return this.found ? -1 : this.rebalances;
+	}
+
+	private Node insert(Node node, int k, V v) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			return added(new Node(k, v, 0, 1));
+		}
+		if (k == node.key) {
+			this.found = true;
+			return node;
+		}
+		if (k < node.key) {
+			node.left = insert(node.left, k, v);
+		}
+		else {
+			node.right = insert(node.right, k, v);
+		}
+		return this.found ? node : fix(node);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * Deletes the item with key k from the tree, if it is there.
+	 * Returns the number of re-balancing operations, counted as in insert,
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) { // O(logn)
+		this.found = false;
+		this.rebalances = 0;
+		this.root = delete(this.root, k);
+		if (!this.found) {
+			return -1;
+		}
+		findEnds();
+		return this.rebalances;
+	}
+
+	private Node delete(Node node, int k) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			return node;
+		}
+		if (k < node.key) {
+			node.left = delete(node.left, k);
+		}
+		else if (k > node.key) {
+			node.right = delete(node.right, k);
+		}
+		else {
+			return unlink(node);
+		}
+		return this.found ? fix(node) : node;
+	}
+
+	int compareKeys(Node a, Node b) { // O(1)
+		return Integer.compare(a.key, b.key);
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the value of the item with the smallest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V min() { // O(1)
+		return (V) this.min.info;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the value of the item with the largest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V max() { // O(1)
+		return (V) this.max.info;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() { // O(n)
+		int[] array = new int[size()];
+		keysToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	private static int keysToArrayRec(Node node, int[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == EXT) {
+			return index;
+		}
+		index = keysToArrayRec(node.left, array, index);
+		array[index++] = node.key;
+		return keysToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * public Object[] infoToArray()
+	 *
+	 * Returns an array which contains all values in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public Object[] infoToArray() { // O(n)
+		Object[] array = new Object[size()];
+		infoToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	/**
+	 * static class Node
+	 *
+	 * A RecursiveAVLTree node with an int key. EXT is the only node with rank -1.
+	 */
+	static final class Node extends RecursiveAVLTree.Node<Node> {
+		private final int key;
+
+		Node(int key, Object info, int rank, int size) {
+			super(info, EXT, rank, size);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * IntervalAVLTree
+ *
+ * An AVL tree of closed intervals [start, end] with info, keyed by their distinct start points.
+ * Every node also keeps the largest end point in its sub-tree, recomputed wherever its rank and size are:
+ * on the way back up an insert or delete, in rotations, and in join and split. That lets a search for the intervals
+ * overlapping a point or an interval skip every sub-tree whose largest end is before it.
+ * Nodes keep no parent pointers; updates walk down recursively and fix the nodes on the way back up, in RecursiveAVLTree,
+ * whose fix, rotations and join recompute the largest end through Interval.update.
+ *
+ */
+
+public class IntervalAVLTree extends RecursiveAVLTree<IntervalAVLTree.Interval> {
+	private static final Interval EXT = new Interval(0, Integer.MIN_VALUE, null, -1, 0);
+
+	public IntervalAVLTree() { // Default constructor, will produce an empty tree.
+		super(EXT, EXT);
+	}
+
+	private IntervalAVLTree(Interval root) {
+		super(EXT, root);
+	}
+
+	/**
+	 * public Interval search(int start)
+	 *
+	 * Returns the interval starting at start if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	public Interval search(int start) { // O(logn)
+		Interval node = this.root;
+		while (node != EXT) {
+			if (start == node.start) {
+				return node;
+			}
+			node = start < node.start ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int start, int end, String info)
+	 *
+	 * Inserts the interval [start, end] with info to the tree.
+	 * Returns the number of re-balancing operations (rank changes, and rotations, a double rotation counting as 2),
+	 * or -1 if an interval starting at start already exists in the tree.
+	 *
+	 * precondition: start <= end, else IllegalArgumentException.
+	 */
+	public int insert(int start, int end, String info) { // O(logn)
+		if (start > end) {
+			throw new IllegalArgumentException("Interval [" + start + ", " + end + "] ends before it starts");
+		}
+		this.found = false;
+		this.rebalances = 0;
+		this.root = insert(this.root, new Interval(start, end, info, 0, 1));
+		return this.found ? -1 : this.rebalances;
+	}
+
+	private Interval insert(Interval node, Interval interval) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			return added(interval);
+		}
+		if (interval.start == node.start) {
+			this.found = true;
+			return node;
+		}
+		if (interval.start < node.start) {
+			node.left = insert(node.left, interval);
+		}
+		else {
+			node.right = insert(node.right, interval);
+		}
+		return this.found ? node : fix(node);
+	}
+
+	/**
+	 * public int delete(int start)
+	 *
+	 * Deletes the interval starting at start from the tree, if it is there.
+	 * Returns the number of re-balancing operations, counted as in insert,
+	 * or -1 if no interval starts at start.
+	 */
+	public int delete(int start) { // O(logn)
+		this.found = false;
+		this.rebalances = 0;
+		this.root = delete(this.root, start);
+		if (!this.found) {
+			return -1;
+		}
+		findEnds();
+		return this.rebalances;
+	}
+
+	private Interval delete(Interval node, int start) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			return node;
+		}
+		if (start < node.start) {
+			node.left = delete(node.left, start);
+		}
+		else if (start > node.start) {
+			node.right = delete(node.right, start);
+		}
+		else {
+			return unlink(node);
+		}
+		return this.found ? fix(node) : node;
+	}
+
+	int compareKeys(Interval a, Interval b) { // O(1)
+		return Integer.compare(a.start, b.start);
+	}
+
+	/**
+	 * public List<Interval> overlapping(int point)
+	 *
+	 * Returns the intervals that contain point, in increasing start order.
+	 */
+	public List<Interval> overlapping(int point) { // O(logn + klog(n/k + 1)) for k intervals found
+		return overlapping(point, point);
+	}
+
+	/**
+	 * public List<Interval> overlapping(int lo, int hi)
+	 *
+	 * Returns the intervals that share at least one point with [lo, hi], in increasing start order,
+	 * or an empty list if lo > hi.
+	 * The walk visits the path to hi, then in the sub-trees left of it only the nodes above a result: the union of k
+	 * root-to-node paths, O(klog(n/k + 1)) nodes. That is not O(logn + k), which needs a heap on the end points
+	 * (a priority search tree) rather than a largest end per sub-tree.
+	 */
+	public List<Interval> overlapping(int lo, int hi) { // O(logn + klog(n/k + 1)) for k intervals found
+		List<Interval> result = new ArrayList<>();
+		if (lo <= hi) {
+			overlapping(this.root, lo, hi, result);
+		}
+		return result;
+	}
+
+	private static void overlapping(Interval node, int lo, int hi, List<Interval> result) { // Travels in order, skipping sub-trees that end before lo and those that start after hi. O(logn + klog(n/k + 1))
+		if (node == EXT || node.maxEnd < lo) {
+			return;
+		}
+		overlapping(node.left, lo, hi, result);
+		if (node.start > hi) { // So does everything on the right
+			return;
+		}
+		if (node.end >= lo) {
+			result.add(node);
+		}
+		overlapping(node.right, lo, hi, result);
+	}
+
+	/**
+	 * public int maxEnd()
+	 *
+	 * Returns the largest end point in the tree, or Integer.MIN_VALUE if the tree is empty.
+	 */
+	public int maxEnd() { // O(1)
+		return this.root.maxEnd;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all start points in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() { // O(n)
+		int[] array = new int[size()];
+		keysToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	private static int keysToArrayRec(Interval node, int[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == EXT) {
+			return index;
+		}
+		index = keysToArrayRec(node.left, array, index);
+		array[index++] = node.start;
+		return keysToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective start points,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() { // O(n)
+		String[] array = new String[size()];
+		infoToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	/**
+	 * public IntervalAVLTree[] split(int x)
+	 *
+	 * Returns an array [t1, t2] with two trees. starts(t1) < x < starts(t2).
+	 * The interval starting at x, if there is one, goes to neither. This tree is left empty.
+	 */
+	public IntervalAVLTree[] split(int x) { // O(logn)
+		Interval[] parts = split(this.root, x);
+		this.root = EXT;
+		this.min = EXT;
+		this.max = EXT;
+		return new IntervalAVLTree[]{new IntervalAVLTree(parts[0]), new IntervalAVLTree(parts[1])};
+	}
+
+	private Interval[] split(Interval node, int x) { // Returns {starts < x, starts > x}. O(logn)
+		if (node == EXT) {
+			return new Interval[]{EXT, EXT};
+		}
+		Interval left = node.left;
+		Interval right = node.right;
+		if (x == node.start) {
+			return new Interval[]{left, right};
+		}
+		if (x < node.start) {
+			Interval[] parts = split(left, x);
+			parts[1] = join(parts[1], node, right);
+			return parts;
+		}
+		Interval[] parts = split(right, x);
+		parts[0] = join(left, node, parts[0]);
+		return parts;
+	}
+
+	/**
+	 * public int join(int start, int end, String info, IntervalAVLTree t)
+	 *
+	 * Joins t and the interval [start, end] with info to this tree, which then holds all of them. t is left empty.
+	 * Returns the number of re-balancing operations, counted as in insert.
+	 *
+	 * precondition: starts(t) < start < starts() or starts(t) > start > starts(), and start <= end, else IllegalArgumentException.
+	 * t/tree might be empty.
+	 */
+	public int join(int start, int end, String info, IntervalAVLTree t) { // O(logn) to check the precondition and find min and max, O(|rank(this) - rank(t)| + 1) for the join itself
+		if (start > end) {
+			throw new IllegalArgumentException("Interval [" + start + ", " + end + "] ends before it starts");
+		}
+		Interval other = t != null ? t.root : EXT;
+		boolean otherIsSmaller = other != EXT ? other.start < start : this.root == EXT || this.root.start > start;
+		Interval small = otherIsSmaller ? other : this.root;
+		Interval big = otherIsSmaller ? this.root : other;
+		if ((small != EXT && findMax(small).start >= start) || (big != EXT && findMin(big).start <= start)) {
+			throw new IllegalArgumentException("Start " + start + " does not separate the two trees");
+		}
+		this.rebalances = 0;
+		this.root = join(small, new Interval(start, end, info, 0, 1), big);
+		this.min = findMin(this.root);
+		this.max = findMax(this.root);
+		if (t != null && t != this) {
+			t.root = EXT;
+			t.min = EXT;
+			t.max = EXT;
+		}
+		return this.rebalances;
+	}
+
+	/**
+	 * public static class Interval
+	 *
+	 * An interval and its node: a RecursiveAVLTree node with start, end and the largest end in the sub-tree.
+	 * EXT is the only node with rank -1; its largest end is Integer.MIN_VALUE, so it never overlaps anything.
+	 */
+	public static final class Interval extends RecursiveAVLTree.Node<Interval> {
+		private final int start;
+		private final int end;
+		private int maxEnd;
+
+		Interval(int start, int end, String info, int rank, int size) {
+			super(info, EXT, rank, size);
+			this.start = start;
+			this.end = end;
+			this.maxEnd = end;
+		}
+
+		void update() { // Also the largest end, which max-end searches prune by. O(1)
+			super.update();
+			this.maxEnd = Math.max(this.end, Math.max(this.left.maxEnd, this.right.maxEnd));
+		}
+
+		public int getStart() { // O(1)
+			return this.start;
+		}
+
+		public int getEnd() { // O(1)
+			return this.end;
+		}
+
+		public String getInfo() { // O(1)
+			return (String) this.info;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * LatencyHistogram
+ *
+ * Counts non-negative values (nanoseconds, path lengths) in log-linear buckets, HdrHistogram style:
+ * values below 8 get a bucket each, and every power of two above is cut into 8 equal buckets,
+ * so a reported percentile is at most 12.5% above the true one. 488 buckets cover every long.
+ * Recording is thread-safe and lock-free.
+ *
+ */
+
+public class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS; // Buckets per power of two
+	private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * public void record(long value)
+	 *
+	 * Counts value. Negative values count as 0.
+	 */
+	public void record(long value) { // O(1)
+		value = Math.max(value, 0);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	private static int bucket(long value) { // O(1)
+		if (value < SUB) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS; // value >> exponent is in [SUB, 2 * SUB)
+		return SUB + exponent * SUB + (int) ((value >>> exponent) - SUB);
+	}
+
+	private static long highestInBucket(int bucket) { // The largest value that falls in bucket. O(1)
+		if (bucket < SUB) {
+			return bucket;
+		}
+		int exponent = (bucket - SUB) / SUB;
+		long lowest = (long) (SUB + (bucket - SUB) % SUB) << exponent;
+		return lowest + (1L << exponent) - 1;
+	}
+
+	/**
+	 * public long getCount()
+	 *
+	 * Returns the number of values recorded.
+	 */
+	public long getCount() { // O(1)
+		return count.sum();
+	}
+
+	/**
+	 * public double getMean()
+	 *
+	 * Returns the exact mean of the values recorded, or 0 if there are none.
+	 */
+	public double getMean() { // O(1)
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * public long getMax()
+	 *
+	 * Returns the exact largest value recorded, or 0 if there are none.
+	 */
+	public long getMax() { // O(1)
+		return max.get();
+	}
+
+	/**
+	 * public long getPercentile(double percentile)
+	 *
+	 * Returns a value that at least percentile percent of the recorded values are at or below,
+	 * at most 12.5% above the exact one and never above getMax(). 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) { // O(buckets)
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) {
+			snapshot[b] = counts.get(b);
+			total += snapshot[b];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += snapshot[b];
+			if (seen >= rank) {
+				return Math.min(highestInBucket(b), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * public void reset()
+	 *
+	 * Forgets every value recorded. Values recorded during the reset may be partly kept.
+	 */
+	public void reset() { // O(buckets)
+		for (int b = 0; b < BUCKETS; b++) {
+			counts.set(b, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+}
@@ -0,0 +1,728 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * MappedAVLTree
+ *
+ * The same AVL tree as ArrayAVLTree, with distinct integer keys and info,
+ * but with its nodes kept off-heap in a memory-mapped file, so it survives restarts and its heap usage does not grow with n.
+ * A node is an int index of a fixed size record in the node file, infos are UTF-8 records in a second file next to it.
+ * Opening an existing file only maps it and reads its header; nothing is deserialized. The algorithms are IndexedAVLTree's.
+ *
+ * sync() and close() commit the tree: they force the records, then write its root to one of two header slots, which alternate.
+ * A file whose process or machine died after a change and before the next commit is recovered when reopened:
+ * every record is stamped with the generation it last changed in, so the items of the last commit can be told from the rest,
+ * and their records are rebuilt into a balanced tree. That is O(n log n), and the only time the heap holds O(n).
+ *
+ */
+
+public class MappedAVLTree extends IndexedAVLTree<MappedAVLTree.Store> implements Closeable {
+	private boolean unstored; // Some of its records may be marked as not stored, by a sync while it was split off
+	private boolean tracked; // Listed in store.detached
+
+	/** File constructor
+	 *
+	 * @param path the node file. Infos are kept in path + ".info"
+	 *
+	 * @post The tree stored in path as of its last sync, or an empty tree stored there if path does not exist yet.
+	 * @throws IOException if the files cannot be mapped, or are not tree files.
+	 */
+	public MappedAVLTree(Path path) throws IOException {
+		this(new Store(path));
+	}
+
+	private MappedAVLTree(Store store) {
+		super(store, store.storedRoot());
+		store.owner = this;
+	}
+
+	private MappedAVLTree(Store store, int root) { // A tree over a detached sub-tree of store. O(logn)
+		super(store, root);
+	}
+
+	/**
+	 * public MappedAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * Both trees share this tree's files, which is left empty. If this tree was the one stored in the files,
+	 * t1 is stored in its place; t2 lives in the files only until they are closed, unless it is joined back first.
+	 *
+	 * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
+	 * postcondition: none
+	 */
+	public MappedAVLTree[] split(int x) { // O(logn)
+		int[] roots = splitRoots(x);
+		if (roots == null) { // x wasn't found
+			return null;
+		}
+		MappedAVLTree[] halves = new MappedAVLTree[]{new MappedAVLTree(store, roots[0]), new MappedAVLTree(store, roots[1])};
+		for (MappedAVLTree half : halves) {
+			half.unstored = this.unstored;
+		}
+		if (store.owner == this) {
+			store.owner = halves[0];
+		}
+		store.track(halves[0]);
+		store.track(halves[1]);
+		return halves;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * Inserts an item with key k and info i to the AVL tree, as in IndexedAVLTree.
+	 * A split-off tree that was emptied is walked by sync again once it holds items.
+	 */
+	public int insert(int k, String i) { // O(logn)
+		store.track(this);
+		return super.insert(k, i);
+	}
+
+	/**
+	 * public int join(AVLTree.IAVLNode x, MappedAVLTree t)
+	 *
+	 * joins t and x with the tree. t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * Only x's key and info are used. If t is kept in other files, its items are copied over first, in O(|t|).
+	 * If t was the tree stored in these files, this tree is stored in its place.
+	 * A split-off tree that a sync marked as not stored is marked stored again, in O(its size), when it joins the stored tree.
+	 *
+	 * precondition: keys(t) < x < keys() or keys(t) > x > keys(). t/tree might be empty (rank = -1).
+	 * postcondition: none
+	 */
+	public int join(AVLTree.IAVLNode x, MappedAVLTree t) { // O(|rank(this) - rank(t)| + 1)
+		int copied = EXT;
+		boolean unstored = this.unstored;
+		if (t != null && t.store != this.store) {
+			t.store.modify(); // t's file will hold an empty tree
+			copied = t.root;
+		} else if (t != null) {
+			store.modify();
+			if (store.owner == this && t.unstored) {
+				store.markTree(t.root, true);
+			} else if (store.owner == t && this.unstored) {
+				store.markTree(this.root, true);
+			}
+			unstored |= t.unstored;
+		}
+		int complexity = joinTree(x, t);
+		if (t != null && store.owner == t) {
+			store.owner = this;
+		}
+		this.unstored = store.owner != this && unstored;
+		store.track(this);
+		if (copied != EXT) {
+			t.store.freeTree(copied);
+		}
+		return complexity;
+	}
+
+	/**
+	 * public void sync()
+	 *
+	 * Commits all changes so far to disk. Reopening the files after a crash gives the tree as of the last commit.
+	 */
+	public void sync() throws IOException {
+		store.sync();
+	}
+
+	/**
+	 * public void close()
+	 *
+	 * Frees the records of trees split off this one that were not joined back, syncs and closes the files.
+	 * The tree, and every tree split from it, must not be used afterwards.
+	 */
+	public void close() throws IOException {
+		store.close();
+	}
+
+	/**
+	 * static class Store
+	 *
+	 * The files holding the nodes of one or more trees, and the root of the one tree they persist.
+	 * The node file starts with two header slots, each in its own sector: the last commit writes the slot the one before did not.
+	 * A slot holds the commit's generation, the stored root and the allocation state, with a CRC32,
+	 * and opening picks the valid slot with the higher generation. A state word after them says whether the records changed since.
+	 * Then come RECORD_BYTES node records indexed from 0. Record 0 is EXT: rank -1, size 0, and its links are never written.
+	 *
+	 * A record's stamp holds the generation of the next commit, if the record changed since the last one, whether the record
+	 * belongs to the stored tree, and whether it belonged to it at the last commit. The stamp is one long, so it is never torn.
+	 * A record's key and info do not change while it holds an item: deletes relink records rather than move items between them.
+	 * So the records that belonged to the stored tree at the last commit still hold its items, whatever else reached the disk.
+	 * To keep it so, a record the last commit holds is only reused after the next one. Free records are chained through their left links.
+	 * Trees split off the stored one are walked by every sync, which marks their records as not stored, in O(their size).
+	 *
+	 * A node's info is a length-prefixed UTF-8 record in a span of the info file: 8, 16, 32... bytes, the smallest that fits.
+	 * A free node record keeps its span, and its next item reuses it if the new info has the same size class; otherwise
+	 * the span goes to a free list of its class, which is taken from before the file grows. A free list's next link is written
+	 * into the span itself, which is safe since the span's record is free: no commit holds it, by the rule above.
+	 * A span is only added when its class has no free one, so the info file holds at most one span of each class per node record.
+	 */
+	static final class Store implements IndexedAVLTree.NodeStore {
+		private static final int MAGIC = 0x41564c4d; // "AVLM"
+		private static final int VERSION = 3;
+		private static final int CLEAN = 0;
+		private static final int DIRTY = 1;
+		static final int SLOT_BYTES = 512; // A disk sector, so a torn header write spoils at most one slot
+		static final int HEADER_BYTES = 3 * SLOT_BYTES; // Two slots, then the state word
+		static final int RECORD_BYTES = 40;
+		private static final int INITIAL_RECORDS = 1024;
+
+		// Header slot fields
+		private static final int S_MAGIC = 0;
+		private static final int S_CRC = 4; // Of the slot's bytes after it
+		private static final int S_VERSION = 8;
+		private static final int S_ROOT = 12;
+		private static final int S_GENERATION = 16;
+		private static final int S_USED = 24; // Records below used have been handed out at least once
+		private static final int S_FREE = 28; // First free record, EXT if none
+		private static final int S_INFO_END = 32; // Bytes of the info file handed out as spans
+		private static final int S_INFO_FREE = 40; // First free span of each size class, -1 if none
+		private static final int INFO_CLASSES = 30; // Spans of 8 << c bytes, up to one that fits the longest String
+		private static final int H_STATE = 2 * SLOT_BYTES;
+
+		// Node record fields
+		private static final int KEY = 0;
+		private static final int LEFT = 4;
+		private static final int RIGHT = 8;
+		private static final int PARENT = 12;
+		private static final int SIZE = 16;
+		private static final int RANK = 20;
+		private static final int INFO = 24;
+		private static final int STAMP = 32;
+
+		// Stamp bits, above the generation
+		private static final long STORED = 1L << 63;
+		private static final long STORED_AT_COMMIT = 1L << 62; // Only meaningful while the stamp's generation is the next commit's
+		private static final long GENERATION = STORED_AT_COMMIT - 1;
+
+		private final FileChannel nodeChannel;
+		private final FileChannel infoChannel;
+		private final MappedByteBuffer header; // Mapped on its own, so marking the files dirty flushes one page
+		private final Region nodes;
+		private final Region infos;
+		private int slot; // Written by the last commit
+		private long generation; // Of the next commit
+		private int storedRoot;
+		private int used;
+		private int freeHead;
+		private int pendingHead = EXT; // Records freed since the last commit, which holds them. Free after the next one
+		private int pendingTail = EXT;
+		private long infoEnd;
+		private final long[] infoFree = new long[INFO_CLASSES];
+		private boolean dirty;
+		private final List<MappedAVLTree> detached = new ArrayList<>(); // Trees split off the stored one. Some may be empty or stored again
+		private int detachedAfterPrune;
+		MappedAVLTree owner; // The tree whose root the header holds
+
+		Store(Path path) throws IOException {
+			this.nodeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.infoChannel = FileChannel.open(Paths.get(path + ".info"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			boolean created = nodeChannel.size() == 0;
+			this.header = nodeChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+			this.header.order(ByteOrder.LITTLE_ENDIAN);
+			this.nodes = new Region(nodeChannel, HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES);
+			this.infos = new Region(infoChannel, (long) INITIAL_RECORDS * 16);
+			if (created) {
+				long ext = offset(EXT);
+				nodes.putInt(ext + SIZE, 0);
+				nodes.put(ext + RANK, (byte) -1);
+				nodes.putLong(ext + INFO, -1);
+				this.slot = 1;
+				this.generation = 1;
+				this.storedRoot = EXT;
+				this.used = 1;
+				this.freeHead = EXT;
+				this.infoEnd = 0;
+				Arrays.fill(infoFree, -1);
+				commit(EXT);
+				return;
+			}
+			int newest = -1;
+			for (int s = 0; s < 2; s++) {
+				if (validSlot(s) && (newest < 0 || header.getLong(s * SLOT_BYTES + S_GENERATION) > header.getLong(newest * SLOT_BYTES + S_GENERATION))) {
+					newest = s;
+				}
+			}
+			if (newest < 0) {
+				closeChannels();
+				throw new IOException(path + " is not an AVL tree file of version " + VERSION + ", or both of its headers are damaged");
+			}
+			int base = newest * SLOT_BYTES;
+			this.slot = newest;
+			this.generation = header.getLong(base + S_GENERATION) + 1;
+			this.storedRoot = header.getInt(base + S_ROOT);
+			this.used = header.getInt(base + S_USED);
+			this.freeHead = header.getInt(base + S_FREE);
+			this.infoEnd = header.getLong(base + S_INFO_END);
+			for (int c = 0; c < INFO_CLASSES; c++) {
+				infoFree[c] = header.getLong(base + S_INFO_FREE + 8 * c);
+			}
+			if (header.getInt(H_STATE) != CLEAN) {
+				recover();
+			}
+		}
+
+		private boolean validSlot(int s) { // O(SLOT_BYTES)
+			int base = s * SLOT_BYTES;
+			return header.getInt(base + S_MAGIC) == MAGIC && header.getInt(base + S_VERSION) == VERSION && header.getInt(base + S_CRC) == slotCrc(base);
+		}
+
+		private int slotCrc(int base) { // O(SLOT_BYTES)
+			byte[] bytes = new byte[SLOT_BYTES - S_VERSION];
+			ByteBuffer slotBytes = header.duplicate();
+			slotBytes.position(base + S_VERSION);
+			slotBytes.get(bytes);
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			return (int) crc.getValue();
+		}
+
+		private static long offset(int node) { // O(1)
+			return HEADER_BYTES + (long) node * RECORD_BYTES;
+		}
+
+		public int key(int node) {
+			return nodes.getInt(offset(node) + KEY);
+		}
+
+		public int left(int node) {
+			return nodes.getInt(offset(node) + LEFT);
+		}
+
+		public int right(int node) {
+			return nodes.getInt(offset(node) + RIGHT);
+		}
+
+		public int parent(int node) {
+			return nodes.getInt(offset(node) + PARENT);
+		}
+
+		public int size(int node) {
+			return nodes.getInt(offset(node) + SIZE);
+		}
+
+		public int rank(int node) {
+			return nodes.get(offset(node) + RANK);
+		}
+
+		public void setLeft(int node, int left) {
+			nodes.putInt(offset(node) + LEFT, left);
+		}
+
+		public void setRight(int node, int right) {
+			nodes.putInt(offset(node) + RIGHT, right);
+		}
+
+		public void setParent(int node, int parent) {
+			nodes.putInt(offset(node) + PARENT, parent);
+		}
+
+		public void setSize(int node, int size) {
+			nodes.putInt(offset(node) + SIZE, size);
+		}
+
+		public void setRank(int node, int rank) {
+			nodes.put(offset(node) + RANK, (byte) rank);
+		}
+
+		public String info(int node) { // O(|info|)
+			long at = nodes.getLong(offset(node) + INFO);
+			if (at < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[infos.getInt(at)];
+			infos.get(at + 4, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		int storedRoot() {
+			return storedRoot;
+		}
+
+		private boolean storedAtCommit(int node) { // Whether the last commit's tree holds node. O(1)
+			long stamp = nodes.getLong(offset(node) + STAMP);
+			return (stamp & GENERATION) == generation ? (stamp & STORED_AT_COMMIT) != 0 : (stamp & STORED) != 0;
+		}
+
+		private void mark(int node, boolean stored) { // Stamps node for the next commit. O(1)
+			long stamp = generation | (stored ? STORED : 0) | (storedAtCommit(node) ? STORED_AT_COMMIT : 0);
+			nodes.putLong(offset(node) + STAMP, stamp);
+		}
+
+		void markTree(int node, boolean stored) { // Marks a sub-tree as belonging to the stored tree or not. O(its size)
+			if (node == EXT) {
+				return;
+			}
+			if ((nodes.getLong(offset(node) + STAMP) & STORED) != (stored ? STORED : 0)) {
+				mark(node, stored);
+			}
+			markTree(left(node), stored);
+			markTree(right(node), stored);
+		}
+
+		void freeTree(int node) { // Frees a detached sub-tree. O(its size)
+			if (node == EXT) {
+				return;
+			}
+			int left = left(node);
+			int right = right(node);
+			free(node);
+			freeTree(left);
+			freeTree(right);
+		}
+
+		public void modify() { // Marks the files dirty on disk before the first change after a commit. O(1) amortized
+			if (!dirty) {
+				header.putInt(H_STATE, DIRTY);
+				header.force();
+				dirty = true;
+			}
+		}
+
+		public int allocate(int key, String info) { // Returns a detached leaf, stamped as stored until a sync finds it split off. O(|info|) amortized
+			int node = freeHead;
+			long span = -1;
+			if (node != EXT) {
+				freeHead = left(node);
+				span = nodes.getLong(offset(node) + INFO);
+			} else {
+				node = used;
+				if (node == Integer.MAX_VALUE) {
+					throw new IllegalStateException("Node file is full");
+				}
+				used = node + 1;
+				nodes.ensure(offset(node + 1));
+			}
+			long at = putInfo(info, span);
+			long base = offset(node);
+			nodes.putInt(base + KEY, key);
+			nodes.putInt(base + LEFT, EXT);
+			nodes.putInt(base + RIGHT, EXT);
+			nodes.putInt(base + PARENT, EXT);
+			nodes.putInt(base + SIZE, 1);
+			nodes.put(base + RANK, (byte) 0);
+			nodes.putLong(base + INFO, at);
+			mark(node, true);
+			return node;
+		}
+
+		private long putInfo(String info, long span) { // Writes info into span if it is of the same class, else into a free or new span. Returns where, -1 for null. O(|info|) amortized
+			if (info == null) {
+				releaseSpan(span);
+				return -1;
+			}
+			byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+			int c = sizeClass(4L + bytes.length);
+			long at = span;
+			if (span < 0 || spanClass(span) != c) {
+				releaseSpan(span);
+				at = infoFree[c];
+				if (at >= 0) {
+					infoFree[c] = infos.getLong(at);
+				} else { // Spans are multiples of 8 bytes, so lengths and links never straddle two mappings
+					at = infoEnd;
+					infoEnd += 8L << c;
+					infos.ensure(infoEnd);
+				}
+			}
+			infos.putInt(at, bytes.length);
+			infos.put(at + 4, bytes);
+			return at;
+		}
+
+		private static int sizeClass(long bytes) { // The class of the smallest span holding bytes. O(1)
+			return Math.max(0, 64 - Long.numberOfLeadingZeros(bytes - 1) - 3);
+		}
+
+		private int spanClass(long span) { // Of a span in use, from its length. O(1)
+			return sizeClass(4L + infos.getInt(span));
+		}
+
+		private void releaseSpan(long span) { // O(1)
+			if (span >= 0) {
+				pushSpan(span, spanClass(span));
+			}
+		}
+
+		private void pushSpan(long span, int c) { // O(1)
+			infos.putLong(span, infoFree[c]);
+			infoFree[c] = span;
+		}
+
+		public void free(int node) { // Keeps key and info, which the last commit may still need. O(1)
+			boolean held = storedAtCommit(node);
+			mark(node, false);
+			if (held) {
+				setLeft(node, pendingHead);
+				if (pendingHead == EXT) {
+					pendingTail = node;
+				}
+				pendingHead = node;
+			} else {
+				setLeft(node, freeHead);
+				freeHead = node;
+			}
+		}
+
+		void sync() throws IOException { // O(mapped size + sizes of the split-off trees)
+			if (!dirty) {
+				return;
+			}
+			for (MappedAVLTree tree : detached) {
+				if (tree != owner) {
+					markTree(tree.root, false);
+					tree.unstored = true;
+				}
+			}
+			prune();
+			if (pendingHead != EXT) { // The commit drops them, so its free list may hand them out
+				setLeft(pendingTail, freeHead);
+				freeHead = pendingHead;
+				pendingHead = EXT;
+				pendingTail = EXT;
+			}
+			commit(owner.root);
+		}
+
+		void track(MappedAVLTree tree) { // Lists tree for sync to walk, unless it is the stored one. O(1) amortized
+			if (tree == owner || tree.tracked) {
+				return;
+			}
+			if (detached.size() >= 2 * detachedAfterPrune + 16) { // Split and join pairs leave empty trees behind
+				prune();
+			}
+			tree.tracked = true;
+			detached.add(tree);
+		}
+
+		private void prune() { // Drops the trees sync has no records to walk in. They are listed again when they get some. O(listed)
+			detached.removeIf(tree -> {
+				tree.tracked = !tree.empty() && tree != owner;
+				return !tree.tracked;
+			});
+			detachedAfterPrune = detached.size();
+		}
+
+		private void commit(int root) throws IOException { // Forces the records, then the other slot, then clears the state word. O(mapped size)
+			nodes.force();
+			infos.force();
+			int next = 1 - slot;
+			int base = next * SLOT_BYTES;
+			header.putInt(base + S_MAGIC, MAGIC);
+			header.putInt(base + S_VERSION, VERSION);
+			header.putInt(base + S_ROOT, root);
+			header.putLong(base + S_GENERATION, generation);
+			header.putInt(base + S_USED, used);
+			header.putInt(base + S_FREE, freeHead);
+			header.putLong(base + S_INFO_END, infoEnd);
+			for (int c = 0; c < INFO_CLASSES; c++) {
+				header.putLong(base + S_INFO_FREE + 8 * c, infoFree[c]);
+			}
+			header.putInt(base + S_CRC, slotCrc(base));
+			header.force();
+			header.putInt(H_STATE, CLEAN);
+			header.force();
+			slot = next;
+			generation++;
+			dirty = false;
+		}
+
+		private void recover() throws IOException { // Rebuilds the last commit's tree from the records it holds, and the free spans from the gaps between theirs. O(used log used)
+			long[] items = new long[used];
+			long[] spans = new long[used];
+			int count = 0;
+			int spanCount = 0;
+			freeHead = EXT;
+			for (int node = used - 1; node > EXT; node--) {
+				boolean held = storedAtCommit(node);
+				nodes.putLong(offset(node) + STAMP, generation | (held ? STORED | STORED_AT_COMMIT : 0)); // Stamps that a second crash reads the same way
+				if (held) {
+					items[count++] = (long) key(node) << 32 | node;
+					long span = nodes.getLong(offset(node) + INFO);
+					if (span >= 0) {
+						spans[spanCount++] = span;
+					}
+				} else {
+					nodes.putLong(offset(node) + INFO, -1);
+					setLeft(node, freeHead);
+					freeHead = node;
+				}
+			}
+			Arrays.sort(items, 0, count); // By key, since node indices are positive
+			storedRoot = rebuild(items, 0, count - 1, EXT);
+			Arrays.sort(spans, 0, spanCount);
+			Arrays.fill(infoFree, -1);
+			long gap = 0;
+			for (int j = 0; j < spanCount; j++) {
+				freeGap(gap, spans[j]);
+				gap = spans[j] + (8L << spanClass(spans[j]));
+			}
+			freeGap(gap, infoEnd);
+			dirty = true;
+			commit(storedRoot);
+		}
+
+		private void freeGap(long from, long to) { // Frees the bytes between two spans, as spans of the sizes of its binary digits. O(log(to - from))
+			while (from < to) {
+				long span = Math.min(Long.highestOneBit(to - from), 8L << (INFO_CLASSES - 1));
+				pushSpan(from, Long.numberOfTrailingZeros(span) - 3);
+				from += span;
+			}
+		}
+
+		private int rebuild(long[] items, int lo, int hi, int parent) { // Links the sorted records into a balanced sub-tree. O(hi - lo)
+			if (lo > hi) {
+				return EXT;
+			}
+			int mid = (lo + hi) >>> 1;
+			int node = (int) items[mid];
+			int l = rebuild(items, lo, mid - 1, node);
+			int r = rebuild(items, mid + 1, hi, node);
+			setLeft(node, l);
+			setRight(node, r);
+			setParent(node, parent);
+			setRank(node, Math.max(rank(l), rank(r)) + 1);
+			setSize(node, size(l) + size(r) + 1);
+			return node;
+		}
+
+		void close() throws IOException {
+			try {
+				for (MappedAVLTree tree : detached) { // Nothing refers to them once the files are closed
+					if (tree != owner && !tree.empty()) {
+						modify();
+						freeTree(tree.root);
+					}
+				}
+				detached.clear();
+				sync();
+			} finally {
+				closeChannels();
+			}
+		}
+
+		private void closeChannels() throws IOException { // Mappings stay valid until collected, Java has no unmap
+			try {
+				nodeChannel.close();
+			} finally {
+				infoChannel.close();
+			}
+		}
+	}
+
+	/**
+	 * static class Region
+	 *
+	 * A file mapped as consecutive chunks of up to 1 GiB, since one MappedByteBuffer cannot exceed 2 GiB.
+	 * Values are little-endian. ints and longs must be aligned to their size, so they never straddle two chunks.
+	 * The mapping grows by doubling, which also grows the file.
+	 */
+	static final class Region {
+		private static final int CHUNK_SHIFT = 30;
+		private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+		private static final int CHUNK_MASK = (int) CHUNK_BYTES - 1;
+
+		private final FileChannel channel;
+		private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+		private long capacity;
+
+		Region(FileChannel channel, long minCapacity) throws IOException {
+			this.channel = channel;
+			map(Math.max(minCapacity, channel.size()));
+		}
+
+		void ensure(long end) { // O(1) amortized
+			if (end > capacity) {
+				try {
+					map(Math.max(end, capacity * 2));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		private void map(long newCapacity) throws IOException { // Remaps the last, partial chunk and maps any new ones. O(chunks)
+			int count = (int) ((newCapacity + CHUNK_BYTES - 1) >>> CHUNK_SHIFT);
+			MappedByteBuffer[] grown = Arrays.copyOf(chunks, count);
+			for (int c = 0; c < count; c++) {
+				long length = Math.min(CHUNK_BYTES, newCapacity - ((long) c << CHUNK_SHIFT));
+				if (grown[c] == null || grown[c].capacity() < length) {
+					grown[c] = channel.map(FileChannel.MapMode.READ_WRITE, (long) c << CHUNK_SHIFT, length);
+					grown[c].order(ByteOrder.LITTLE_ENDIAN);
+				}
+			}
+			this.chunks = grown;
+			this.capacity = newCapacity;
+		}
+
+		private ByteBuffer chunk(long at) {
+			return chunks[(int) (at >>> CHUNK_SHIFT)];
+		}
+
+		byte get(long at) {
+			return chunk(at).get((int) at & CHUNK_MASK);
+		}
+
+		void put(long at, byte value) {
+			chunk(at).put((int) at & CHUNK_MASK, value);
+		}
+
+		int getInt(long at) {
+			return chunk(at).getInt((int) at & CHUNK_MASK);
+		}
+
+		void putInt(long at, int value) {
+			chunk(at).putInt((int) at & CHUNK_MASK, value);
+		}
+
+		long getLong(long at) {
+			return chunk(at).getLong((int) at & CHUNK_MASK);
+		}
+
+		void putLong(long at, long value) {
+			chunk(at).putLong((int) at & CHUNK_MASK, value);
+		}
+
+		void get(long at, byte[] bytes) { // Byte runs may straddle chunks. O(bytes.length)
+			for (int done = 0; done < bytes.length; ) {
+				ByteBuffer chunk = chunk(at + done).duplicate();
+				chunk.position((int) (at + done) & CHUNK_MASK);
+				int n = Math.min(bytes.length - done, chunk.remaining());
+				chunk.get(bytes, done, n);
+				done += n;
+			}
+		}
+
+		void put(long at, byte[] bytes) { // Byte runs may straddle chunks. O(bytes.length)
+			for (int done = 0; done < bytes.length; ) {
+				ByteBuffer chunk = chunk(at + done).duplicate();
+				chunk.position((int) (at + done) & CHUNK_MASK);
+				int n = Math.min(bytes.length - done, chunk.remaining());
+				chunk.put(bytes, done, n);
+				done += n;
+			}
+		}
+
+		void force() {
+			for (MappedByteBuffer chunk : chunks) {
+				chunk.force();
+			}
+		}
+	}
+}
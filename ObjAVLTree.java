@@ -0,0 +1,203 @@
+import java.util.Comparator;
+
+/**
+ *
+ * ObjAVLTree
+ *
+ * An AVL tree with distinct keys of any type K, ordered by a Comparator, and values of any type V.
+ * Keys must not be null. The external leaf is a single sentinel node told apart by identity.
+ * Nodes keep no parent pointers; updates walk down recursively and fix ranks and sizes on the way back up, in RecursiveAVLTree.
+ *
+ */
+
+public class ObjAVLTree<K, V> extends RecursiveAVLTree<ObjAVLTree.Node> {
+	private static final Node EXT = new Node(null, null, -1, 0);
+	private final Comparator<? super K> comparator;
+
+	@SuppressWarnings("unchecked")
+	public ObjAVLTree() { // Default constructor, will produce an empty tree ordered by the keys' natural ordering.
+		this((Comparator<? super K>) Comparator.naturalOrder());
+	}
+
+	/** Comparator constructor
+	 *
+	 * @param comparator the order of the keys. Keys it finds equal are the same key.
+	 *
+	 * @post An empty tree.
+	 */
+	public ObjAVLTree(Comparator<? super K> comparator) {
+		super(EXT, EXT);
+		this.comparator = comparator;
+		this.min = EXT;
+		this.max = EXT;
+	}
+
+	/**
+	 * public V search(K k)
+	 *
+	 * Returns the value of an item with key k if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V search(K k) { // O(logn)
+		Node node = this.root;
+		while (node != EXT) {
+			int c = compare(k, node);
+			if (c == 0) {
+				return (V) node.info;
+			}
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(K k, V v)
+	 *
+	 * Inserts an item with key k and value v to the tree.
+	 * Returns the number of re-balancing operations (rank changes, and rotations, a double rotation counting as 2),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(K k, V v) { // O(logn)
+		this.found = false;
+		this.rebalances = 0;
+		this.root = insert(this.root, k, v);
+		return this.found ? -1 : this.rebalances;
+	}
+
+	private Node insert(Node node, K k, V v) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			if (k == null) {
+				throw new NullPointerException("Null key");
+			}
+			return added(new Node(k, v, 0, 1));
+		}
+		int c = compare(k, node);
+		if (c == 0) {
+			this.found = true;
+			return node;
+		}
+		if (c < 0) {
+			node.left = insert(node.left, k, v);
+		}
+		else {
+			node.right = insert(node.right, k, v);
+		}
+		return this.found ? node : fix(node);
+	}
+
+	/**
+	 * public int delete(K k)
+	 *
+	 * Deletes the item with key k from the tree, if it is there.
+	 * Returns the number of re-balancing operations, counted as in insert,
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(K k) { // O(logn)
+		this.found = false;
+		this.rebalances = 0;
+		this.root = delete(this.root, k);
+		if (!this.found) {
+			return -1;
+		}
+		findEnds();
+		return this.rebalances;
+	}
+
+	private Node delete(Node node, K k) { // Returns the new root of node's sub-tree. O(logn)
+		if (node == EXT) {
+			return node;
+		}
+		int c = compare(k, node);
+		if (c < 0) {
+			node.left = delete(node.left, k);
+		}
+		else if (c > 0) {
+			node.right = delete(node.right, k);
+		}
+		else {
+			return unlink(node);
+		}
+		return this.found ? fix(node) : node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(K k, Node node) { // O(1)
+		return this.comparator.compare(k, (K) node.key);
+	}
+
+	@SuppressWarnings("unchecked")
+	int compareKeys(Node a, Node b) { // O(1)
+		return this.comparator.compare((K) a.key, (K) b.key);
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the value of the item with the smallest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V min() { // O(1)
+		return (V) this.min.info;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the value of the item with the largest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public V max() { // O(1)
+		return (V) this.max.info;
+	}
+
+	/**
+	 * public Object[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public Object[] keysToArray() { // O(n)
+		Object[] array = new Object[size()];
+		keysToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	private static int keysToArrayRec(Node node, Object[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == EXT) {
+			return index;
+		}
+		index = keysToArrayRec(node.left, array, index);
+		array[index++] = node.key;
+		return keysToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * public Object[] infoToArray()
+	 *
+	 * Returns an array which contains all values in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public Object[] infoToArray() { // O(n)
+		Object[] array = new Object[size()];
+		infoToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	/**
+	 * static class Node
+	 *
+	 * A RecursiveAVLTree node with a key of any type. EXT is the only node with rank -1.
+	 */
+	static final class Node extends RecursiveAVLTree.Node<Node> {
+		private final Object key;
+
+		Node(Object key, Object info, int rank, int size) {
+			super(info, EXT, rank, size);
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/**
+ *
+ * PersistentAVLTree
+ *
+ * An immutable AVL tree with distinct integer keys and info.
+ * insert, delete, split and join leave the tree they are called on as it was and return new trees,
+ * which share every node off the updated path with it. Nodes keep no parent pointers, so they can be shared.
+ * A tree is therefore its own point-in-time snapshot: keeping a reference costs O(1),
+ * and each update allocates O(logn) nodes. Trees are safe to read from any number of threads.
+ *
+ */
+
+public final class PersistentAVLTree {
+	private static final Node EXT = new Node(-1, null, null, null, -1, 0);
+	private static final PersistentAVLTree EMPTY = new PersistentAVLTree(EXT);
+
+	final Node root;
+
+	private PersistentAVLTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * public static PersistentAVLTree emptyTree()
+	 *
+	 * Returns the empty tree.
+	 */
+	public static PersistentAVLTree emptyTree() { // O(1)
+		return EMPTY;
+	}
+
+	/**
+	 * public static PersistentAVLTree fromSorted(int[] keys, String[] infos)
+	 *
+	 * Returns a perfectly balanced tree holding infos[j] under keys[j] for every j, built in O(n).
+	 *
+	 * precondition: keys is strictly increasing and as long as infos, else IllegalArgumentException.
+	 */
+	public static PersistentAVLTree fromSorted(int[] keys, String[] infos) { // O(n)
+		if (keys.length != infos.length) {
+			throw new IllegalArgumentException("Got " + keys.length + " keys but " + infos.length + " infos");
+		}
+		AVLTree.requireStrictlyIncreasing(keys);
+		return wrap(buildSorted(keys, infos, 0, keys.length - 1));
+	}
+
+	private static Node buildSorted(int[] keys, String[] infos, int lo, int hi) { // O(hi - lo)
+		if (lo > hi) {
+			return EXT;
+		}
+		int mid = (lo + hi) >>> 1;
+		return node(keys[mid], infos[mid], buildSorted(keys, infos, lo, mid - 1), buildSorted(keys, infos, mid + 1, hi));
+	}
+
+	private static PersistentAVLTree wrap(Node root) { // O(1)
+		return root == EXT ? EMPTY : new PersistentAVLTree(root);
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(1)
+		return this.root == EXT;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * Returns the info of an item with key k if it exists in the tree.
+	 * otherwise, returns null.
+	 */
+	public String search(int k) { // O(logn)
+		Node node = this.root;
+		while (node != EXT) {
+			if (k == node.key) {
+				return node.info;
+			}
+			node = k < node.key ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public PersistentAVLTree insert(int k, String i)
+	 *
+	 * Returns a tree with the items of this one and an item with key k and info i.
+	 * If an item with key k already exists, returns this tree itself.
+	 */
+	public PersistentAVLTree insert(int k, String i) { // O(logn)
+		Node newRoot = insert(this.root, k, i);
+		return newRoot == this.root ? this : new PersistentAVLTree(newRoot);
+	}
+
+	private static Node insert(Node node, int k, String i) { // Returns node itself if k is already under it. O(logn)
+		if (node == EXT) {
+			return node(k, i, EXT, EXT);
+		}
+		if (k == node.key) {
+			return node;
+		}
+		if (k < node.key) {
+			Node left = insert(node.left, k, i);
+			return left == node.left ? node : balance(node.key, node.info, left, node.right);
+		}
+		Node right = insert(node.right, k, i);
+		return right == node.right ? node : balance(node.key, node.info, node.left, right);
+	}
+
+	/**
+	 * public PersistentAVLTree delete(int k)
+	 *
+	 * Returns a tree with the items of this one except the one with key k.
+	 * If there is no item with key k, returns this tree itself.
+	 */
+	public PersistentAVLTree delete(int k) { // O(logn)
+		Node newRoot = delete(this.root, k);
+		return newRoot == this.root ? this : wrap(newRoot);
+	}
+
+	private static Node delete(Node node, int k) { // Returns node itself if k is not under it. O(logn)
+		if (node == EXT) {
+			return node;
+		}
+		if (k < node.key) {
+			Node left = delete(node.left, k);
+			return left == node.left ? node : balance(node.key, node.info, left, node.right);
+		}
+		if (k > node.key) {
+			Node right = delete(node.right, k);
+			return right == node.right ? node : balance(node.key, node.info, node.left, right);
+		}
+		if (node.left == EXT) {
+			return node.right;
+		}
+		if (node.right == EXT) {
+			return node.left;
+		}
+		Node successor = node.right; // Binary: the successor takes node's place
+		while (successor.left != EXT) {
+			successor = successor.left;
+		}
+		return balance(successor.key, successor.info, node.left, deleteMin(node.right));
+	}
+
+	private static Node deleteMin(Node node) { // O(logn)
+		if (node.left == EXT) {
+			return node.right;
+		}
+		return balance(node.key, node.info, deleteMin(node.left), node.right);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public String min() { // O(logn)
+		if (empty()) {
+			return null;
+		}
+		Node node = this.root;
+		while (node.left != EXT) {
+			node = node.left;
+		}
+		return node.info;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty.
+	 */
+	public String max() { // O(logn)
+		if (empty()) {
+			return null;
+		}
+		Node node = this.root;
+		while (node.right != EXT) {
+			node = node.right;
+		}
+		return node.info;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() { // O(n)
+		int[] array = new int[size()];
+		keysToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	private static int keysToArrayRec(Node node, int[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == EXT) {
+			return index;
+		}
+		index = keysToArrayRec(node.left, array, index);
+		array[index++] = node.key;
+		return keysToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() { // O(n)
+		String[] array = new String[size()];
+		infoToArrayRec(this.root, array, 0);
+		return array;
+	}
+
+	private static int infoToArrayRec(Node node, String[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == EXT) {
+			return index;
+		}
+		index = infoToArrayRec(node.left, array, index);
+		array[index++] = node.info;
+		return infoToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() { // O(1)
+		return this.root.size;
+	}
+
+	/**
+	 * public PersistentAVLTree[] split(int x)
+	 *
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * The item with key x, if there is one, goes to neither. This tree is left as it was.
+	 */
+	public PersistentAVLTree[] split(int x) { // O(logn)
+		Node[] parts = split(this.root, x);
+		return new PersistentAVLTree[]{wrap(parts[0]), wrap(parts[1])};
+	}
+
+	private static Node[] split(Node node, int x) { // Returns {keys < x, keys > x}. O(logn)
+		if (node == EXT) {
+			return new Node[]{EXT, EXT};
+		}
+		if (x == node.key) {
+			return new Node[]{node.left, node.right};
+		}
+		if (x < node.key) {
+			Node[] parts = split(node.left, x);
+			parts[1] = join(parts[1], node.key, node.info, node.right);
+			return parts;
+		}
+		Node[] parts = split(node.right, x);
+		parts[0] = join(node.left, node.key, node.info, parts[0]);
+		return parts;
+	}
+
+	/**
+	 * public PersistentAVLTree join(int k, String i, PersistentAVLTree t)
+	 *
+	 * Returns a tree with the items of this tree, of t, and an item with key k and info i.
+	 * Both trees are left as they were.
+	 *
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(). t/tree might be empty.
+	 */
+	public PersistentAVLTree join(int k, String i, PersistentAVLTree t) { // O(|rank(this) - rank(t)| + 1)
+		Node other = t != null ? t.root : EXT;
+		boolean otherIsSmaller = other != EXT ? other.key < k : this.root == EXT || this.root.key > k;
+		return new PersistentAVLTree(otherIsSmaller ? join(other, k, i, this.root) : join(this.root, k, i, other));
+	}
+
+	private static Node join(Node small, int k, String i, Node big) { // Copies only the spine of the higher tree down to the lower one's rank. O(|rank(small) - rank(big)| + 1)
+		if (small.rank > big.rank + 1) {
+			return balance(small.key, small.info, small.left, join(small.right, k, i, big));
+		}
+		if (big.rank > small.rank + 1) {
+			return balance(big.key, big.info, join(small, k, i, big.left), big.right);
+		}
+		return node(k, i, small, big);
+	}
+
+	private static Node balance(int k, String i, Node left, Node right) { // Builds a node whose sides' ranks may differ by up to 2, rotating if they do. O(1)
+		if (left.rank > right.rank + 1) {
+			if (left.left.rank >= left.right.rank) { // Single right rotation
+				return node(left.key, left.info, left.left, node(k, i, left.right, right));
+			}
+			Node inner = left.right; // Double rotation through inner
+			return node(inner.key, inner.info, node(left.key, left.info, left.left, inner.left), node(k, i, inner.right, right));
+		}
+		if (right.rank > left.rank + 1) {
+			if (right.right.rank >= right.left.rank) { // Single left rotation
+				return node(right.key, right.info, node(k, i, left, right.left), right.right);
+			}
+			Node inner = right.left; // Double rotation through inner
+			return node(inner.key, inner.info, node(k, i, left, inner.left), node(right.key, right.info, inner.right, right.right));
+		}
+		return node(k, i, left, right);
+	}
+
+	private static Node node(int k, String i, Node left, Node right) { // O(1)
+		return new Node(k, i, left, right, Math.max(left.rank, right.rank) + 1, left.size + right.size + 1);
+	}
+
+	/**
+	 * static class Node
+	 *
+	 * An immutable node. Its rank is its height, and EXT, the one external leaf, has rank -1 and size 0.
+	 */
+	static final class Node {
+		final int key;
+		final String info;
+		final Node left;
+		final Node right;
+		final int rank;
+		final int size;
+
+		Node(int key, String info, Node left, Node right, int rank, int size) {
+			this.key = key;
+			this.info = info;
+			this.left = left;
+			this.right = right;
+			this.rank = rank;
+			this.size = size;
+		}
+	}
+}
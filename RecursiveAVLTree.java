@@ -0,0 +1,206 @@
+/**
+ *
+ * RecursiveAVLTree
+ *
+ * The engine shared by IntObjAVLTree, LongAVLTree, ObjAVLTree and IntervalAVLTree: AVL trees whose nodes keep no parent pointers,
+ * updated by walking down recursively and fixing ranks and sizes on the way back up.
+ * Everything that only looks at ranks, sizes and children lives here, and so do the nodes with the smallest and largest keys.
+ * Each subclass stores its keys in its own Node subclass and walks down by comparing them itself, so keys stay unboxed
+ * and every compare on the way down is a direct one. Only min and max compare through compareKeys, once per insert.
+ *
+ */
+
+abstract class RecursiveAVLTree<N extends RecursiveAVLTree.Node<N>> {
+	final N ext; // The subclass's external leaf, a single sentinel told apart by identity
+	N root;
+	N min; // The node with the smallest key, or ext if the tree is empty. Kept for new leaves passed to added, and by unlink
+	N max;
+	boolean found; // Whether the last recursive insert/delete met its key
+	int rebalances; // Rebalancing operations of the running insert/delete/join
+
+	RecursiveAVLTree(N ext, N root) {
+		this.ext = ext;
+		this.root = root;
+		this.min = findMin(root);
+		this.max = findMax(root);
+	}
+
+	abstract int compareKeys(N a, N b); // Compares two real nodes' keys, in the subclass's order. O(1)
+
+	final N added(N leaf) { // Returns leaf, a new node an insert hangs at an external leaf, after taking it as min or max if its key is either. O(1)
+		if (this.min == this.ext || compareKeys(leaf, this.min) < 0) {
+			this.min = leaf;
+		}
+		if (this.max == this.ext || compareKeys(leaf, this.max) > 0) {
+			this.max = leaf;
+		}
+		return leaf;
+	}
+
+	final void findEnds() { // Finds min and max again if the last delete unlinked either. O(1), O(logn) if it did
+		if (this.min == null) {
+			this.min = findMin(this.root);
+		}
+		if (this.max == null) {
+			this.max = findMax(this.root);
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(1)
+		return this.root == this.ext;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() { // O(1)
+		return this.root.size;
+	}
+
+	final N unlink(N node) { // Returns what takes the place of node, the one with the key a delete looks for. Leaves min or max null if node was either, see findEnds. O(logn)
+		this.found = true;
+		if (node == this.min) {
+			this.min = null;
+		}
+		if (node == this.max) {
+			this.max = null;
+		}
+		if (node.left == this.ext) {
+			return node.right;
+		}
+		if (node.right == this.ext) {
+			return node.left;
+		}
+		N successor = findMin(node.right); // Binary: the successor takes node's place
+		successor.right = deleteMin(node.right);
+		successor.left = node.left;
+		return fix(successor);
+	}
+
+	final N deleteMin(N node) { // O(logn)
+		if (node.left == this.ext) {
+			return node.right;
+		}
+		node.left = deleteMin(node.left);
+		return fix(node);
+	}
+
+	final N join(N small, N x, N big) { // Hangs x where the taller tree's spine comes down to the other's rank. O(|rank(small) - rank(big)| + 1)
+		if (small.rank > big.rank + 1) {
+			small.right = join(small.right, x, big);
+			return fix(small);
+		}
+		if (big.rank > small.rank + 1) {
+			big.left = join(small, x, big.left);
+			return fix(big);
+		}
+		x.left = small;
+		x.right = big;
+		x.update();
+		return x;
+	}
+
+	final N fix(N node) { // Restores the AVL rule at node after one of its sides changed rank by one, returns the sub-tree's new root. O(1)
+		int balance = node.left.rank - node.right.rank;
+		if (balance > 1) {
+			if (node.left.left.rank < node.left.right.rank) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		}
+		if (balance < -1) {
+			if (node.right.right.rank < node.right.left.rank) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		int rank = node.rank;
+		node.update();
+		if (node.rank != rank) { // A promotion or a demotion
+			this.rebalances++;
+		}
+		return node;
+	}
+
+	private N rotateRight(N node) { // Rotates node with its left child, returns the child. O(1)
+		N left = node.left;
+		node.left = left.right;
+		left.right = node;
+		node.update();
+		left.update();
+		this.rebalances++;
+		return left;
+	}
+
+	private N rotateLeft(N node) { // Rotates node with its right child, returns the child. O(1)
+		N right = node.right;
+		node.right = right.left;
+		right.left = node;
+		node.update();
+		right.update();
+		this.rebalances++;
+		return right;
+	}
+
+	final N findMin(N node) { // O(logn)
+		if (node == this.ext) {
+			return this.ext;
+		}
+		while (node.left != this.ext) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	final N findMax(N node) { // O(logn)
+		if (node == this.ext) {
+			return this.ext;
+		}
+		while (node.right != this.ext) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	final int infoToArrayRec(N node, Object[] array, int index) { // Travels in order from index, returns the next index. O(n)
+		if (node == this.ext) {
+			return index;
+		}
+		index = infoToArrayRec(node.left, array, index);
+		array[index++] = node.info;
+		return infoToArrayRec(node.right, array, index);
+	}
+
+	/**
+	 * static abstract class Node
+	 *
+	 * Info, rank and size, and the two children. A subclass adds the key. The sentinel is the only node with rank -1.
+	 */
+	abstract static class Node<N extends Node<N>> {
+		final Object info;
+		N left;
+		N right;
+		int rank;
+		int size;
+
+		Node(Object info, N ext, int rank, int size) { // ext is null while the sentinel itself is made
+			this.info = info;
+			this.left = ext;
+			this.right = ext;
+			this.rank = rank;
+			this.size = size;
+		}
+
+		void update() { // Recomputes what the node keeps about its sub-tree from its children. O(1)
+			this.rank = Math.max(this.left.rank, this.right.rank) + 1;
+			this.size = this.left.size + this.right.size + 1;
+		}
+	}
+}
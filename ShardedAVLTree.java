@@ -0,0 +1,454 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *
+ * ShardedAVLTree
+ *
+ * A thread-safe map from distinct integer keys to info, range-partitioned over several AVLTrees.
+ * Each shard holds the keys from its lower bound up to the next shard's, behind its own read-write lock,
+ * so writers to different shards never wait for each other. The shards are found through their sorted lower bounds,
+ * an array that is replaced, never changed, when the partitioning changes, so routing takes no lock.
+ *
+ * splitShard, mergeShards and rebalance repartition online: they split a shard at its median key with AVLTree.split,
+ * or join two neighbors with AVLTree.join, and retire the old shards. An operation that locked a shard just retired
+ * routes again.
+ *
+ */
+
+public class ShardedAVLTree {
+	private volatile Shard[] shards; // Sorted by lower bound, the first one's is Integer.MIN_VALUE
+	private final Object layoutLock = new Object(); // Serializes repartitioning
+
+	/** Uniform constructor
+	 *
+	 * @param shardCount the number of shards, at least 1, else IllegalArgumentException
+	 *
+	 * @post An empty tree whose shards split the int range into shardCount equal parts.
+	 */
+	public ShardedAVLTree(int shardCount) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("Got " + shardCount + " shards");
+		}
+		Shard[] initial = new Shard[shardCount];
+		for (int j = 0; j < shardCount; j++) {
+			initial[j] = new Shard((int) (Integer.MIN_VALUE + (1L << 32) * j / shardCount), new AVLTree());
+		}
+		this.shards = initial;
+	}
+
+	/** Boundary constructor
+	 *
+	 * @param bounds the lower bounds of all shards but the first, strictly increasing, else IllegalArgumentException
+	 *
+	 * @post An empty tree with bounds.length + 1 shards.
+	 */
+	public ShardedAVLTree(int[] bounds) {
+		for (int j = 0; j < bounds.length; j++) {
+			if ((j > 0 && bounds[j - 1] >= bounds[j]) || bounds[j] == Integer.MIN_VALUE) {
+				throw new IllegalArgumentException("Bounds are not strictly increasing above Integer.MIN_VALUE at index " + j);
+			}
+		}
+		Shard[] initial = new Shard[bounds.length + 1];
+		initial[0] = new Shard(Integer.MIN_VALUE, new AVLTree());
+		for (int j = 0; j < bounds.length; j++) {
+			initial[j + 1] = new Shard(bounds[j], new AVLTree());
+		}
+		this.shards = initial;
+	}
+
+	private static int route(Shard[] shards, int k) { // The index of the shard holding k. O(log shards)
+		int lo = 0;
+		int hi = shards.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (shards[mid].lo <= k) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	private Shard lockRead(int k) { // Returns k's shard, read-locked and current. O(log shards)
+		while (true) {
+			Shard shard = this.shards[route(this.shards, k)];
+			shard.lock.readLock().lock();
+			if (!shard.retired) {
+				return shard;
+			}
+			shard.lock.readLock().unlock(); // Repartitioned meanwhile, route again
+		}
+	}
+
+	private Shard lockWrite(int k) { // Returns k's shard, write-locked and current. O(log shards)
+		while (true) {
+			Shard shard = this.shards[route(this.shards, k)];
+			shard.lock.writeLock().lock();
+			if (!shard.retired) {
+				return shard;
+			}
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * Returns the info of an item with key k if it exists in the tree.
+	 * otherwise, returns null. Locks k's shard for reading.
+	 */
+	public String search(int k) { // O(log shards + log(n/shards))
+		Shard shard = lockRead(k);
+		try {
+			return shard.tree.search(k);
+		} finally {
+			shard.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * Same as AVLTree.insert, on k's shard, under its write lock.
+	 */
+	public int insert(int k, String i) { // O(log shards + log(n/shards))
+		Shard shard = lockWrite(k);
+		try {
+			shard.writes.increment();
+			return shard.tree.insert(k, i);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * Same as AVLTree.delete, on k's shard, under its write lock.
+	 */
+	public int delete(int k) { // O(log shards + log(n/shards))
+		Shard shard = lockWrite(k);
+		try {
+			shard.writes.increment();
+			return shard.tree.delete(k);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	private Shard[] lockAllRead(int lo, int hi) { // Read-locks, in order, the current shards whose ranges meet [lo, hi], and returns them. O(shards)
+		while (true) {
+			Shard[] current = this.shards;
+			Shard[] locked = Arrays.copyOfRange(current, route(current, lo), route(current, hi) + 1);
+			int count = 0;
+			while (count < locked.length && !locked[count].retired) { // Shards are retired holding their write locks, so this check is stable once locked
+				locked[count].lock.readLock().lock();
+				if (locked[count].retired) {
+					locked[count].lock.readLock().unlock();
+					break;
+				}
+				count++;
+			}
+			if (count == locked.length) {
+				return locked;
+			}
+			unlockAllRead(locked, count);
+		}
+	}
+
+	private static void unlockAllRead(Shard[] locked, int count) {
+		for (int j = 0; j < count; j++) {
+			locked[j].lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree, at one moment. Locks every shard for reading.
+	 */
+	public int size() { // O(shards)
+		Shard[] locked = lockAllRead(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		try {
+			int size = 0;
+			for (Shard shard : locked) {
+				size += shard.tree.size();
+			}
+			return size;
+		} finally {
+			unlockAllRead(locked, locked.length);
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * Returns true if and only if the tree is empty.
+	 */
+	public boolean empty() { // O(shards)
+		return size() == 0;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, at one moment,
+	 * or an empty array if the tree is empty. Shards are copied in order, so no merging is needed.
+	 */
+	public int[] keysToArray() { // O(n + shards)
+		Shard[] locked = lockAllRead(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		try {
+			int size = 0;
+			for (Shard shard : locked) {
+				size += shard.tree.size();
+			}
+			int[] array = new int[size];
+			int index = 0;
+			for (Shard shard : locked) {
+				int[] keys = shard.tree.keysToArray();
+				System.arraycopy(keys, 0, array, index, keys.length);
+				index += keys.length;
+			}
+			return array;
+		} finally {
+			unlockAllRead(locked, locked.length);
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, at one moment,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() { // O(n + shards)
+		Shard[] locked = lockAllRead(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		try {
+			int size = 0;
+			for (Shard shard : locked) {
+				size += shard.tree.size();
+			}
+			String[] array = new String[size];
+			int index = 0;
+			for (Shard shard : locked) {
+				String[] infos = shard.tree.infoToArray();
+				System.arraycopy(infos, 0, array, index, infos.length);
+				index += infos.length;
+			}
+			return array;
+		} finally {
+			unlockAllRead(locked, locked.length);
+		}
+	}
+
+	/**
+	 * public int range(int lo, int hi, int[] keys, String[] infos)
+	 *
+	 * Copies the items with lo <= key <= hi, in increasing key order, into keys and infos,
+	 * stopping when either array is full, and returns how many were copied. Either array may be null.
+	 * The items come from one moment of the tree: the shards the range meets are read-locked together.
+	 */
+	public int range(int lo, int hi, int[] keys, String[] infos) { // O(log n + copied + shards)
+		if (lo > hi) {
+			return 0;
+		}
+		int limit = Math.min(keys != null ? keys.length : Integer.MAX_VALUE, infos != null ? infos.length : Integer.MAX_VALUE);
+		Shard[] locked = lockAllRead(lo, hi);
+		try {
+			int copied = 0;
+			for (int j = 0; j < locked.length && copied < limit; j++) {
+				Iterator<AVLTree.IAVLNode> items = locked[j].tree.range(lo, hi);
+				while (items.hasNext() && copied < limit) {
+					AVLTree.IAVLNode node = items.next();
+					if (keys != null) {
+						keys[copied] = node.getKey();
+					}
+					if (infos != null) {
+						infos[copied] = node.getValue();
+					}
+					copied++;
+				}
+			}
+			return copied;
+		} finally {
+			unlockAllRead(locked, locked.length);
+		}
+	}
+
+	/**
+	 * public int shardCount()
+	 *
+	 * Returns the current number of shards.
+	 */
+	public int shardCount() { // O(1)
+		return this.shards.length;
+	}
+
+	/**
+	 * public int[] shardBounds()
+	 *
+	 * Returns the current shards' lower bounds, in increasing order. The first one is Integer.MIN_VALUE.
+	 */
+	public int[] shardBounds() { // O(shards)
+		Shard[] current = this.shards;
+		int[] bounds = new int[current.length];
+		for (int j = 0; j < current.length; j++) {
+			bounds[j] = current[j].lo;
+		}
+		return bounds;
+	}
+
+	/**
+	 * public boolean splitShard(int k)
+	 *
+	 * Splits the shard holding k at its median key, the median going to the upper half.
+	 * Returns false, changing nothing, if that shard has fewer than 2 items.
+	 */
+	public boolean splitShard(int k) { // O(log shards + log(n/shards)), plus O(shards) to publish the new bounds
+		synchronized (this.layoutLock) {
+			Shard[] current = this.shards;
+			int index = route(current, k);
+			Shard shard = current[index];
+			shard.lock.writeLock().lock();
+			try {
+				if (shard.tree.size() < 2) {
+					return false;
+				}
+				AVLTree.IAVLNode median = shard.tree.select(shard.tree.size() / 2);
+				int x = median.getKey();
+				String info = median.getValue();
+				AVLTree[] parts = shard.tree.split(x); // Which leaves x out of both
+				parts[1].insert(x, info);
+				Shard lower = new Shard(shard.lo, parts[0]);
+				Shard upper = new Shard(x, parts[1]);
+				long writes = shard.writes.sum();
+				lower.writes.add(writes / 2);
+				upper.writes.add(writes - writes / 2);
+				Shard[] next = new Shard[current.length + 1];
+				System.arraycopy(current, 0, next, 0, index);
+				next[index] = lower;
+				next[index + 1] = upper;
+				System.arraycopy(current, index + 1, next, index + 2, current.length - index - 1);
+				this.shards = next;
+				shard.retired = true;
+				return true;
+			} finally {
+				shard.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * public boolean mergeShards(int k)
+	 *
+	 * Joins the shard holding k with the next one, through the next one's smallest item.
+	 * Returns false, changing nothing, if k's shard is the last one.
+	 */
+	public boolean mergeShards(int k) { // O(log shards + log(n/shards)), plus O(shards) to publish the new bounds
+		synchronized (this.layoutLock) {
+			Shard[] current = this.shards;
+			int index = route(current, k);
+			if (index == current.length - 1) {
+				return false;
+			}
+			Shard left = current[index];
+			Shard right = current[index + 1];
+			left.lock.writeLock().lock(); // In shard order, like every other thread that locks several
+			right.lock.writeLock().lock();
+			try {
+				AVLTree tree = left.tree;
+				if (!right.tree.empty()) {
+					AVLTree.IAVLNode first = right.tree.select(0);
+					int x = first.getKey();
+					String info = first.getValue();
+					right.tree.delete(x);
+					tree.join(tree.new AVLNode(x, info), right.tree);
+					tree = tree.joined(right.tree);
+				}
+				Shard merged = new Shard(left.lo, tree);
+				merged.writes.add(left.writes.sum() + right.writes.sum());
+				Shard[] next = new Shard[current.length - 1];
+				System.arraycopy(current, 0, next, 0, index);
+				next[index] = merged;
+				System.arraycopy(current, index + 2, next, index + 1, current.length - index - 2);
+				this.shards = next;
+				left.retired = true;
+				right.retired = true;
+				return true;
+			} finally {
+				right.lock.writeLock().unlock();
+				left.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * public int rebalance(int minSplitSize, int minShards)
+	 *
+	 * Repartitions by the writes each shard took since the last call: splits every shard that took more than twice
+	 * the mean and holds at least minSplitSize items, then merges neighbors that together took less than half the mean,
+	 * while there are more than minShards shards. Returns the number of splits and merges done.
+	 * Meant to be called periodically, from any thread, while others use the tree.
+	 */
+	public int rebalance(int minSplitSize, int minShards) { // O(shards * (shards + log n))
+		int changes = 0;
+		synchronized (this.layoutLock) { // Reentrant, so no other repartitioning runs in between
+			Shard[] current = this.shards;
+			long total = 0;
+			for (Shard shard : current) {
+				total += shard.writes.sum();
+			}
+			double mean = (double) total / current.length;
+			for (Shard shard : current) {
+				if (shard.writes.sum() > 2 * mean && shard.size() >= Math.max(2, minSplitSize) && splitShard(shard.lo)) {
+					changes++;
+				}
+			}
+			current = this.shards;
+			for (int j = 0; j + 1 < current.length && current.length > minShards; j++) {
+				if (current[j].writes.sum() + current[j + 1].writes.sum() < mean / 2 && mergeShards(current[j].lo)) {
+					changes++;
+					current = this.shards;
+				}
+			}
+			for (Shard shard : this.shards) {
+				shard.writes.reset(); // Writes counted since the sums above are dropped, the counts only steer repartitioning
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * private static class Shard
+	 *
+	 * A partition: its lower bound, its tree and lock, and the writes it took since the last rebalance.
+	 * A retired shard was replaced by repartitioning, and is never used again.
+	 */
+	private static final class Shard {
+		private final int lo;
+		private final AVLTree tree;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final LongAdder writes = new LongAdder(); // Counted under the write lock, read without it
+		private volatile boolean retired; // Set holding the write lock
+
+		Shard(int lo, AVLTree tree) {
+			this.lo = lo;
+			this.tree = tree;
+		}
+
+		int size() { // The tree's size, under the read lock. O(1)
+			this.lock.readLock().lock();
+			try {
+				return this.tree.size();
+			} finally {
+				this.lock.readLock().unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+import benchmarks.TreeDriver;
+
+/**
+ * AVLTreeDriver
+ *
+ * Drives an AVLTree for the benchmarks package, see benchmarks.TreeDriver.
+ */
+public class AVLTreeDriver implements TreeDriver {
+	private AVLTree tree;
+	private AVLTree[] halves;
+	private AVLTree.IAVLNode joinNode;
+
+	public AVLTreeDriver() {
+		this(new AVLTree());
+	}
+
+	protected AVLTreeDriver(AVLTree tree) {
+		this.tree = tree;
+	}
+
+	public int insert(int k, String i) {
+		return tree.insert(k, i);
+	}
+
+	public int delete(int k) {
+		return tree.delete(k);
+	}
+
+	public String search(int k) {
+		return tree.search(k);
+	}
+
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	public void split(int x) {
+		halves = tree.split(x);
+	}
+
+	public int join(int x, String i) {
+		joinNode = halves[0].new AVLNode(x, i);
+		return halves[0].join(joinNode, halves[1]);
+	}
+
+	public void reattach() { // The joined tree hangs from the join node's topmost ancestor, whichever half object holds it. O(logn)
+		AVLTree.IAVLNode root = joinNode;
+		while (root.getParent() != null) {
+			root = root.getParent();
+		}
+		tree = halves[0].getRoot() == root ? halves[0] : halves[1]; // Keeps the halves' node layout
+		halves = null;
+		joinNode = null;
+	}
+}
@@ -0,0 +1,45 @@
+import benchmarks.TreeDriver;
+
+/**
+ * ArrayAVLTreeDriver
+ *
+ * Drives an ArrayAVLTree for the benchmarks package, see benchmarks.TreeDriver.
+ */
+public class ArrayAVLTreeDriver implements TreeDriver {
+	private final AVLTree scratch = new AVLTree(); // Only used to make the IAVLNode that join takes
+	private ArrayAVLTree tree = new ArrayAVLTree();
+	private ArrayAVLTree[] halves;
+
+	public int insert(int k, String i) {
+		return tree.insert(k, i);
+	}
+
+	public int delete(int k) {
+		return tree.delete(k);
+	}
+
+	public String search(int k) {
+		return tree.search(k);
+	}
+
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	public void split(int x) {
+		halves = tree.split(x);
+	}
+
+	public int join(int x, String i) {
+		return halves[0].join(scratch.new AVLNode(x, i), halves[1]);
+	}
+
+	public void reattach() { // ArrayAVLTree.join always leaves the result in the tree it was called on. O(1)
+		tree = halves[0];
+		halves = null;
+	}
+}
@@ -0,0 +1,10 @@
+/**
+ * CompactAVLTreeDriver
+ *
+ * Drives an AVLTree built from CompactAVLNodes, see AVLTreeDriver.
+ */
+public class CompactAVLTreeDriver extends AVLTreeDriver {
+	public CompactAVLTreeDriver() {
+		super(new AVLTree(true));
+	}
+}
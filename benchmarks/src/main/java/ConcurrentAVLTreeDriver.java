@@ -0,0 +1,43 @@
+import benchmarks.TreeDriver;
+
+/**
+ * ConcurrentAVLTreeDriver
+ *
+ * Drives a ConcurrentAVLTree for the benchmarks package, see benchmarks.TreeDriver.
+ * ConcurrentAVLTree has no split or join.
+ */
+public class ConcurrentAVLTreeDriver implements TreeDriver {
+	private final ConcurrentAVLTree tree = new ConcurrentAVLTree();
+
+	public int insert(int k, String i) {
+		return tree.insert(k, i);
+	}
+
+	public int delete(int k) {
+		return tree.delete(k);
+	}
+
+	public String search(int k) {
+		return tree.search(k);
+	}
+
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	public void split(int x) {
+		throw new UnsupportedOperationException("ConcurrentAVLTree has no split");
+	}
+
+	public int join(int x, String i) {
+		throw new UnsupportedOperationException("ConcurrentAVLTree has no join");
+	}
+
+	public void reattach() {
+		throw new UnsupportedOperationException("ConcurrentAVLTree has no join");
+	}
+}
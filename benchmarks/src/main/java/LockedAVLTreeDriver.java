@@ -0,0 +1,38 @@
+/**
+ * LockedAVLTreeDriver
+ *
+ * Drives an AVLTree behind one lock, the way it is shared between threads without ConcurrentAVLTree.
+ */
+public class LockedAVLTreeDriver extends AVLTreeDriver {
+	public synchronized int insert(int k, String i) {
+		return super.insert(k, i);
+	}
+
+	public synchronized int delete(int k) {
+		return super.delete(k);
+	}
+
+	public synchronized String search(int k) {
+		return super.search(k);
+	}
+
+	public synchronized int[] keysToArray() {
+		return super.keysToArray();
+	}
+
+	public synchronized String[] infoToArray() {
+		return super.infoToArray();
+	}
+
+	public synchronized void split(int x) {
+		super.split(x);
+	}
+
+	public synchronized int join(int x, String i) {
+		return super.join(x, i);
+	}
+
+	public synchronized void reattach() {
+		super.reattach();
+	}
+}
@@ -0,0 +1,64 @@
+import benchmarks.TreeDriver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * MappedAVLTreeDriver
+ *
+ * Drives a MappedAVLTree for the benchmarks package, see benchmarks.TreeDriver.
+ * The tree lives in a fresh temporary file, deleted when the JVM exits.
+ */
+public class MappedAVLTreeDriver implements TreeDriver {
+	private final AVLTree scratch = new AVLTree(); // Only used to make the IAVLNode that join takes
+	private MappedAVLTree tree;
+	private MappedAVLTree[] halves;
+
+	public MappedAVLTreeDriver() {
+		try {
+			Path path = Files.createTempFile("avltree", ".avl");
+			Files.delete(path); // MappedAVLTree creates the file itself
+			path.toFile().deleteOnExit();
+			Paths.get(path + ".info").toFile().deleteOnExit();
+			tree = new MappedAVLTree(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public int insert(int k, String i) {
+		return tree.insert(k, i);
+	}
+
+	public int delete(int k) {
+		return tree.delete(k);
+	}
+
+	public String search(int k) {
+		return tree.search(k);
+	}
+
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	public void split(int x) {
+		halves = tree.split(x);
+	}
+
+	public int join(int x, String i) {
+		return halves[0].join(scratch.new AVLNode(x, i), halves[1]);
+	}
+
+	public void reattach() { // MappedAVLTree.join always leaves the result in the tree it was called on. O(1)
+		tree = halves[0];
+		halves = null;
+	}
+}
@@ -0,0 +1,43 @@
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * NodeFootprint
+ *
+ * Prints the heap bytes per entry of a default and a compact AVLTree and of an ArrayAVLTree, measured with JOL by walking the whole object graph.
+ * Every entry shares one info String, so the numbers are the cost of the tree itself.
+ * Run with: java -cp benchmarks/target/benchmarks.jar NodeFootprint [n ...]
+ */
+public class NodeFootprint {
+	private static final String INFO = "info";
+
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[]{1000, 100000, 1000000};
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		System.out.println(ClassLayout.parseClass(AVLTree.AVLNode.class).toPrintable());
+		System.out.println(ClassLayout.parseClass(AVLTree.CompactAVLNode.class).toPrintable());
+		System.out.printf("%-10s %18s %18s %18s%n", "entries", "default B/entry", "compact B/entry", "array B/entry");
+		for (int n : sizes) {
+			System.out.printf("%-10d %18.1f %18.1f %18.1f%n", n, bytesPerEntry(new AVLTree(), n), bytesPerEntry(new AVLTree(true), n),
+					arrayBytesPerEntry(new ArrayAVLTree(), n));
+		}
+	}
+
+	private static double arrayBytesPerEntry(ArrayAVLTree tree, int n) {
+		for (int k = 0; k < n; k++) {
+			tree.insert(k, INFO);
+		}
+		long total = GraphLayout.parseInstance(tree).totalSize() - GraphLayout.parseInstance(INFO).totalSize();
+		return (double) total / n;
+	}
+
+	private static double bytesPerEntry(AVLTree tree, int n) {
+		for (int k = 0; k < n; k++) {
+			tree.insert(k, INFO);
+		}
+		long total = GraphLayout.parseInstance(tree).totalSize() - GraphLayout.parseInstance(INFO).totalSize();
+		return (double) total / n;
+	}
+}
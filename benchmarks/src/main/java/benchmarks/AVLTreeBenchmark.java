@@ -0,0 +1,232 @@
+package benchmarks;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * AVLTreeBenchmark
+ *
+ * JMH benchmarks for the public AVLTree operations, over every KeyPattern and tree sizes 10^3 to 10^7.
+ * The tree is driven through a TreeDriver named by the impl parameter.
+ * insert, delete and search run in batches of BATCH operations per invocation and report time per operation.
+ * Mutating benchmarks restore the tree in an invocation-level fixture, which JMH does not measure,
+ * so every invocation sees a tree of exactly `size` keys. The GC profiler does count those fixtures,
+ * so gc.alloc.rate.norm of insert, delete, split and join includes the allocations of their restoring counterpart.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class AVLTreeBenchmark {
+	static final int BATCH = 256; // A quarter of the smallest tree
+	static final int ACCESSES = 1 << 16;
+	static final int BATCHES = 16; // Batches are drawn up front so the GC profiler does not count building them
+	static final String INFO = "info"; // One shared info object, so 10^7 trees measure nodes rather than Strings
+
+	@State(Scope.Thread)
+	public static class TreeState {
+		@Param({"1000", "10000", "100000", "1000000", "10000000"})
+		public int size;
+
+		@Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN", "ADVERSARIAL"})
+		public KeyPattern pattern;
+
+		@Param({"AVLTreeDriver", "ArrayAVLTreeDriver"})
+		public String impl;
+
+		TreeDriver tree;
+		int[] access; // Ranks in [0, size), key of rank r is 2r
+		int cursor;
+		int[][] presentBatches;
+		int[][] missingBatches;
+		int batchCursor;
+		Random rnd;
+
+		@Setup(Level.Trial)
+		public void build() {
+			rnd = new Random(42);
+			tree = TreeDriver.create(impl);
+			for (int k : pattern.insertionOrder(size, rnd)) {
+				tree.insert(k, INFO);
+			}
+			access = pattern.accessSequence(size, ACCESSES, rnd);
+			cursor = 0;
+			presentBatches = new int[BATCHES][];
+			missingBatches = new int[BATCHES][];
+			for (int b = 0; b < BATCHES; b++) {
+				presentBatches[b] = drawBatch(0);
+				missingBatches[b] = drawBatch(1); // Odd keys are never in the tree
+			}
+			batchCursor = 0;
+		}
+
+		int nextRank() { // Cycles through the access sequence. O(1)
+			int rank = access[cursor];
+			cursor = (cursor + 1) % ACCESSES;
+			return rank;
+		}
+
+		int[] drawBatch(int offset) { // BATCH distinct keys 2r + offset following the access sequence. O(BATCH)
+			int[] batch = new int[BATCH];
+			Set<Integer> seen = new HashSet<>();
+			int i = 0;
+			int draws = 0;
+			while (i < batch.length) {
+				int rank = draws++ < ACCESSES ? nextRank() : rnd.nextInt(size); // A skewed sequence may run out of distinct keys
+				int key = 2 * rank + offset;
+				if (seen.add(key)) {
+					batch[i++] = key;
+				}
+			}
+			return batch;
+		}
+
+		int[] nextBatch(int[][] batches) { // O(1)
+			batchCursor = (batchCursor + 1) % BATCHES;
+			return batches[batchCursor];
+		}
+	}
+
+	public static class InsertState extends TreeState {
+		int[] batch;
+
+		@Setup(Level.Invocation)
+		public void pickMissingKeys() {
+			batch = nextBatch(missingBatches);
+		}
+
+		@TearDown(Level.Invocation)
+		public void restore() {
+			for (int k : batch) {
+				tree.delete(k);
+			}
+		}
+	}
+
+	public static class DeleteState extends TreeState {
+		int[] batch;
+
+		@Setup(Level.Invocation)
+		public void pickPresentKeys() {
+			batch = nextBatch(presentBatches);
+		}
+
+		@TearDown(Level.Invocation)
+		public void restore() {
+			for (int k : batch) {
+				tree.insert(k, INFO);
+			}
+		}
+	}
+
+	public static class SplitState extends TreeState {
+		int x;
+
+		@Setup(Level.Invocation)
+		public void pickKey() {
+			x = 2 * nextRank();
+		}
+
+		@TearDown(Level.Invocation)
+		public void restore() {
+			tree.join(x, INFO);
+			tree.reattach();
+		}
+	}
+
+	public static class JoinState extends TreeState {
+		int x;
+
+		@Setup(Level.Invocation)
+		public void splitTree() {
+			x = 2 * nextRank();
+			tree.split(x);
+		}
+
+		@TearDown(Level.Invocation)
+		public void restore() {
+			tree.reattach();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int insert(InsertState s) {
+		int ops = 0;
+		for (int k : s.batch) {
+			ops += s.tree.insert(k, INFO);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int delete(DeleteState s) {
+		int ops = 0;
+		for (int k : s.batch) {
+			ops += s.tree.delete(k);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int insertThenDelete(TreeState s) { // Leaves the tree as it was, so no fixture allocations are counted: B/op is the update path alone
+		int[] batch = s.nextBatch(s.missingBatches);
+		int ops = 0;
+		for (int k : batch) {
+			ops += s.tree.insert(k, INFO);
+		}
+		for (int k : batch) {
+			ops += s.tree.delete(k);
+		}
+		return ops;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void search(TreeState s, Blackhole bh) {
+		for (int i = 0; i < BATCH; i++) {
+			bh.consume(s.tree.search(2 * s.nextRank()));
+		}
+	}
+
+	@Benchmark
+	public int[] keysToArray(TreeState s) {
+		return s.tree.keysToArray();
+	}
+
+	@Benchmark
+	public String[] infoToArray(TreeState s) {
+		return s.tree.infoToArray();
+	}
+
+	@Benchmark
+	public void split(SplitState s) {
+		s.tree.split(s.x);
+	}
+
+	@Benchmark
+	public int join(JoinState s) {
+		return s.tree.join(s.x, INFO);
+	}
+}
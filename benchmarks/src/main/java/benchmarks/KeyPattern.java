@@ -0,0 +1,130 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * KeyPattern
+ *
+ * The key orders the benchmarks drive the tree with.
+ * A tree of size n always holds the even keys 0, 2, ..., 2(n-1), so odd keys are
+ * guaranteed misses and can be used as fresh keys for insert benchmarks.
+ */
+public enum KeyPattern {
+	SEQUENTIAL, // Ascending keys - every insert lands on the right spine
+	RANDOM, // Uniformly shuffled keys
+	ZIPFIAN, // Skewed accesses (theta = 0.99) over scattered hot keys, YCSB style
+	ADVERSARIAL; // Alternating from both ends inwards - every insert lands on an inner grandchild, forcing double rotations
+
+	private static final double ZIPF_THETA = 0.99;
+
+	/**
+	 * public int[] insertionOrder(int n, Random rnd)
+	 *
+	 * Returns the n present keys {0, 2, ..., 2(n-1)} in the order this pattern inserts them.
+	 */
+	public int[] insertionOrder(int n, Random rnd) { // O(n)
+		int[] ranks = ranks(n, n, rnd, true);
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * ranks[i];
+		}
+		return keys;
+	}
+
+	/**
+	 * public int[] accessSequence(int n, int count, Random rnd)
+	 *
+	 * Returns count ranks in [0, n) in the order this pattern touches them.
+	 * Unlike insertionOrder, ranks may repeat (ZIPFIAN does, heavily).
+	 */
+	public int[] accessSequence(int n, int count, Random rnd) { // O(n + count)
+		return ranks(n, count, rnd, false);
+	}
+
+	private int[] ranks(int n, int count, Random rnd, boolean distinct) {
+		int[] result = new int[count];
+		switch (this) {
+			case SEQUENTIAL:
+				for (int i = 0; i < count; i++) {
+					result[i] = i % n;
+				}
+				break;
+			case ADVERSARIAL:
+				for (int i = 0; i < count; i++) {
+					int j = (i % n) / 2;
+					result[i] = (i % 2 == 0) ? j : n - 1 - j; // 0, n-1, 1, n-2, ...
+				}
+				break;
+			case RANDOM:
+				if (distinct) {
+					fillShuffled(result, rnd);
+				} else {
+					for (int i = 0; i < count; i++) {
+						result[i] = rnd.nextInt(n);
+					}
+				}
+				break;
+			case ZIPFIAN:
+				if (distinct) { // A permutation has no skew, the skew only shows in accesses
+					fillShuffled(result, rnd);
+				} else {
+					int[] scatter = new int[n]; // Hot ranks are spread over the key space instead of clustered at 0
+					fillShuffled(scatter, rnd);
+					Zipf zipf = new Zipf(n, ZIPF_THETA);
+					for (int i = 0; i < count; i++) {
+						result[i] = scatter[zipf.next(rnd)];
+					}
+				}
+				break;
+		}
+		return result;
+	}
+
+	private static void fillShuffled(int[] array, Random rnd) { // Fisher-Yates over 0..array.length-1. O(n)
+		for (int i = 0; i < array.length; i++) {
+			array[i] = i;
+		}
+		for (int i = array.length - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			int tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+
+	private static final class Zipf { // Gray et al. "Quickly generating billion-record synthetic databases", as used by YCSB
+		private final int n;
+		private final double theta;
+		private final double zetaN;
+		private final double alpha;
+		private final double eta;
+
+		Zipf(int n, double theta) { // O(n) for the zeta constant
+			this.n = n;
+			this.theta = theta;
+			this.zetaN = zeta(n, theta);
+			this.alpha = 1.0 / (1.0 - theta);
+			this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+		}
+
+		int next(Random rnd) { // O(1)
+			double u = rnd.nextDouble();
+			double uz = u * zetaN;
+			if (uz < 1.0) {
+				return 0;
+			}
+			if (uz < 1.0 + Math.pow(0.5, theta)) {
+				return Math.min(1, n - 1);
+			}
+			return Math.min((int) (n * Math.pow(eta * u - eta + 1, alpha)), n - 1);
+		}
+
+		private static double zeta(int n, double theta) {
+			double sum = 0;
+			for (int i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, theta);
+			}
+			return sum;
+		}
+	}
+}
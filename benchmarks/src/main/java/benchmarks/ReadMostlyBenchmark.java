@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReadMostlyBenchmark
+ *
+ * Throughput of one tree shared by 19 reader threads calling search and 1 writer thread inserting and deleting,
+ * so about 95% of the threads read. The split is changed with -tg readers,writers, e.g. -tg 38,2 on more cores.
+ * Compare impl=LockedAVLTreeDriver (every call under one lock) with impl=ConcurrentAVLTreeDriver.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Group)
+public class ReadMostlyBenchmark {
+	@Param({"1000000"})
+	public int size;
+
+	@Param({"RANDOM", "ZIPFIAN"})
+	public KeyPattern pattern;
+
+	@Param({"LockedAVLTreeDriver", "ConcurrentAVLTreeDriver"})
+	public String impl;
+
+	TreeDriver tree;
+	int[] access; // Ranks in [0, size), key of rank r is 2r
+
+	@Setup(Level.Trial)
+	public void build() {
+		Random rnd = new Random(42);
+		tree = TreeDriver.create(impl);
+		for (int k : pattern.insertionOrder(size, rnd)) {
+			tree.insert(k, AVLTreeBenchmark.INFO);
+		}
+		access = pattern.accessSequence(size, AVLTreeBenchmark.ACCESSES, rnd);
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int position;
+		Random rnd;
+
+		@Setup(Level.Trial)
+		public void start() {
+			rnd = new Random(Thread.currentThread().getId());
+			position = rnd.nextInt(AVLTreeBenchmark.ACCESSES); // Threads start at different points of the sequence
+		}
+
+		int nextRank(int[] access) { // O(1)
+			int rank = access[position];
+			position = (position + 1) % access.length;
+			return rank;
+		}
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(19)
+	public String search(Cursor c) {
+		return tree.search(2 * c.nextRank(access));
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(1)
+	public int insertThenDelete(Cursor c) { // Odd keys are never in the tree, so the tree keeps its size
+		int k = 2 * c.nextRank(access) + 1;
+		return tree.insert(k, AVLTreeBenchmark.INFO) + tree.delete(k);
+	}
+}
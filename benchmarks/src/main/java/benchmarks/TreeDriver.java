@@ -0,0 +1,29 @@
+package benchmarks;
+
+/**
+ * TreeDriver
+ *
+ * The operations the benchmarks drive, as seen from a named package.
+ * JMH refuses benchmarks in the default package, and named packages cannot refer to
+ * AVLTree (which lives in the default package), so every tree is driven through an
+ * adapter in the default package that implements this interface, loaded by name.
+ * Each benchmark fork only ever loads one adapter, so the JIT inlines these calls.
+ */
+public interface TreeDriver {
+	int insert(int k, String i);
+	int delete(int k);
+	String search(int k);
+	int[] keysToArray();
+	String[] infoToArray();
+	void split(int x); // Splits the tree at x (which must be in it) and keeps both halves for join
+	int join(int x, String i); // Joins the halves kept by split with a new node (x, i) between them
+	void reattach(); // Makes the result of the last join the driven tree again
+
+	static TreeDriver create(String className) { // Adapters live in the default package and have a no-args constructor
+		try {
+			return (TreeDriver) Class.forName(className).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("No tree driver named " + className, e);
+		}
+	}
+}
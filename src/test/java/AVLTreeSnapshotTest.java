@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AVLTreeSnapshotTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	public void roundTripKeepsEveryItem() throws IOException {
+		Random random = new Random(1);
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		oracle.put(Integer.MIN_VALUE, "min");
+		oracle.put(Integer.MAX_VALUE, null);
+		char[] big = new char[100000]; // Longer than the write buffer
+		Arrays.fill(big, 'א');
+		oracle.put(0, new String(big));
+		while (oracle.size() < 20000) {
+			int k = random.nextInt();
+			oracle.put(k, random.nextInt(5) == 0 ? null : random.nextInt(5) == 0 ? "" : "é" + k);
+		}
+		AVLTree tree = new AVLTree();
+		for (Map.Entry<Integer, String> entry : oracle.entrySet()) {
+			tree.insert(entry.getKey(), entry.getValue());
+		}
+		Path path = this.directory.resolve("snapshot");
+		AVLTreeSnapshot.write(tree, path);
+		for (boolean compact : new boolean[]{false, true}) {
+			AVLTree read = AVLTreeSnapshot.read(path, compact);
+			assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), read.keysToArray());
+			assertArrayEquals(oracle.values().toArray(new String[0]), read.infoToArray());
+		}
+	}
+
+	@Test
+	public void roundTripOfAnEmptyTree() throws IOException {
+		Path path = this.directory.resolve("snapshot");
+		AVLTreeSnapshot.write(new AVLTree(), path);
+		assertTrue(AVLTreeSnapshot.read(path).empty());
+	}
+
+	@Test
+	public void everyFlippedByteIsDetected() throws IOException {
+		AVLTree tree = new AVLTree();
+		for (int k = 0; k < 50; k++) {
+			tree.insert(3 * k, k % 7 == 0 ? null : "info" + k);
+		}
+		Path path = this.directory.resolve("snapshot");
+		AVLTreeSnapshot.write(tree, path);
+		byte[] bytes = Files.readAllBytes(path);
+		Path corrupt = this.directory.resolve("corrupt");
+		for (int b = 0; b < bytes.length; b++) {
+			byte[] flipped = bytes.clone();
+			flipped[b] ^= 0x10;
+			Files.write(corrupt, flipped);
+			assertThrows(IOException.class, () -> AVLTreeSnapshot.read(corrupt), "byte " + b);
+		}
+	}
+
+	@Test
+	public void everyTruncationIsDetected() throws IOException {
+		AVLTree tree = new AVLTree();
+		for (int k = 0; k < 50; k++) {
+			tree.insert(k * k, "info" + k);
+		}
+		Path path = this.directory.resolve("snapshot");
+		AVLTreeSnapshot.write(tree, path);
+		byte[] bytes = Files.readAllBytes(path);
+		Path truncated = this.directory.resolve("truncated");
+		for (int length = 0; length < bytes.length; length++) {
+			Files.write(truncated, Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> AVLTreeSnapshot.read(truncated), "length " + length);
+		}
+	}
+
+	@Test
+	public void trailingBytesAreDetected() throws IOException {
+		AVLTree tree = new AVLTree();
+		tree.insert(1, "1");
+		Path path = this.directory.resolve("snapshot");
+		AVLTreeSnapshot.write(tree, path);
+		byte[] bytes = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(bytes, bytes.length + 1));
+		IOException e = assertThrows(IOException.class, () -> AVLTreeSnapshot.read(path));
+		assertEquals(path + " is corrupt", e.getMessage());
+	}
+}
@@ -0,0 +1,724 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+public class AVLTreeTest {
+	@Test
+	public void deleteOfALeafWithOnlyARightSiblingIsNotAMiss() {
+		AVLTree tree = new AVLTree();
+		tree.insert(8, "8");
+		tree.insert(0, "0");
+		tree.insert(9, "9");
+		assertEquals(0, tree.delete(0)); // Used to return -1: the second rebalance pass from 9 counted nothing, less one
+		assertEquals(-1, tree.delete(0));
+		assertEquals(2, tree.size());
+	}
+
+	@Test
+	public void insertAndDeleteReturnMinusOneOnlyForPresentOrMissingKeys() {
+		for (int round = 0; round < 12; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree();
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			int range = round % 2 == 0 ? 30 : 3000;
+			for (int step = 0; step < 4000; step++) {
+				int k = random.nextInt(range);
+				boolean present = oracle.containsKey(k);
+				if (random.nextInt(3) > 0) {
+					int result = tree.insert(k, "i" + k);
+					assertEquals(present, result == -1);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else {
+					int result = tree.delete(k);
+					assertEquals(!present, result == -1);
+					assertTrue(result >= -1);
+					oracle.remove(k);
+				}
+				assertEquals(oracle.size(), tree.size());
+			}
+		}
+	}
+
+	@Test
+	public void insertAllAndDeleteAllMatchTreeMap() {
+		for (int round = 0; round < 12; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree(round % 2 == 1);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			int range = round % 3 == 0 ? 200 : 20000;
+			for (int step = 0; step < 150; step++) {
+				int[] keys = sortedKeys(random, range, 1 + random.nextInt(step % 10 == 0 ? 2000 : 40));
+				if (random.nextInt(3) > 0) {
+					String[] infos = new String[keys.length];
+					for (int j = 0; j < keys.length; j++) {
+						infos[j] = "b" + keys[j] + "-" + step;
+						oracle.putIfAbsent(keys[j], infos[j]); // An existing key keeps its info
+					}
+					assertTrue(tree.insertAll(keys, infos) >= 0);
+				}
+				else {
+					for (int k : keys) {
+						oracle.remove(k);
+					}
+					assertTrue(tree.deleteAll(keys) >= 0);
+				}
+				assertSame(oracle, tree);
+			}
+			tree.deleteAll(oracle.keySet().stream().mapToInt(Integer::intValue).toArray());
+			assertSame(new TreeMap<>(), tree);
+		}
+	}
+
+	@Test
+	public void insertAllAndDeleteAllRejectUnsortedBatches() {
+		AVLTree tree = new AVLTree();
+		tree.insertAll(new int[]{1, 5, 9}, new String[]{"a", "b", "c"});
+		assertThrows(IllegalArgumentException.class, () -> tree.insertAll(new int[]{2, 2}, new String[]{"x", "y"}));
+		assertThrows(IllegalArgumentException.class, () -> tree.insertAll(new int[]{3, 2}, new String[]{"x", "y"}));
+		assertThrows(IllegalArgumentException.class, () -> tree.insertAll(new int[]{2, 3}, new String[]{"x"}));
+		assertThrows(IllegalArgumentException.class, () -> tree.deleteAll(new int[]{9, 1}));
+		assertArrayEquals(new int[]{1, 5, 9}, tree.keysToArray()); // A rejected batch changes nothing
+	}
+
+	@Test
+	public void unionIntersectAndDifferenceMatchTreeMap() {
+		for (int round = 0; round < 60; round++) {
+			Random random = new Random(round);
+			int op = round % 3;
+			TreeMap<Integer, String> a = randomMap(random, "a", random.nextInt(round % 4 == 0 ? 3 : 2000), 0, 4000);
+			int offset = round % 5 == 0 ? 5000 : random.nextInt(3000); // Disjoint every fifth round
+			TreeMap<Integer, String> b = randomMap(random, "b", random.nextInt(round % 4 == 1 ? 3 : 2000), offset, 4000);
+			AVLTree tree = treeOf(a, round % 2 == 1);
+			AVLTree other = treeOf(b, round % 6 < 3);
+			TreeMap<Integer, String> expected = new TreeMap<>(a);
+			if (op == 0) {
+				b.forEach(expected::putIfAbsent); // This tree's info wins
+				tree.union(other);
+			}
+			else if (op == 1) {
+				expected.keySet().retainAll(b.keySet());
+				tree.intersect(other);
+			}
+			else {
+				expected.keySet().removeAll(b.keySet());
+				tree.difference(other);
+			}
+			assertSame(expected, tree);
+			assertSame(new TreeMap<>(), other); // t's nodes moved or were dropped
+		}
+	}
+
+	@Test
+	public void setOperationsWithItself() {
+		TreeMap<Integer, String> a = randomMap(new Random(7), "a", 500, 0, 2000);
+		AVLTree tree = treeOf(a, false);
+		tree.union(tree);
+		assertSame(a, tree);
+		tree.intersect(tree);
+		assertSame(a, tree);
+		tree.difference(tree);
+		assertSame(new TreeMap<>(), tree);
+	}
+
+	@Test
+	public void selectRankAndCountRangeMatchTreeMap() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree(round % 2 == 1);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int step = 0; step < 3000; step++) {
+				int k = random.nextInt(1000);
+				if (random.nextInt(3) > 0) {
+					tree.insert(k, "i" + k);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else {
+					tree.delete(k);
+					oracle.remove(k);
+				}
+				if (step % 100 == 0) {
+					if (step == 1500) { // Keys at the ends of the int range
+						tree.insert(Integer.MAX_VALUE, "max");
+						oracle.put(Integer.MAX_VALUE, "max");
+					}
+					Integer[] keys = oracle.keySet().toArray(new Integer[0]);
+					for (int i = -1; i <= keys.length; i++) {
+						AVLTree.IAVLNode node = tree.select(i);
+						assertEquals(i >= 0 && i < keys.length ? keys[i] : null, node == null ? null : node.getKey());
+					}
+					for (int j = 0; j < 50; j++) {
+						int lo = random.nextInt(1100) - 50;
+						int hi = random.nextInt(4) == 0 ? Integer.MAX_VALUE : lo + random.nextInt(300) - 20;
+						assertEquals(oracle.headMap(lo, false).size(), tree.rank(lo));
+						assertEquals(lo > hi ? 0 : oracle.subMap(lo, true, hi, true).size(), tree.countRange(lo, hi));
+					}
+					assertEquals(oracle.size(), tree.rank(Integer.MAX_VALUE) + (oracle.containsKey(Integer.MAX_VALUE) ? 1 : 0));
+					assertEquals(0, tree.rank(Integer.MIN_VALUE));
+					assertEquals(oracle.size(), tree.countRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void neighboursAndRangeMatchTreeMap() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			TreeMap<Integer, String> oracle = randomMap(random, "n", round == 0 ? 0 : random.nextInt(3000), -2000, 4000);
+			if (round % 4 == 3) { // Keys at the ends of the int range
+				oracle.put(Integer.MIN_VALUE, "min");
+				oracle.put(Integer.MAX_VALUE, "max");
+			}
+			AVLTree tree = treeOf(oracle, round % 2 == 1);
+			for (int j = 0; j < 2000; j++) {
+				int k = j < 4 ? new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, -2001, 2000}[j] : random.nextInt(4400) - 2200;
+				assertEquals(oracle.floorKey(k), keyOf(tree.floor(k)));
+				assertEquals(oracle.lowerKey(k), keyOf(tree.lower(k)));
+				assertEquals(oracle.ceilingKey(k), keyOf(tree.ceiling(k)));
+				assertEquals(oracle.higherKey(k), keyOf(tree.higher(k)));
+				if (oracle.containsKey(k)) {
+					assertEquals(oracle.get(k), tree.floor(k).getValue());
+				}
+			}
+			for (int j = 0; j < 300; j++) {
+				int lo = j == 0 ? Integer.MIN_VALUE : random.nextInt(4400) - 2200;
+				int hi = j == 0 ? Integer.MAX_VALUE : lo + random.nextInt(600) - 50;
+				List<Integer> expected = new ArrayList<>(lo > hi ? Collections.<Integer>emptySet() : oracle.subMap(lo, true, hi, true).keySet());
+				List<Integer> actual = new ArrayList<>();
+				Iterator<AVLTree.IAVLNode> it = tree.range(lo, hi);
+				while (it.hasNext()) {
+					actual.add(it.next().getKey());
+				}
+				assertEquals(expected, actual);
+				assertThrows(NoSuchElementException.class, it::next);
+			}
+		}
+	}
+
+	@Test
+	public void parallelOperationsMatchTreeMap() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int round = 0; round < 8; round++) {
+				Random random = new Random(round);
+				boolean compact = round % 2 == 1;
+				int n = new int[]{0, 100, 20000, 70000}[round % 4]; // The larger ones fork
+				int[] unsorted = new int[n];
+				String[] unsortedInfos = new String[n];
+				TreeMap<Integer, String> oracle = new TreeMap<>();
+				for (int j = 0; j < n; j++) {
+					unsorted[j] = random.nextInt(2 * n + 1) - n;
+					unsortedInfos[j] = "u" + unsorted[j] + "-" + j;
+					oracle.putIfAbsent(unsorted[j], unsortedInfos[j]); // The first of equal keys wins
+				}
+				int[] unsortedCopy = unsorted.clone();
+				String[] unsortedInfosCopy = unsortedInfos.clone();
+				assertSame(oracle, AVLTree.fromUnsorted(unsorted, unsortedInfos, compact));
+				assertArrayEquals(unsortedCopy, unsorted); // The arrays are not modified
+				assertArrayEquals(unsortedInfosCopy, unsortedInfos);
+				int[] keys = oracle.keySet().stream().mapToInt(Integer::intValue).toArray();
+				String[] infos = oracle.values().toArray(new String[0]);
+				AVLTree tree = AVLTree.fromSorted(keys, infos, compact, pool);
+				assertSame(oracle, tree);
+				assertArrayEquals(keys, tree.keysToArray(pool));
+				assertArrayEquals(infos, tree.infoToArray(pool));
+
+				TreeMap<Integer, String> kept = new TreeMap<>(oracle);
+				kept.keySet().removeIf(k -> Math.floorMod(k, 3) != 0);
+				assertSame(kept, tree.filter((k, info) -> Math.floorMod(k, 3) == 0, pool));
+				TreeMap<Integer, String> mapped = new TreeMap<>();
+				oracle.forEach((k, info) -> mapped.put(k, info + "!"));
+				AVLTree mappedTree = tree.mapValues((k, info) -> info + "!", pool);
+				assertSame(mapped, mappedTree);
+				if (n > 0) {
+					assertEquals(tree.getRoot().getHeight(), mappedTree.getRoot().getHeight()); // Same shape
+				}
+				assertSame(oracle, tree); // Neither touches this tree
+
+				TreeMap<Integer, String> other = randomMap(random, "o", n, -n / 2, 2 * n + 1);
+				TreeMap<Integer, String> expected = new TreeMap<>(oracle);
+				AVLTree otherTree = AVLTree.fromSorted(other.keySet().stream().mapToInt(Integer::intValue).toArray(), other.values().toArray(new String[0]), !compact);
+				int op = random.nextInt(3);
+				if (op == 0) {
+					other.forEach(expected::putIfAbsent);
+					tree.union(otherTree, pool);
+				}
+				else if (op == 1) {
+					expected.keySet().retainAll(other.keySet());
+					tree.intersect(otherTree, pool);
+				}
+				else {
+					expected.keySet().removeAll(other.keySet());
+					tree.difference(otherTree, pool);
+				}
+				assertSame(expected, tree);
+				assertSame(new TreeMap<>(), otherTree);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void streamsMatchTreeMap() {
+		for (int round = 0; round < 6; round++) {
+			Random random = new Random(round);
+			TreeMap<Integer, String> oracle = randomMap(random, "s", new int[]{0, 1, 7, 1000, 30000, 100000}[round], -50000, 200000);
+			AVLTree tree = treeOf(oracle, round % 2 == 1);
+			List<Integer> keys = new ArrayList<>(oracle.keySet());
+			assertEquals(keys, tree.stream().map(AVLTree.IAVLNode::getKey).collect(Collectors.toList()));
+			assertEquals(keys, tree.parallelStream().map(AVLTree.IAVLNode::getKey).collect(Collectors.toList()));
+			assertEquals(new ArrayList<>(oracle.values()), tree.parallelStream().map(AVLTree.IAVLNode::getValue).collect(Collectors.toList()));
+			assertEquals(oracle.keySet().stream().filter(k -> k % 7 == 0).count(), tree.parallelStream().filter(node -> node.getKey() % 7 == 0).count());
+			assertEquals(keys.stream().skip(keys.size() / 3).limit(50).collect(Collectors.toList()),
+					tree.stream().skip(keys.size() / 3).limit(50).map(AVLTree.IAVLNode::getKey).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void spliteratorSplitsIntoExactHalves() {
+		for (int n : new int[]{0, 1, 2, 3, 10, 1000, 4097}) {
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int k = 0; k < n; k++) {
+				oracle.put(3 * k, "p" + k);
+			}
+			AVLTree tree = treeOf(oracle, false);
+			Spliterator<AVLTree.IAVLNode> whole = tree.stream().spliterator();
+			assertTrue(whole.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.ORDERED));
+			assertEquals(n, whole.estimateSize());
+			assertEquals(n, whole.getExactSizeIfKnown());
+			List<Integer> keys = new ArrayList<>();
+			splitAndCollect(whole, keys, new Random(n));
+			assertEquals(new ArrayList<>(oracle.keySet()), keys);
+		}
+	}
+
+	private static void splitAndCollect(Spliterator<AVLTree.IAVLNode> spliterator, List<Integer> keys, Random random) { // Splits down to single nodes, checking sizes, and collects the keys in order
+		if (random.nextInt(4) == 0 && spliterator.estimateSize() > 0) { // Advance a bit before splitting
+			assertTrue(spliterator.tryAdvance(node -> keys.add(node.getKey())));
+		}
+		long size = spliterator.estimateSize();
+		Spliterator<AVLTree.IAVLNode> prefix = spliterator.trySplit();
+		if (prefix == null) {
+			assertTrue(size <= 1);
+			spliterator.forEachRemaining(node -> keys.add(node.getKey()));
+			assertEquals(0, spliterator.estimateSize());
+			return;
+		}
+		assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+		assertEquals(size / 2, prefix.estimateSize()); // The lower half, rounded down
+		splitAndCollect(prefix, keys, random);
+		splitAndCollect(spliterator, keys, random);
+	}
+
+	@Test
+	public void insertCountsAsTheBottomUpInsertDid() {
+		int[] expected = {1738, 1791, 17746, 19956}; // Totals of the bottom-up insert the top-down one replaced, for the same keys
+		for (int round = 0; round < 4; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree(round % 2 == 1);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			long total = 0;
+			for (int step = 0; step < 5000; step++) {
+				int k = round == 3 ? step : random.nextInt(round < 2 ? 500 : 1000000);
+				int result = tree.insert(k, "i" + k);
+				assertEquals(oracle.containsKey(k), result == -1);
+				oracle.putIfAbsent(k, "i" + k);
+				total += Math.max(result, 0);
+				if (step % 500 == 0 || result == -1) { // A duplicate must take back the sizes it counted on the way down
+					assertSame(oracle, tree);
+					assertMinMax(tree.getRoot());
+				}
+			}
+			assertEquals(expected[round], total);
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void insertBelowANodeOfAnotherLayout() {
+		for (boolean compact : new boolean[]{false, true}) {
+			Random random = new Random(compact ? 1 : 0);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int k = 0; k < 100; k++) {
+				oracle.put(k, "l" + k);
+				oracle.put(k + 200, "r" + k);
+			}
+			AVLTree tree = AVLTree.fromSorted(oracle.headMap(100).keySet().stream().mapToInt(Integer::intValue).toArray(), oracle.headMap(100).values().toArray(new String[0]), compact);
+			AVLTree right = AVLTree.fromSorted(oracle.tailMap(100).keySet().stream().mapToInt(Integer::intValue).toArray(), oracle.tailMap(100).values().toArray(new String[0]), compact);
+			AVLTree holder = new AVLTree(!compact); // Its node can't count new keys on the way down
+			holder.insert(150, "x");
+			tree.join(holder.getRoot(), right);
+			oracle.put(150, "x");
+			for (int step = 0; step < 2000; step++) {
+				int k = random.nextInt(300);
+				assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k) == -1);
+				oracle.putIfAbsent(k, "i" + k);
+				if (random.nextInt(4) == 0) {
+					int d = random.nextInt(300);
+					assertEquals(!oracle.containsKey(d), tree.delete(d) == -1);
+					oracle.remove(d);
+				}
+				assertSame(oracle, tree);
+			}
+			assertMinMax(tree.getRoot());
+		}
+	}
+
+	@Test
+	public void fingerMatchesTreeMapAndTheTreesOwnUpdates() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			boolean compact = round % 2 == 1;
+			AVLTree tree = new AVLTree(compact);
+			AVLTree twin = new AVLTree(compact); // Takes the same updates from the root
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			AVLTree.Finger finger = tree.finger();
+			assertEquals(null, finger.getNode());
+			assertEquals(null, finger.search(5));
+			assertEquals(-1, finger.delete(5));
+			int k = 0;
+			for (int step = 0; step < 6000; step++) {
+				k = random.nextInt(10) == 0 ? random.nextInt(4000) - 2000 : k + random.nextInt(17) - 8; // Mostly near the last key
+				int choice = random.nextInt(100);
+				if (choice < 45) {
+					assertEquals(twin.insert(k, "i" + k), finger.insert(k, "i" + k));
+					oracle.putIfAbsent(k, "i" + k);
+					assertEquals(k, finger.getNode().getKey());
+				}
+				else if (choice < 75) {
+					Integer next = oracle.higherKey(k) != null ? oracle.higherKey(k) : oracle.lowerKey(k);
+					assertEquals(twin.delete(k), finger.delete(k));
+					if (oracle.remove(k) != null) {
+						assertEquals(next, keyOf(finger.getNode())); // Rests on the successor, or the predecessor of the largest
+					}
+				}
+				else if (choice < 95) {
+					assertEquals(oracle.get(k), finger.search(k));
+					if (oracle.containsKey(k)) {
+						assertEquals(k, finger.getNode().getKey());
+					}
+				}
+				else { // An update that does not go through the finger, maybe deleting the node it rests on
+					int other = finger.getNode() != null && random.nextBoolean() ? finger.getNode().getKey() : k + 1;
+					assertEquals(twin.delete(other), tree.delete(other));
+					oracle.remove(other);
+				}
+				if (step % 200 == 0) {
+					assertSame(oracle, tree);
+					assertSame(oracle, twin);
+				}
+			}
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void aggregatesMatchAFoldOverTreeMap() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree();
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			tree.setAggregator(IN_ORDER);
+			AVLTree.Finger finger = tree.finger();
+			for (int step = 0; step < 3000; step++) {
+				int k = random.nextInt(2000) - 1000;
+				int choice = random.nextInt(100);
+				if (choice < 40) {
+					tree.insert(k, "i" + k);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else if (choice < 50) {
+					finger.insert(k, "f" + k);
+					oracle.putIfAbsent(k, "f" + k);
+				}
+				else if (choice < 80) {
+					tree.delete(k);
+					oracle.remove(k);
+				}
+				else if (choice < 84) {
+					int[] keys = sortedKeys(random, 2000, 30);
+					String[] infos = new String[keys.length];
+					for (int j = 0; j < keys.length; j++) {
+						keys[j] -= 1000;
+						infos[j] = "b" + keys[j];
+						oracle.putIfAbsent(keys[j], infos[j]);
+					}
+					tree.insertAll(keys, infos);
+				}
+				else if (choice < 88) {
+					TreeMap<Integer, String> other = randomMap(random, "u", 30, -1000, 2000);
+					AVLTree otherTree = treeOf(other, false); // Takes the aggregator as it is combined in
+					other.forEach(oracle::putIfAbsent);
+					tree.union(otherTree);
+				}
+				else if (choice < 92 && oracle.containsKey(k)) { // Split at k and join back through a new node for k
+					AVLTree[] halves = tree.split(k);
+					assertEquals(fold(oracle.headMap(k, false)), halves[0].<String>aggregate());
+					assertEquals(fold(oracle.tailMap(k, false)), halves[1].<String>aggregate());
+					AVLTree holder = new AVLTree();
+					holder.insert(k, "j" + k);
+					halves[0].join(holder.getRoot(), halves[1]);
+					tree = halves[0].joined(halves[1]);
+					oracle.put(k, "j" + k);
+					finger = tree.finger();
+				}
+				else if (choice < 94) {
+					assertEquals(fold(oracle.headMap(0)), tree.filter((key, info) -> key < 0).<String>aggregate());
+					assertEquals(fold(oracle), tree.mapValues((key, info) -> info).<String>aggregate());
+				}
+				assertEquals(fold(oracle), tree.<String>aggregate());
+				for (int j = 0; j < 5; j++) {
+					int lo = random.nextInt(2200) - 1100;
+					int hi = lo + random.nextInt(500) - 20;
+					assertEquals(lo > hi ? "" : fold(oracle.subMap(lo, true, hi, true)), tree.<String>aggregate(lo, hi));
+				}
+			}
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void aggregatesNeedTheDefaultLayout() {
+		AVLTree compact = new AVLTree(true);
+		assertThrows(IllegalStateException.class, () -> compact.setAggregator(IN_ORDER));
+		AVLTree tree = AVLTree.fromSorted(new int[]{1, 2, 3}, new String[]{"a", "b", "c"});
+		tree.setAggregator(IN_ORDER);
+		AVLTree compactRight = AVLTree.fromSorted(new int[]{10, 11}, new String[]{"x", "y"}, true);
+		assertThrows(IllegalArgumentException.class, () -> tree.join(item(5, "m", false), compactRight));
+		assertThrows(IllegalArgumentException.class, () -> tree.join(item(5, "m", true), new AVLTree()));
+		assertThrows(IllegalArgumentException.class, () -> tree.union(compactRight));
+		assertArrayEquals(new int[]{1, 2, 3}, tree.keysToArray()); // Nothing was taken in
+		assertArrayEquals(new int[]{10, 11}, compactRight.keysToArray());
+
+		AVLTree mixed = AVLTree.fromSorted(new int[]{1, 2, 3}, new String[]{"a", "b", "c"});
+		mixed.join(item(5, "m", true), new AVLTree());
+		assertThrows(IllegalStateException.class, () -> mixed.setAggregator(IN_ORDER));
+		assertEquals(null, mixed.getAggregator());
+	}
+
+	@Test
+	public void rankBalancedTreesMatchTreeMapAndKeepWeakAvlRanks() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			AVLTree tree = new AVLTree(round % 2 == 1, true);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			int range = round < 4 ? 300 : 30000;
+			for (int k = 0; k < 3000; k++) { // Without deletes, the weak AVL rules build an AVL tree
+				int key = random.nextInt(range);
+				assertEquals(oracle.containsKey(key), tree.insert(key, "i" + key) == -1);
+				oracle.putIfAbsent(key, "i" + key);
+			}
+			assertSame(oracle, tree);
+			for (int step = 0; step < 6000; step++) {
+				int k = random.nextInt(range);
+				int result;
+				if (random.nextInt(100) < (step < 4000 ? 35 : 60)) { // Grows, then shrinks
+					result = tree.insert(k, "i" + k);
+					assertEquals(oracle.containsKey(k), result == -1);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else {
+					result = tree.delete(k);
+					assertEquals(!oracle.containsKey(k), result == -1);
+					oracle.remove(k);
+				}
+				assertTrue(result >= -1);
+				if (step % 100 == 0) {
+					assertSameWavl(oracle, tree);
+				}
+			}
+			assertSameWavl(oracle, tree);
+			assertTrue(tree.isRankBalanced());
+		}
+	}
+
+	@Test
+	public void rankBalancedModeSpreadsThroughJoinsAndSetOperations() {
+		for (int round = 0; round < 4; round++) {
+			Random random = new Random(round);
+			TreeMap<Integer, String> a = randomMap(random, "a", 2000, 0, 10000);
+			TreeMap<Integer, String> b = randomMap(random, "b", 2000, 5000, 10000);
+			AVLTree tree = new AVLTree(false, round % 2 == 0);
+			AVLTree other = new AVLTree(false, round % 2 == 1);
+			a.forEach(tree::insert);
+			b.forEach(other::insert);
+			for (int k = 0; k < 10000; k += 3) { // Leaves legal (2,2) nodes, which an AVL tree would not allow
+				if (round % 2 == 0 ? a.remove(k) != null : b.remove(k) != null) {
+					(round % 2 == 0 ? tree : other).delete(k);
+				}
+			}
+			TreeMap<Integer, String> expected = new TreeMap<>(a);
+			b.forEach(expected::putIfAbsent);
+			tree.union(other);
+			assertTrue(tree.isRankBalanced());
+			assertTrue(other.isRankBalanced());
+			assertSameWavl(expected, tree);
+			AVLTree[] halves = tree.split(expected.ceilingKey(7000));
+			assertTrue(halves[0].isRankBalanced() && halves[1].isRankBalanced());
+			assertSameWavl(new TreeMap<>(expected.headMap(expected.ceilingKey(7000))), halves[0]);
+			assertSameWavl(new TreeMap<>(expected.tailMap(expected.ceilingKey(7000), false)), halves[1]);
+			assertSameWavl(new TreeMap<>(expected.headMap(2500)), halves[0].filter((k, info) -> k < 2500));
+		}
+	}
+
+	private static void assertSameWavl(TreeMap<Integer, String> oracle, AVLTree tree) { // assertSame, with weak AVL ranks instead of heights
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty() ? null : oracle.firstEntry().getValue(), tree.min());
+		assertEquals(oracle.isEmpty() ? null : oracle.lastEntry().getValue(), tree.max());
+		if (!oracle.isEmpty()) {
+			assertEquals(null, tree.getRoot().getParent());
+			int rank = assertWeakAvl(tree.getRoot());
+			assertTrue(rank <= 2 * (31 - Integer.numberOfLeadingZeros(oracle.size())) + 1); // Rank at most 2log(n)
+		}
+	}
+
+	private static int assertWeakAvl(AVLTree.IAVLNode node) { // Returns the sub-tree's rank, checking that rank differences are 1 or 2, leaves have rank 0, and sizes and parent links
+		if (!node.isRealNode()) {
+			assertEquals(-1, node.getHeight());
+			return -1;
+		}
+		for (AVLTree.IAVLNode child : new AVLTree.IAVLNode[]{node.getLeft(), node.getRight()}) {
+			if (child.isRealNode()) {
+				assertEquals(node, child.getParent());
+			}
+		}
+		int left = assertWeakAvl(node.getLeft());
+		int right = assertWeakAvl(node.getRight());
+		int rank = node.getHeight();
+		assertTrue(rank - left == 1 || rank - left == 2, "Rank difference " + (rank - left) + " at " + node.getKey());
+		assertTrue(rank - right == 1 || rank - right == 2, "Rank difference " + (rank - right) + " at " + node.getKey());
+		if (left == -1 && right == -1) {
+			assertEquals(0, rank);
+		}
+		assertEquals(node.getLeft().getSize() + node.getRight().getSize() + 1, node.getSize());
+		return rank;
+	}
+
+	private static final AVLTree.Aggregator<String> IN_ORDER = new AVLTree.Aggregator<String>() { // The keys in order, which does not commute
+		public String identity() {
+			return "";
+		}
+
+		public String of(int key, String info) {
+			return key + ",";
+		}
+
+		public String combine(String left, String right) {
+			return left + right;
+		}
+	};
+
+	private static String fold(SortedMap<Integer, String> items) {
+		StringBuilder value = new StringBuilder();
+		for (int k : items.keySet()) {
+			value.append(k).append(',');
+		}
+		return value.toString();
+	}
+
+	private static AVLTree.IAVLNode item(int k, String info, boolean compact) { // A detached node holding k and info, for join
+		AVLTree holder = new AVLTree(compact);
+		holder.insert(k, info);
+		return holder.getRoot();
+	}
+
+	private static void assertMinMax(AVLTree.IAVLNode node) { // Checks every sub-tree's min and max nodes against its leftmost and rightmost ones
+		if (!node.isRealNode()) {
+			return;
+		}
+		AVLTree.IAVLNode leftmost = node;
+		while (leftmost.getLeft().isRealNode()) {
+			leftmost = leftmost.getLeft();
+		}
+		AVLTree.IAVLNode rightmost = node;
+		while (rightmost.getRight().isRealNode()) {
+			rightmost = rightmost.getRight();
+		}
+		assertEquals(leftmost, node.getMin());
+		assertEquals(rightmost, node.getMax());
+		assertMinMax(node.getLeft());
+		assertMinMax(node.getRight());
+	}
+
+	private static Integer keyOf(AVLTree.IAVLNode node) {
+		return node == null ? null : node.getKey();
+	}
+
+	private static TreeMap<Integer, String> randomMap(Random random, String prefix, int count, int from, int range) { // Up to count items with keys in [from, from + range)
+		TreeMap<Integer, String> map = new TreeMap<>();
+		for (int j = 0; j < count; j++) {
+			int k = from + random.nextInt(range);
+			map.put(k, prefix + k);
+		}
+		return map;
+	}
+
+	private static AVLTree treeOf(TreeMap<Integer, String> map, boolean compact) { // Built by single inserts, in random order
+		AVLTree tree = new AVLTree(compact);
+		Integer[] keys = map.keySet().toArray(new Integer[0]);
+		Collections.shuffle(Arrays.asList(keys), new Random(keys.length));
+		for (int k : keys) {
+			tree.insert(k, map.get(k));
+		}
+		return tree;
+	}
+
+	private static int[] sortedKeys(Random random, int range, int count) { // Up to count distinct keys below range, increasing
+		int[] keys = new int[count];
+		for (int j = 0; j < count; j++) {
+			keys[j] = random.nextInt(range);
+		}
+		return Arrays.stream(keys).sorted().distinct().toArray();
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, AVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty(), tree.empty());
+		assertEquals(oracle.isEmpty() ? null : oracle.firstEntry().getValue(), tree.min());
+		assertEquals(oracle.isEmpty() ? null : oracle.lastEntry().getValue(), tree.max());
+		if (!oracle.isEmpty()) {
+			assertEquals(null, tree.getRoot().getParent());
+			assertBalanced(tree.getRoot());
+		}
+	}
+
+	private static int assertBalanced(AVLTree.IAVLNode node) { // Returns the sub-tree's height, checking ranks, sizes and parent links
+		if (!node.isRealNode()) {
+			return -1;
+		}
+		for (AVLTree.IAVLNode child : new AVLTree.IAVLNode[]{node.getLeft(), node.getRight()}) {
+			if (child.isRealNode()) {
+				assertEquals(node, child.getParent());
+			}
+		}
+		int left = assertBalanced(node.getLeft());
+		int right = assertBalanced(node.getRight());
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.getHeight());
+		assertEquals(node.getLeft().getSize() + node.getRight().getSize() + 1, node.getSize());
+		return node.getHeight();
+	}
+}
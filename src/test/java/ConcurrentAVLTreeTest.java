@@ -0,0 +1,247 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentAVLTreeTest {
+	@Test
+	public void matchesTreeMapForAnyStripeCount() {
+		for (int stripes : new int[]{1, 3, 16}) {
+			Random random = new Random(stripes);
+			ConcurrentAVLTree tree = new ConcurrentAVLTree(stripes);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int step = 0; step < 20000; step++) {
+				int k = random.nextInt(4000) - 2000;
+				int choice = random.nextInt(100);
+				if (choice < 50) {
+					assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k) == -1);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else if (choice < 90) {
+					assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+					oracle.remove(k);
+				}
+				else if (choice < 95) {
+					int[] keys = batch(random, k);
+					String[] infos = new String[keys.length];
+					for (int j = 0; j < keys.length; j++) {
+						infos[j] = "b" + keys[j];
+						oracle.putIfAbsent(keys[j], infos[j]);
+					}
+					tree.insertAll(keys, infos);
+				}
+				else {
+					int[] keys = batch(random, k);
+					for (int key : keys) {
+						oracle.remove(key);
+					}
+					tree.deleteAll(keys);
+				}
+				assertEquals(oracle.get(k), tree.search(k));
+			}
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void wrapsATreeWithoutChangingIt() {
+		AVLTree tree = new AVLTree(true);
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		for (int k = 0; k < 1000; k++) {
+			tree.insert(3 * k, "i" + k);
+			oracle.put(3 * k, "i" + k);
+		}
+		ConcurrentAVLTree concurrent = new ConcurrentAVLTree(tree, 5);
+		assertEquals(5, concurrent.stripeCount());
+		assertSame(oracle, concurrent);
+		concurrent.delete(0);
+		assertEquals(1000, tree.size());
+	}
+
+	@Test
+	public void rejectsBadArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new ConcurrentAVLTree(0));
+		ConcurrentAVLTree tree = new ConcurrentAVLTree();
+		assertThrows(IllegalArgumentException.class, () -> tree.insertAll(new int[]{1, 2}, new String[1]));
+		assertThrows(IllegalArgumentException.class, () -> tree.insertAll(new int[]{2, 1}, new String[2]));
+		assertThrows(IllegalArgumentException.class, () -> tree.deleteAll(new int[]{1, 1}));
+		assertTrue(tree.empty()); // A batch that fails its check changes no stripe
+	}
+
+	@Test
+	public void concurrentWritersAndReadersAgree() throws Exception {
+		int writers = 4;
+		ConcurrentAVLTree tree = new ConcurrentAVLTree(8);
+		ConcurrentSkipListMap<Integer, String> oracle = new ConcurrentSkipListMap<>();
+		for (int k = 0; k < 4000; k += 2) { // Even keys stay put, the writers change only odd ones
+			tree.insert(k, "e" + k);
+			oracle.put(k, "e" + k);
+		}
+		AtomicBoolean done = new AtomicBoolean();
+		Throwable[] errors = new Throwable[writers + 2];
+		Thread[] threads = new Thread[writers + 2];
+		for (int t = 0; t < writers; t++) {
+			int owner = t;
+			threads[t] = new Thread(() -> { // Each writer owns the odd keys k with k / 2 % writers == owner
+				try {
+					Random random = new Random(owner);
+					for (int step = 0; step < 20000; step++) {
+						int k = 2 * (random.nextInt(2000 / writers) * writers + owner) + 1;
+						if (random.nextBoolean()) {
+							assertEquals(oracle.containsKey(k), tree.insert(k, "o" + k) == -1);
+							oracle.putIfAbsent(k, "o" + k);
+						}
+						else {
+							assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+							oracle.remove(k);
+						}
+					}
+				} catch (Throwable e) {
+					errors[owner] = e;
+				}
+			});
+		}
+		threads[writers] = new Thread(() -> { // Every even key is always there, in order, between odd ones
+			try {
+				Random random = new Random(writers);
+				int[] keys = new int[64];
+				String[] infos = new String[64];
+				while (!done.get()) {
+					int lo = 2 * random.nextInt(1980);
+					assertEquals("e" + lo, tree.search(lo));
+					assertEquals("e0", tree.min());
+					int copied = tree.range(lo, lo + 40, keys, infos);
+					int evens = 0;
+					for (int j = 0; j < copied; j++) {
+						assertTrue(j == 0 || keys[j - 1] < keys[j]);
+						assertTrue(lo <= keys[j] && keys[j] <= lo + 40);
+						assertEquals((keys[j] % 2 == 0 ? "e" : "o") + keys[j], infos[j]);
+						evens += keys[j] % 2 == 0 ? 1 : 0;
+					}
+					assertTrue(copied == keys.length || evens == 21);
+					assertTrue(tree.size() >= 2000);
+				}
+			} catch (Throwable e) {
+				errors[writers] = e;
+			}
+		});
+		threads[writers + 1] = new Thread(() -> { // Whole-tree walks are sorted
+			try {
+				while (!done.get()) {
+					int[] keys = tree.keysToArray();
+					for (int j = 1; j < keys.length; j++) {
+						assertTrue(keys[j - 1] < keys[j]);
+					}
+				}
+			} catch (Throwable e) {
+				errors[writers + 1] = e;
+			}
+		});
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (int t = 0; t < writers; t++) {
+			threads[t].join();
+		}
+		done.set(true);
+		threads[writers].join();
+		threads[writers + 1].join();
+		for (Throwable error : errors) {
+			if (error != null) {
+				throw new AssertionError(error);
+			}
+		}
+		assertSame(new TreeMap<>(oracle), tree);
+	}
+
+	@Test
+	public void readersSeeWholeBatches() throws Exception {
+		ConcurrentAVLTree tree = new ConcurrentAVLTree(16);
+		AtomicBoolean done = new AtomicBoolean();
+		Throwable[] errors = new Throwable[2];
+		Thread writer = new Thread(() -> { // Inserts and deletes pairs of keys, which almost always fall in two stripes
+			try {
+				Random random = new Random(1);
+				for (int step = 0; step < 50000; step++) {
+					int j = random.nextInt(500);
+					int[] pair = {2 * j, 2 * j + 1};
+					if (random.nextBoolean()) {
+						tree.insertAll(pair, new String[]{"a", "b"});
+					}
+					else {
+						tree.deleteAll(pair);
+					}
+				}
+			} catch (Throwable e) {
+				errors[0] = e;
+			}
+		});
+		Thread reader = new Thread(() -> {
+			try {
+				int[] keys = new int[1000];
+				while (!done.get()) {
+					int copied = tree.range(0, 999, keys, null);
+					assertEquals(0, copied % 2);
+					for (int j = 0; j < copied; j += 2) {
+						assertEquals(keys[j] + 1, keys[j + 1]);
+					}
+					assertEquals(0, tree.size() % 2);
+				}
+			} catch (Throwable e) {
+				errors[1] = e;
+			}
+		});
+		writer.start();
+		reader.start();
+		writer.join();
+		done.set(true);
+		reader.join();
+		for (Throwable error : errors) {
+			if (error != null) {
+				throw new AssertionError(error);
+			}
+		}
+	}
+
+	private static int[] batch(Random random, int k) { // A strictly increasing run of keys from k
+		int[] keys = new int[1 + random.nextInt(20)];
+		for (int j = 0; j < keys.length; j++) {
+			keys[j] = k + j * (1 + random.nextInt(3));
+		}
+		Arrays.sort(keys);
+		int distinct = 0;
+		for (int j = 0; j < keys.length; j++) {
+			if (j == 0 || keys[j] != keys[j - 1]) {
+				keys[distinct++] = keys[j];
+			}
+		}
+		return Arrays.copyOf(keys, distinct);
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, ConcurrentAVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty() ? null : oracle.firstEntry().getValue(), tree.min());
+		assertEquals(oracle.isEmpty() ? null : oracle.lastEntry().getValue(), tree.max());
+		int[] keys = new int[oracle.size()];
+		String[] infos = new String[oracle.size()];
+		int copied = tree.range(-100, 100, keys, infos);
+		Map<Integer, String> range = oracle.subMap(-100, true, 100, true);
+		assertEquals(range.size(), copied);
+		int j = 0;
+		for (Map.Entry<Integer, String> entry : range.entrySet()) {
+			assertEquals(entry.getKey().intValue(), keys[j]);
+			assertEquals(entry.getValue(), infos[j++]);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DurableAVLTreeTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	public void reopenReplaysTheLog() throws IOException {
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			randomChanges(tree, oracle, new Random(1), 2000);
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void reopenAfterCheckpointReplaysTheNewLog() throws IOException {
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		Random random = new Random(2);
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory, true)) {
+			randomChanges(tree, oracle, random, 1000);
+			tree.checkpoint();
+			randomChanges(tree, oracle, random, 1000);
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory, true)) {
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void crashKeepsEveryAcknowledgedChange() throws IOException {
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		Path crashed = this.directory.resolve("crashed");
+		DurableAVLTree tree = new DurableAVLTree(this.directory.resolve("live"));
+		try {
+			randomChanges(tree, oracle, new Random(3), 2000);
+			copy(this.directory.resolve("live"), crashed); // The files as a crash would leave them: never closed
+		} finally {
+			tree.close();
+		}
+		try (DurableAVLTree recovered = new DurableAVLTree(crashed)) {
+			assertSame(oracle, recovered);
+		}
+	}
+
+	@Test
+	public void tornTailIsDroppedAndCutOff() throws IOException {
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			randomChanges(tree, oracle, new Random(4), 500);
+			tree.insert(-1, "torn");
+		}
+		Path log = this.directory.resolve("log-0");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3); // The last record, the insertion of -1, was half written
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			assertSame(oracle, tree);
+			tree.insert(-2, "after");
+			oracle.put(-2, "after");
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) { // The torn bytes were cut off, so the record after them is read
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void corruptTailIsDropped() throws IOException {
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			randomChanges(tree, oracle, new Random(5), 500);
+			tree.insert(-1, "corrupt");
+		}
+		Path log = this.directory.resolve("log-0");
+		byte[] bytes = Files.readAllBytes(log);
+		bytes[bytes.length - 1] ^= 1; // The checksum no longer matches the last record
+		Files.write(log, bytes);
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void interruptedWriterKeepsTheLogWorking() throws IOException {
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			Thread.currentThread().interrupt();
+			assertTrue(tree.insert(1, "1") >= 0);
+			assertTrue(Thread.interrupted()); // Still set for the caller, and cleared here
+			assertTrue(tree.insert(2, "2") >= 0);
+			Thread.currentThread().interrupt();
+			tree.checkpoint();
+			assertTrue(Thread.interrupted());
+			assertTrue(tree.insert(3, "3") >= 0);
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			assertArrayEquals(new int[]{1, 2, 3}, tree.keysToArray());
+		}
+	}
+
+	@Test
+	public void writersInterruptedMidwayLoseNothing() throws Exception {
+		int threads = 4;
+		int perThread = 300;
+		AtomicBoolean done = new AtomicBoolean();
+		Thread[] writers = new Thread[threads];
+		Throwable[] errors = new Throwable[threads];
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			for (int t = 0; t < threads; t++) {
+				int first = t * perThread;
+				int index = t;
+				writers[t] = new Thread(() -> {
+					try {
+						for (int k = first; k < first + perThread; k++) {
+							tree.insert(k, Integer.toString(k));
+						}
+					} catch (Throwable e) {
+						errors[index] = e;
+					}
+				});
+				writers[t].start();
+			}
+			Thread interrupter = new Thread(() -> { // Interrupts the writers while they wait for and write their batches
+				Random random = new Random(6);
+				while (!done.get()) {
+					writers[random.nextInt(threads)].interrupt();
+					Thread.yield();
+				}
+			});
+			interrupter.start();
+			for (Thread writer : writers) {
+				writer.join();
+			}
+			done.set(true);
+			interrupter.join();
+			for (Throwable error : errors) {
+				if (error != null) {
+					throw new AssertionError(error);
+				}
+			}
+			assertEquals(threads * perThread, tree.size());
+		}
+		try (DurableAVLTree tree = new DurableAVLTree(this.directory)) {
+			assertEquals(threads * perThread, tree.size());
+			for (int k = 0; k < threads * perThread; k++) {
+				assertEquals(Integer.toString(k), tree.search(k));
+			}
+		}
+	}
+
+	private static void randomChanges(DurableAVLTree tree, TreeMap<Integer, String> oracle, Random random, int changes) throws IOException {
+		for (int c = 0; c < changes; c++) {
+			int k = random.nextInt(4 * changes);
+			int choice = random.nextInt(100);
+			if (choice < 60) {
+				String i = random.nextInt(10) == 0 ? null : "i" + k;
+				assertEquals(oracle.containsKey(k), tree.insert(k, i) == -1);
+				oracle.putIfAbsent(k, i);
+			}
+			else if (choice < 95) {
+				assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+				oracle.remove(k);
+			}
+			else if (choice < 98 || oracle.isEmpty()) { // A tree of larger keys joined on the right
+				int x = (oracle.isEmpty() ? 0 : oracle.lastKey()) + 1;
+				int[] keys = {x + 1, x + 2, x + 3};
+				String[] infos = {"j1", null, "j3"};
+				tree.join(x, "x", AVLTree.fromSorted(keys, infos, false));
+				oracle.put(x, "x");
+				for (int j = 0; j < keys.length; j++) {
+					oracle.put(keys[j], infos[j]);
+				}
+			}
+			else { // Keeps the keys below a present one
+				int x = oracle.ceilingKey(oracle.firstKey() + random.nextInt(oracle.lastKey() - oracle.firstKey() + 1));
+				tree.split(x);
+				oracle.tailMap(x, true).clear();
+			}
+		}
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, DurableAVLTree tree) {
+		int[] keys = new int[oracle.size()];
+		String[] infos = new String[oracle.size()];
+		int j = 0;
+		for (Map.Entry<Integer, String> entry : oracle.entrySet()) {
+			keys[j] = entry.getKey();
+			infos[j++] = entry.getValue();
+		}
+		assertArrayEquals(keys, tree.keysToArray());
+		assertArrayEquals(infos, tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		if (oracle.isEmpty()) {
+			assertNull(tree.min());
+		}
+		else {
+			assertEquals(oracle.firstEntry().getValue(), tree.min());
+			assertEquals(oracle.lastEntry().getValue(), tree.max());
+		}
+	}
+
+	private static void copy(Path from, Path to) throws IOException {
+		Files.createDirectories(to);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+			for (Path file : files) {
+				Files.copy(file, to.resolve(file.getFileName()));
+			}
+		}
+	}
+}
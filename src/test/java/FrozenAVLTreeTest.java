@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class FrozenAVLTreeTest {
+	@Test
+	public void matchesTreeMap() {
+		for (int round = 0; round < 120; round++) {
+			Random random = new Random(round);
+			int n = round < 100 ? round : random.nextInt(50000); // Every size up to 99, so every shape of the last level
+			AVLTree tree = new AVLTree(round % 2 == 1);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int j = 0; j < n; j++) {
+				int k = round % 10 == 3 && j < 2 ? (j == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE) : random.nextInt(4 * n + 1) - 2 * n;
+				tree.insert(k, "i" + k);
+				oracle.putIfAbsent(k, "i" + k);
+			}
+			FrozenAVLTree frozen = tree.freeze();
+			assertSame(oracle, frozen);
+			int queries = Math.min(Math.max(200, 2 * oracle.size()), 20000);
+			for (int j = 0; j < queries && n > 0; j++) {
+				int k = j < 2 ? (j == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE) : random.nextInt(4 * n + 3) - 2 * n - 1;
+				assertEquals(oracle.get(k), frozen.search(k));
+				assertEquals(oracle.ceilingKey(k), keyOf(frozen, frozen.ceiling(k)));
+				assertEquals(oracle.floorKey(k), keyOf(frozen, frozen.floor(k)));
+				int slot = frozen.ceiling(k);
+				if (slot != FrozenAVLTree.NONE) {
+					assertEquals(oracle.ceilingEntry(k).getValue(), frozen.getInfo(slot));
+				}
+			}
+			for (int k : oracle.keySet()) { // Every key is found, and is its own floor and ceiling
+				assertEquals("i" + k, frozen.search(k));
+				assertEquals(frozen.floor(k), frozen.ceiling(k));
+			}
+		}
+	}
+
+	@Test
+	public void staysAsItWasWhenTheTreeChanges() {
+		Random random = new Random(5);
+		AVLTree tree = new AVLTree();
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		for (int j = 0; j < 5000; j++) {
+			int k = random.nextInt(20000);
+			tree.insert(k, "i" + k);
+			oracle.putIfAbsent(k, "i" + k);
+		}
+		FrozenAVLTree frozen = tree.freeze();
+		for (int j = 0; j < 5000; j++) {
+			int k = random.nextInt(20000);
+			if (random.nextBoolean()) {
+				tree.insert(k, "n" + k);
+			}
+			else {
+				tree.delete(k);
+			}
+		}
+		assertSame(oracle, frozen);
+	}
+
+	@Test
+	public void rejectsSlotsOutsideTheTree() {
+		FrozenAVLTree empty = new AVLTree().freeze();
+		assertTrue(empty.empty());
+		assertEquals(FrozenAVLTree.NONE, empty.ceiling(0));
+		assertEquals(FrozenAVLTree.NONE, empty.floor(0));
+		assertEquals(null, empty.search(0));
+		assertThrows(IllegalArgumentException.class, () -> empty.getKey(1));
+		FrozenAVLTree frozen = AVLTree.fromSorted(new int[]{1, 2, 3}, new String[]{"a", "b", "c"}).freeze();
+		assertThrows(IllegalArgumentException.class, () -> frozen.getKey(0));
+		assertThrows(IllegalArgumentException.class, () -> frozen.getInfo(4));
+		assertEquals(FrozenAVLTree.NONE, frozen.ceiling(4));
+		assertEquals(FrozenAVLTree.NONE, frozen.floor(0));
+	}
+
+	private static Integer keyOf(FrozenAVLTree frozen, int slot) {
+		return slot == FrozenAVLTree.NONE ? null : frozen.getKey(slot);
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, FrozenAVLTree frozen) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), frozen.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), frozen.infoToArray());
+		assertEquals(oracle.size(), frozen.size());
+		assertEquals(oracle.isEmpty(), frozen.empty());
+	}
+}
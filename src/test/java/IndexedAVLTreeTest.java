@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IndexedAVLTreeTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	public void arrayTreeMatchesTreeMap() {
+		for (int round = 0; round < 10; round++) {
+			Random random = new Random(round);
+			ArrayAVLTree tree = new ArrayAVLTree(random.nextInt(4));
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			for (int step = 0; step < 3000; step++) {
+				tree = step(random, tree, oracle);
+			}
+			assertSame(oracle, tree);
+		}
+	}
+
+	@Test
+	public void mappedTreeMatchesTreeMap() throws IOException {
+		for (int round = 0; round < 4; round++) {
+			Random random = new Random(round);
+			try (MappedAVLTree tree = new MappedAVLTree(dir.resolve("tree" + round))) {
+				MappedAVLTree current = tree;
+				TreeMap<Integer, String> oracle = new TreeMap<>();
+				for (int step = 0; step < 3000; step++) {
+					current = step(random, current, oracle);
+				}
+				assertSame(oracle, current);
+			}
+		}
+	}
+
+	private static <T extends IndexedAVLTree<?>> T step(Random random, T tree, TreeMap<Integer, String> oracle) { // One random update, checked against oracle. Returns the tree to go on with
+		int k = random.nextInt(2000);
+		int choice = random.nextInt(100);
+		if (choice < 60) {
+			assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k) == -1);
+			oracle.putIfAbsent(k, "i" + k);
+		}
+		else if (choice < 95) {
+			assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+			oracle.remove(k);
+		}
+		else if (oracle.containsKey(k)) { // Split at k and join the halves back through it
+			AVLTree.IAVLNode x = item(k, oracle.get(k));
+			T[] halves = split(tree, k);
+			assertEquals(oracle.headMap(k).size(), halves[0].size());
+			assertEquals(oracle.tailMap(k, false).size(), halves[1].size());
+			assertTrue(tree.empty());
+			join(halves[random.nextInt(2)], x, halves);
+			tree = halves[0].empty() ? halves[1] : halves[0];
+		}
+		assertEquals(oracle.get(k), tree.search(k));
+		return tree;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static AVLTree.IAVLNode item(int k, String info) { // A detached node holding k and info, for join
+		AVLTree holder = new AVLTree();
+		holder.insert(k, info);
+		return holder.getRoot();
+	}
+
+	private static <T extends IndexedAVLTree<?>> T[] split(T tree, int k) {
+		return tree instanceof ArrayAVLTree ? (T[]) ((ArrayAVLTree) tree).split(k) : (T[]) ((MappedAVLTree) tree).split(k);
+	}
+
+	private static void join(IndexedAVLTree<?> host, AVLTree.IAVLNode x, IndexedAVLTree<?>[] halves) { // Joins the other half into host
+		IndexedAVLTree<?> other = halves[0] == host ? halves[1] : halves[0];
+		if (host instanceof ArrayAVLTree) {
+			((ArrayAVLTree) host).join(x, (ArrayAVLTree) other);
+		}
+		else {
+			((MappedAVLTree) host).join(x, (MappedAVLTree) other);
+		}
+		assertTrue(other.empty());
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, IndexedAVLTree<?> tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty() ? null : oracle.firstEntry().getValue(), tree.min());
+		assertEquals(oracle.isEmpty() ? null : oracle.lastEntry().getValue(), tree.max());
+		if (oracle.isEmpty()) {
+			assertNull(tree.getRoot());
+		}
+		else {
+			assertNull(tree.getRoot().getParent());
+			assertBalanced(tree.getRoot());
+		}
+	}
+
+	private static int assertBalanced(AVLTree.IAVLNode node) { // Returns the sub-tree's height, checking ranks, sizes and parent links
+		if (!node.isRealNode()) {
+			return -1;
+		}
+		for (AVLTree.IAVLNode child : new AVLTree.IAVLNode[]{node.getLeft(), node.getRight()}) {
+			if (child.isRealNode()) {
+				assertEquals(node, child.getParent());
+			}
+		}
+		int left = assertBalanced(node.getLeft());
+		int right = assertBalanced(node.getRight());
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.getHeight());
+		assertEquals(node.getLeft().getSize() + node.getRight().getSize() + 1, node.getSize());
+		return node.getHeight();
+	}
+}
@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class IntervalAVLTreeTest {
+	@Test
+	public void matchesABruteForceScan() {
+		Random random = new Random(3);
+		for (int round = 0; round < 50; round++) {
+			IntervalAVLTree tree = new IntervalAVLTree();
+			TreeMap<Integer, Integer> oracle = new TreeMap<>(); // start -> end
+			for (int step = 0; step < 400; step++) {
+				int start = random.nextInt(10000) - 5000;
+				int choice = random.nextInt(10);
+				if (choice < 6) {
+					int end = start + (random.nextInt(10) == 0 ? random.nextInt(3000) : random.nextInt(50));
+					assertEquals(oracle.containsKey(start), tree.insert(start, end, "i" + start) == -1);
+					oracle.putIfAbsent(start, end);
+				}
+				else if (choice < 8) {
+					assertEquals(!oracle.containsKey(start), tree.delete(start) == -1);
+					oracle.remove(start);
+				}
+				else {
+					IntervalAVLTree[] parts = tree.split(start);
+					TreeMap<Integer, Integer> high = new TreeMap<>(oracle.tailMap(start, false));
+					oracle = new TreeMap<>(oracle.headMap(start, false));
+					assertSame(high, parts[1]);
+					tree = parts[0];
+					if (random.nextBoolean()) {
+						tree.join(start, start + 7, "i" + start, parts[1]);
+						oracle.putAll(high);
+						oracle.put(start, start + 7);
+						assertTrue(parts[1].empty());
+					}
+				}
+				assertSame(oracle, tree);
+				for (int query = 0; query < 5; query++) {
+					int lo = random.nextInt(12000) - 6000;
+					int hi = query == 0 ? lo : lo + random.nextInt(500);
+					List<Integer> expected = new ArrayList<>();
+					for (Map.Entry<Integer, Integer> entry : oracle.entrySet()) {
+						if (entry.getKey() <= hi && entry.getValue() >= lo) {
+							expected.add(entry.getKey());
+						}
+					}
+					List<Integer> starts = new ArrayList<>();
+					for (IntervalAVLTree.Interval interval : tree.overlapping(lo, hi)) {
+						starts.add(interval.getStart());
+						assertEquals(oracle.get(interval.getStart()).intValue(), interval.getEnd());
+						assertEquals("i" + interval.getStart(), interval.getInfo());
+					}
+					assertEquals(expected, starts);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rejectsBadArguments() {
+		IntervalAVLTree tree = new IntervalAVLTree();
+		assertThrows(IllegalArgumentException.class, () -> tree.insert(2, 1, "x"));
+		tree.insert(1, 4, "a");
+		tree.insert(9, 9, "b");
+		assertThrows(IllegalArgumentException.class, () -> tree.join(5, 5, "c", null));
+		assertThrows(IllegalArgumentException.class, () -> tree.join(10, 9, "c", null));
+		assertEquals(2, tree.size());
+		assertEquals(9, tree.maxEnd());
+	}
+
+	private static void assertSame(TreeMap<Integer, Integer> oracle, IntervalAVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertEquals(oracle.size(), tree.size());
+		int maxEnd = Integer.MIN_VALUE;
+		for (int end : oracle.values()) {
+			maxEnd = Math.max(maxEnd, end);
+		}
+		assertEquals(maxEnd, tree.maxEnd());
+		assertBalanced(tree.root, tree.ext);
+	}
+
+	private static int assertBalanced(IntervalAVLTree.Interval node, IntervalAVLTree.Interval ext) { // Returns the sub-tree's height, checking every rank and size
+		if (node == ext) {
+			return -1;
+		}
+		int left = assertBalanced(node.left, ext);
+		int right = assertBalanced(node.right, ext);
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.rank);
+		assertEquals(node.left.size + node.right.size + 1, node.size);
+		return node.rank;
+	}
+}
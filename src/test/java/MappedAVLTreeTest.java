@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedAVLTreeTest {
+	private static final int SECTOR = 512;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void reopensWhatCloseStored() throws IOException {
+		Random random = new Random(1);
+		Path path = dir.resolve("tree");
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		for (int round = 0; round < 20; round++) {
+			try (MappedAVLTree tree = new MappedAVLTree(path)) {
+				assertSame(oracle, tree);
+				for (int step = 0; step < 300; step++) {
+					int k = random.nextInt(1000);
+					if (random.nextInt(3) > 0) {
+						tree.insert(k, "i" + k + "-" + round);
+						oracle.putIfAbsent(k, "i" + k + "-" + round);
+					} else {
+						tree.delete(k);
+						oracle.remove(k);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void recoversTheLastSyncAfterACrash() throws IOException {
+		for (int round = 0; round < 6; round++) {
+			Random random = new Random(round);
+			Path path = dir.resolve("tree" + round);
+			MappedAVLTree tree = new MappedAVLTree(path);
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			TreeMap<Integer, String> synced = new TreeMap<>();
+			byte[] nodesAtSync = Files.readAllBytes(path);
+			byte[] infosAtSync = Files.readAllBytes(info(path));
+			MappedAVLTree spare = null; // Split off the stored tree, holding the keys above splitKey
+			TreeMap<Integer, String> spareOracle = null;
+			int splitKey = 0;
+			for (int step = 0; step < 2000; step++) {
+				int choice = random.nextInt(100);
+				int k = random.nextInt(3000);
+				if (choice < 45) {
+					k = spare != null ? random.nextInt(splitKey) : k;
+					assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k + "-" + step) == -1);
+					oracle.putIfAbsent(k, "i" + k + "-" + step);
+				} else if (choice < 75) {
+					assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+					oracle.remove(k);
+				} else if (choice < 83 && spare != null) { // Changes to the split-off tree are not stored
+					k = splitKey + 1 + random.nextInt(3000);
+					if (random.nextBoolean()) {
+						spare.insert(k, "s" + k);
+						spareOracle.putIfAbsent(k, "s" + k);
+					} else {
+						spare.delete(k);
+						spareOracle.remove(k);
+					}
+				} else if (choice < 88 && spare == null && oracle.size() > 1) {
+					splitKey = oracle.higherKey(random.nextInt(oracle.lastKey())); // Above 0, so there is room for inserts below it
+					MappedAVLTree[] halves = tree.split(splitKey);
+					tree = halves[0];
+					spare = halves[1];
+					spareOracle = new TreeMap<>(oracle.tailMap(splitKey, false));
+					oracle = new TreeMap<>(oracle.headMap(splitKey, false));
+				} else if (choice < 92 && spare != null) {
+					tree.join(item(splitKey, "x" + splitKey), spare);
+					oracle.putAll(spareOracle);
+					oracle.put(splitKey, "x" + splitKey);
+					spare = null;
+				} else if (choice < 96) {
+					tree.sync();
+					synced = new TreeMap<>(oracle);
+					nodesAtSync = Files.readAllBytes(path);
+					infosAtSync = Files.readAllBytes(info(path));
+				} else {
+					Path copy = dir.resolve("crash" + round + "-" + step);
+					boolean powerLoss = random.nextBoolean(); // Else the process died, and every write reached the disk
+					tornCopy(path, copy, MappedAVLTree.Store.HEADER_BYTES, powerLoss ? nodesAtSync : null, random);
+					tornCopy(info(path), info(copy), 0, powerLoss ? infosAtSync : null, random);
+					TreeMap<Integer, String> recovered = new TreeMap<>(synced);
+					try (MappedAVLTree crashed = new MappedAVLTree(copy)) {
+						assertSame(recovered, crashed);
+						for (int j = 0; j < 50; j++) { // The recovered free list must hand out only free records
+							int key = random.nextInt(3000);
+							crashed.insert(key, "r" + key);
+							recovered.putIfAbsent(key, "r" + key);
+							crashed.delete(key + 1);
+							recovered.remove(key + 1);
+						}
+					}
+					try (MappedAVLTree reopened = new MappedAVLTree(copy)) {
+						assertSame(recovered, reopened);
+					}
+				}
+			}
+			tree.close();
+			try (MappedAVLTree reopened = new MappedAVLTree(path)) {
+				assertSame(oracle, reopened); // The split-off tree is gone
+			}
+		}
+	}
+
+	@Test
+	public void reusesTheSpaceOfDeletedInfos() throws IOException {
+		Path path = dir.resolve("churn");
+		String shortInfo = "s";
+		String longInfo = String.join("", Collections.nCopies(50, "l"));
+		try (MappedAVLTree tree = new MappedAVLTree(path)) {
+			long bound = 0;
+			for (int round = 0; round < 30; round++) { // Infos of two size classes in turn
+				for (int k = 0; k < 4000; k++) {
+					tree.insert(k, (round % 2 == 0 ? shortInfo : longInfo) + k % 10);
+				}
+				tree.sync();
+				if (round == 1) {
+					bound = Files.size(info(path));
+				}
+				assertEquals((round % 2 == 0 ? shortInfo : longInfo) + 7, tree.search(3997));
+				for (int k = 0; k < 4000; k++) {
+					tree.delete(k);
+				}
+				tree.sync(); // Makes the deleted records and their spans free
+			}
+			assertEquals(bound, Files.size(info(path)));
+		}
+	}
+
+	@Test
+	public void refusesOtherFiles() throws IOException {
+		Path path = dir.resolve("other");
+		Files.write(path, new byte[4096]);
+		assertThrows(IOException.class, () -> new MappedAVLTree(path));
+	}
+
+	private static AVLTree.IAVLNode item(int k, String info) { // A detached node holding k and info, for join
+		AVLTree holder = new AVLTree();
+		holder.insert(k, info);
+		return holder.getRoot();
+	}
+
+	private static Path info(Path path) {
+		return Paths.get(path + ".info");
+	}
+
+	private static void tornCopy(Path from, Path to, int headerBytes, byte[] atSync, Random random) throws IOException { // Copies from, with each sector after the header as it was at the last sync or as it is now
+		byte[] now = Files.readAllBytes(from);
+		byte[] torn = Arrays.copyOf(now, now.length);
+		for (int at = headerBytes; atSync != null && at < now.length; at += SECTOR) {
+			if (random.nextBoolean()) {
+				int end = Math.min(at + SECTOR, now.length);
+				Arrays.fill(torn, at, end, (byte) 0);
+				if (at < atSync.length) {
+					System.arraycopy(atSync, at, torn, at, Math.min(end, atSync.length) - at);
+				}
+			}
+		}
+		Files.write(to, torn);
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, MappedAVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		if (!oracle.isEmpty()) {
+			assertBalanced(tree.getRoot());
+		}
+	}
+
+	private static int assertBalanced(AVLTree.IAVLNode node) { // Returns the sub-tree's height, checking ranks, sizes and parent links
+		if (!node.isRealNode()) {
+			return -1;
+		}
+		for (AVLTree.IAVLNode child : new AVLTree.IAVLNode[]{node.getLeft(), node.getRight()}) {
+			if (child.isRealNode()) {
+				assertEquals(node, child.getParent());
+			}
+		}
+		int left = assertBalanced(node.getLeft());
+		int right = assertBalanced(node.getRight());
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.getHeight());
+		assertEquals(node.getLeft().getSize() + node.getRight().getSize() + 1, node.getSize());
+		return node.getHeight();
+	}
+}
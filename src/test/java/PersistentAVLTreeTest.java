@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class PersistentAVLTreeTest {
+	@Test
+	public void oldSnapshotsStayAsTheyWere() {
+		for (int round = 0; round < 8; round++) {
+			Random random = new Random(round);
+			PersistentAVLTree tree = PersistentAVLTree.emptyTree();
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			List<PersistentAVLTree> snapshots = new ArrayList<>();
+			List<TreeMap<Integer, String>> expected = new ArrayList<>();
+			int range = round % 2 == 0 ? 100 : 5000;
+			for (int step = 0; step < 3000; step++) {
+				int k = random.nextInt(range);
+				int choice = random.nextInt(100);
+				if (choice < 50) {
+					tree = tree.insert(k, "i" + k + "-" + step);
+					oracle.putIfAbsent(k, "i" + k + "-" + step);
+				}
+				else if (choice < 85) {
+					tree = tree.delete(k);
+					oracle.remove(k);
+				}
+				else { // Split at k, then join the halves back through k
+					PersistentAVLTree[] halves = tree.split(k);
+					assertSame(new TreeMap<>(oracle.headMap(k, false)), halves[0]);
+					assertSame(new TreeMap<>(oracle.tailMap(k, false)), halves[1]);
+					String info = oracle.containsKey(k) ? oracle.get(k) : "j" + k;
+					PersistentAVLTree joined = random.nextBoolean() ? halves[0].join(k, info, halves[1]) : halves[1].join(k, info, halves[0]);
+					oracle.put(k, info);
+					assertSame(new TreeMap<>(oracle.headMap(k, false)), halves[0]); // The halves are unchanged by the join
+					assertSame(new TreeMap<>(oracle.tailMap(k, false)), halves[1]);
+					tree = joined;
+				}
+				assertEquals(oracle.get(k), tree.search(k));
+				if (step % 50 == 0) {
+					snapshots.add(tree);
+					expected.add(new TreeMap<>(oracle));
+				}
+				if (step % 250 == 0) {
+					for (int j = 0; j < snapshots.size(); j++) {
+						assertSame(expected.get(j), snapshots.get(j));
+					}
+				}
+			}
+			assertSame(oracle, tree);
+			for (int j = 0; j < snapshots.size(); j++) {
+				assertSame(expected.get(j), snapshots.get(j));
+			}
+		}
+	}
+
+	@Test
+	public void fromSortedChecksItsKeys() {
+		int[] keys = {-5, 0, 3, 8, 13, 21};
+		String[] infos = {"a", "b", "c", "d", "e", "f"};
+		PersistentAVLTree tree = PersistentAVLTree.fromSorted(keys, infos);
+		assertArrayEquals(keys, tree.keysToArray());
+		assertArrayEquals(infos, tree.infoToArray());
+		assertBalanced(tree.root);
+		assertThrows(IllegalArgumentException.class, () -> PersistentAVLTree.fromSorted(new int[]{1, 1}, new String[2]));
+		assertThrows(IllegalArgumentException.class, () -> PersistentAVLTree.fromSorted(new int[]{2, 1}, new String[2]));
+		assertThrows(IllegalArgumentException.class, () -> PersistentAVLTree.fromSorted(new int[]{1, 2}, new String[1]));
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, PersistentAVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty(), tree.empty());
+		assertEquals(oracle.isEmpty() ? null : oracle.firstEntry().getValue(), tree.min());
+		assertEquals(oracle.isEmpty() ? null : oracle.lastEntry().getValue(), tree.max());
+		assertBalanced(tree.root);
+	}
+
+	private static int assertBalanced(PersistentAVLTree.Node node) { // Returns the sub-tree's height, checking ranks and sizes
+		if (node.rank == -1) {
+			assertEquals(0, node.size);
+			return -1;
+		}
+		int left = assertBalanced(node.left);
+		int right = assertBalanced(node.right);
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.rank);
+		assertEquals(node.left.size + node.right.size + 1, node.size);
+		return node.rank;
+	}
+}
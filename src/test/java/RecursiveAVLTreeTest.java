@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class RecursiveAVLTreeTest {
+	@Test
+	public void specializedTreesMatchTreeMap() {
+		for (int round = 0; round < 20; round++) {
+			Random random = new Random(round);
+			IntObjAVLTree<String> ints = new IntObjAVLTree<>();
+			LongAVLTree<String> longs = new LongAVLTree<>();
+			ObjAVLTree<Integer, String> reversed = new ObjAVLTree<>(Comparator.reverseOrder());
+			TreeMap<Integer, String> oracle = new TreeMap<>();
+			int range = round % 2 == 0 ? 50 : 5000;
+			for (int step = 0; step < 3000; step++) {
+				int k = random.nextInt(range) - range / 2;
+				long lk = (long) k << 33; // Keys that do not fit an int
+				if (random.nextInt(3) > 0) {
+					boolean present = oracle.containsKey(k);
+					assertEquals(present, ints.insert(k, "i" + k) == -1);
+					assertEquals(present, longs.insert(lk, "i" + k) == -1);
+					assertEquals(present, reversed.insert(k, "i" + k) == -1);
+					oracle.putIfAbsent(k, "i" + k);
+				}
+				else {
+					boolean present = oracle.containsKey(k);
+					assertEquals(present, ints.delete(k) != -1);
+					assertEquals(present, longs.delete(lk) != -1);
+					assertEquals(present, reversed.delete(k) != -1);
+					oracle.remove(k);
+				}
+				assertEquals(oracle.get(k), ints.search(k));
+				assertEquals(oracle.get(k), longs.search(lk));
+				assertEquals(oracle.get(k), reversed.search(k));
+				String min = oracle.isEmpty() ? null : oracle.firstEntry().getValue();
+				String max = oracle.isEmpty() ? null : oracle.lastEntry().getValue();
+				assertEquals(min, ints.min());
+				assertEquals(max, ints.max());
+				assertEquals(min, longs.min());
+				assertEquals(max, longs.max());
+				assertEquals(max, reversed.min());
+				assertEquals(min, reversed.max());
+				assertEquals(oracle.isEmpty(), ints.empty());
+			}
+			int[] keys = oracle.keySet().stream().mapToInt(Integer::intValue).toArray();
+			Object[] infos = oracle.values().toArray();
+			assertArrayEquals(keys, ints.keysToArray());
+			assertArrayEquals(infos, ints.infoToArray());
+			long[] longKeys = new long[keys.length];
+			for (int j = 0; j < keys.length; j++) {
+				longKeys[j] = (long) keys[j] << 33;
+			}
+			assertArrayEquals(longKeys, longs.keysToArray());
+			assertArrayEquals(infos, longs.infoToArray());
+			assertEquals(oracle.size(), reversed.size());
+			assertArrayEquals(oracle.descendingMap().keySet().toArray(), reversed.keysToArray());
+			assertArrayEquals(oracle.descendingMap().values().toArray(), reversed.infoToArray());
+			assertBalanced(ints.root, ints.ext);
+			assertBalanced(longs.root, longs.ext);
+			assertBalanced(reversed.root, reversed.ext);
+		}
+	}
+
+	@Test
+	public void countsRebalancesLikeTheBinaryTree() {
+		LongAVLTree<String> tree = new LongAVLTree<>();
+		assertEquals(0, tree.insert(1, "a")); // The first node changes no rank
+		assertEquals(1, tree.insert(2, "b")); // Promotes the root
+		assertEquals(2, tree.insert(3, "c")); // Promotes 2, then one rotation
+		assertEquals(2, tree.insert(5, "d")); // Promotes 3 and 2
+		assertEquals(3, tree.insert(4, "e")); // Promotes 5, then a double rotation
+		assertEquals(-1, tree.delete(6));
+		assertEquals(-1, tree.insert(4, "f"));
+		assertEquals("e", tree.search(4));
+		assertBalanced(tree.root, tree.ext);
+	}
+
+	private static <N extends RecursiveAVLTree.Node<N>> int assertBalanced(N node, N ext) { // Returns the sub-tree's height, checking every rank and size
+		if (node == ext) {
+			assertEquals(-1, node.rank);
+			return -1;
+		}
+		int left = assertBalanced(node.left, ext);
+		int right = assertBalanced(node.right, ext);
+		assertTrue(Math.abs(left - right) <= 1);
+		assertEquals(Math.max(left, right) + 1, node.rank);
+		assertEquals(node.left.size + node.right.size + 1, node.size);
+		return node.rank;
+	}
+}
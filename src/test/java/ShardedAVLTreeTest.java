@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardedAVLTreeTest {
+	@Test
+	public void matchesTreeMapThroughRepartitioning() {
+		Random random = new Random(1);
+		ShardedAVLTree tree = new ShardedAVLTree(4);
+		TreeMap<Integer, String> oracle = new TreeMap<>();
+		for (int step = 0; step < 20000; step++) {
+			int k = random.nextInt(5000) - 2500;
+			int choice = random.nextInt(100);
+			if (choice < 55) {
+				assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k) == -1);
+				oracle.putIfAbsent(k, "i" + k);
+			}
+			else if (choice < 90) {
+				assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+				oracle.remove(k);
+			}
+			else if (choice < 94) {
+				tree.splitShard(k);
+			}
+			else if (choice < 98) {
+				tree.mergeShards(k);
+			}
+			else {
+				tree.rebalance(2, 2);
+			}
+			assertEquals(oracle.get(k), tree.search(k));
+		}
+		assertSame(oracle, tree);
+		int lo = -1000;
+		int hi = 1000;
+		Map<Integer, String> range = oracle.subMap(lo, true, hi, true);
+		int[] keys = new int[range.size() + 1];
+		String[] infos = new String[range.size() + 1];
+		assertEquals(range.size(), tree.range(lo, hi, keys, infos));
+		int j = 0;
+		for (Map.Entry<Integer, String> entry : range.entrySet()) {
+			assertEquals(entry.getKey().intValue(), keys[j]);
+			assertEquals(entry.getValue(), infos[j++]);
+		}
+	}
+
+	@Test
+	public void splitAndMergeKeepBoundsSorted() {
+		ShardedAVLTree tree = new ShardedAVLTree(new int[]{0, 100});
+		assertFalse(tree.splitShard(50)); // An empty shard
+		for (int k = 0; k < 100; k++) {
+			tree.insert(k, null);
+		}
+		assertTrue(tree.splitShard(50));
+		assertArrayEquals(new int[]{Integer.MIN_VALUE, 0, 50, 100}, tree.shardBounds());
+		assertFalse(tree.mergeShards(Integer.MAX_VALUE)); // The last shard
+		assertTrue(tree.mergeShards(0));
+		assertArrayEquals(new int[]{Integer.MIN_VALUE, 0, 100}, tree.shardBounds());
+		assertEquals(100, tree.size());
+	}
+
+	@Test
+	public void concurrentWritersAndRepartitioningLoseNothing() throws Exception {
+		int threads = 4;
+		ShardedAVLTree tree = new ShardedAVLTree(2);
+		ConcurrentSkipListMap<Integer, String> oracle = new ConcurrentSkipListMap<>();
+		AtomicBoolean done = new AtomicBoolean();
+		Throwable[] errors = new Throwable[threads + 2];
+		Thread[] writers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int owner = t;
+			writers[t] = new Thread(() -> { // Each writer owns the keys k with k % threads == owner, so its view of them is exact
+				try {
+					Random random = new Random(owner);
+					for (int step = 0; step < 30000; step++) {
+						int k = random.nextInt(20000) * threads + owner;
+						if (random.nextInt(3) > 0) {
+							assertEquals(oracle.containsKey(k), tree.insert(k, "i" + k) == -1);
+							oracle.putIfAbsent(k, "i" + k);
+						}
+						else {
+							assertEquals(!oracle.containsKey(k), tree.delete(k) == -1);
+							oracle.remove(k);
+						}
+						assertEquals(oracle.get(k), tree.search(k));
+					}
+				} catch (Throwable e) {
+					errors[owner] = e;
+				}
+			});
+		}
+		Thread repartitioner = new Thread(() -> {
+			try {
+				Random random = new Random(threads);
+				while (!done.get()) {
+					int k = random.nextInt(20000 * threads);
+					if (random.nextBoolean()) {
+						tree.splitShard(k);
+					}
+					else {
+						tree.mergeShards(k);
+					}
+					tree.rebalance(16, 2);
+				}
+			} catch (Throwable e) {
+				errors[threads] = e;
+			}
+		});
+		Thread reader = new Thread(() -> { // Every snapshot is sorted and its arrays agree
+			try {
+				while (!done.get()) {
+					int[] keys = tree.keysToArray();
+					for (int j = 1; j < keys.length; j++) {
+						assertTrue(keys[j - 1] < keys[j]);
+					}
+					int[] some = new int[64];
+					String[] infos = new String[64];
+					int copied = tree.range(1000, 50000, some, infos);
+					for (int j = 0; j < copied; j++) {
+						assertEquals("i" + some[j], infos[j]);
+					}
+				}
+			} catch (Throwable e) {
+				errors[threads + 1] = e;
+			}
+		});
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		repartitioner.start();
+		reader.start();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		done.set(true);
+		repartitioner.join();
+		reader.join();
+		for (Throwable error : errors) {
+			if (error != null) {
+				throw new AssertionError(error);
+			}
+		}
+		assertSame(new TreeMap<>(oracle), tree);
+	}
+
+	private static void assertSame(TreeMap<Integer, String> oracle, ShardedAVLTree tree) {
+		assertArrayEquals(oracle.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keysToArray());
+		assertArrayEquals(oracle.values().toArray(new String[0]), tree.infoToArray());
+		assertEquals(oracle.size(), tree.size());
+		assertEquals(oracle.isEmpty(), tree.empty());
+		int[] bounds = tree.shardBounds();
+		assertEquals(Integer.MIN_VALUE, bounds[0]);
+		for (int j = 1; j < bounds.length; j++) {
+			assertTrue(bounds[j - 1] < bounds[j]);
+		}
+	}
+}